@@ -0,0 +1,328 @@
+Right now JwtAuthenticationFilter.doFilterInternal calls tokenProvider.validateToken(jwt) and then tokenProvider.getUserIdFromJWT(jwt). Both calls run the full HS512 signature check and parse the claims, so every request verifies the same token twice. The dashboard also sends the same bearer token many times a minute, so most of that work repeats.
+
+The fix is to parse the token once per request and keep the verified claims in a small bounded cache. The cache key is a digest of the token and each entry expires at the token's own exp. Repeat requests then skip signature verification completely.
+
+Here's the code to achieve this:
+
+
+---
+
+Step 1: Return the verified claims from JwtTokenProvider
+
+Add a method that parses and verifies the token once and returns the Claims (or null when the token is invalid). validateToken and getUserIdFromJWT stay as they are for existing callers.
+
+JwtTokenProvider.java
+
+package com.example.moneyflow.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+
+@Component
+public class JwtTokenProvider {
+
+    private final SecretKey JWT_SECRET_KEY = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+    private final long JWT_EXPIRATION = 86400000L;  // 1 day
+
+    public String generateToken(Authentication authentication) {
+        String userId = authentication.getName();
+
+        Date now = new Date();
+        Date expiryDate = new Date(now.getTime() + JWT_EXPIRATION);
+
+        return Jwts.builder()
+                .setSubject(userId)
+                .setIssuedAt(now)
+                .setExpiration(expiryDate)
+                .signWith(JWT_SECRET_KEY)
+                .compact();
+    }
+
+    // Verify the signature once and hand back the claims, or null if the token is not valid
+    public Claims parseVerifiedClaims(String token) {
+        try {
+            return Jwts.parserBuilder()
+                    .setSigningKey(JWT_SECRET_KEY)
+                    .build()
+                    .parseClaimsJws(token)
+                    .getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public String getUserIdFromJWT(String token) {
+        Claims claims = parseVerifiedClaims(token);
+        return claims != null ? claims.getSubject() : null;
+    }
+
+    public boolean validateToken(String token) {
+        return parseVerifiedClaims(token) != null;
+    }
+}
+
+
+---
+
+Step 2: Create the verified-token cache (VerifiedTokenCache.java)
+
+The cache is keyed by the SHA-256 digest of the token, so raw bearer tokens are never kept in memory. Each entry stores the userId and the token's exp, and expires exactly at that exp. The cache is Caffeine, which bounds it by size and evicts with its own admission policy in O(1).
+
+build.gradle
+
+dependencies {
+    // Other dependencies
+    implementation 'com.github.ben-manes.caffeine:caffeine:3.1.8'
+}
+
+package com.example.moneyflow.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class VerifiedTokenCache {
+
+    private final Cache<String, VerifiedToken> entries;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    public VerifiedTokenCache(@Value("${moneyflow.jwt.cache.max-entries:10000}") int maxEntries) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new UntilTokenExpiry())
+                .recordStats()
+                .build();
+    }
+
+    // Returns the cached entry for this token, or null if it is missing or expired
+    public VerifiedToken get(String token) {
+        return entries.getIfPresent(digest(token));
+    }
+
+    // Remember the claims of a token that has just passed signature verification
+    public VerifiedToken put(String token, Claims claims) {
+        VerifiedToken verified = new VerifiedToken(claims.getSubject(), claims.getExpiration().getTime());
+        if (verified.isExpired(System.currentTimeMillis())) {
+            return verified;
+        }
+        entries.put(digest(token), verified);
+        return verified;
+    }
+
+    public long getHitCount() {
+        return entries.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return entries.stats().missCount();
+    }
+
+    public long size() {
+        return entries.estimatedSize();
+    }
+
+    private static String digest(String token) {
+        MessageDigest md = SHA_256.get();
+        md.reset();
+        byte[] hash = md.digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    // Each entry lives until its token's exp; reads don't extend it
+    private static final class UntilTokenExpiry implements Expiry<String, VerifiedToken> {
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+            long remainingMillis = value.getExpiresAtMillis() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    public static final class VerifiedToken {
+        private final String userId;
+        private final long expiresAtMillis;
+
+        VerifiedToken(String userId, long expiresAtMillis) {
+            this.userId = userId;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAtMillis;
+        }
+    }
+}
+
+Explanation:
+
+The SHA-256 digest is the cache key, so a heap dump never contains a usable bearer token.
+
+The expiry comes from the token's own exp claim, so an entry can never outlive the token.
+
+The cache is bounded by moneyflow.jwt.cache.max-entries (10000 by default). Caffeine's timer wheel drops entries when they expire and its size eviction is amortized O(1). A full cache never scans its entries, and nothing outside the cache tracks keys, so memory stays at the bound however many distinct tokens arrive.
+
+Hit and miss counts come from Caffeine's recordStats(), which keeps them in striped counters. Request threads don't contend on them, and reading them doesn't slow anything down.
+
+
+
+
+---
+
+Step 3: Update the filter (JwtAuthenticationFilter.java)
+
+The filter asks the cache first. On a miss it verifies the token exactly once with parseVerifiedClaims and stores the result.
+
+package com.example.moneyflow.security;
+
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private UserDetailsService customUserDetailsService;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws IOException, ServletException {
+
+        String jwt = getJwtFromRequest(request);
+
+        if (StringUtils.hasText(jwt)) {
+            String userId = resolveUserId(jwt);
+
+            if (userId != null) {
+                UserDetails userDetails = customUserDetailsService.loadUserByUsername(userId);
+                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    // Cache hit: no signature check at all. Cache miss: verify once and remember the result.
+    private String resolveUserId(String jwt) {
+        VerifiedTokenCache.VerifiedToken cached = verifiedTokenCache.get(jwt);
+        if (cached != null) {
+            return cached.getUserId();
+        }
+
+        Claims claims = tokenProvider.parseVerifiedClaims(jwt);
+        if (claims == null) {
+            return null;
+        }
+        return verifiedTokenCache.put(jwt, claims).getUserId();
+    }
+
+    private String getJwtFromRequest(HttpServletRequest request) {
+        String bearerToken = request.getHeader("Authorization");
+        if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
+            return bearerToken.substring(7);
+        }
+        return null;
+    }
+}
+
+
+---
+
+Step 4: Expose the hit/miss counters
+
+If the project already uses Spring Boot Actuator (spring-boot-starter-actuator), register them with Micrometer so they show up under /actuator/metrics. Hits and misses only ever grow, so they are FunctionCounters. Monitoring systems then see them as counters and can compute rates and hit ratios from them. The size goes up and down, so it stays a gauge:
+
+package com.example.moneyflow.config;
+
+import com.example.moneyflow.security.VerifiedTokenCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JwtCacheMetricsConfig {
+
+    public JwtCacheMetricsConfig(VerifiedTokenCache cache, MeterRegistry registry) {
+        FunctionCounter.builder("moneyflow.jwt.cache.hits", cache, VerifiedTokenCache::getHitCount).register(registry);
+        FunctionCounter.builder("moneyflow.jwt.cache.misses", cache, VerifiedTokenCache::getMissCount).register(registry);
+        Gauge.builder("moneyflow.jwt.cache.size", cache, VerifiedTokenCache::size).register(registry);
+    }
+}
+
+application.properties
+
+moneyflow.jwt.cache.max-entries=10000
+
+
+---
+
+Conclusion
+
+Each request now verifies its JWT at most once instead of twice.
+
+A repeat request with the same token skips signature verification entirely until the token's exp.
+
+The cache is bounded and keyed by token digest, and its hit/miss counters are exposed as metrics.
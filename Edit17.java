@@ -0,0 +1,423 @@
+Every authenticated request currently goes through CustomUserDetailsService.loadUserByUsername. That runs userRepository.findByUserId just to rebuild a UserDetails whose only authority is the fixed "ROLE_USER". This is one database round trip per HTTP request, and it is the busiest query in the app.
+
+To avoid it, you can add a stateless principal mode:
+
+1. JwtTokenProvider.generateToken puts the user's authorities and a version stamp into the token claims.
+
+
+2. JwtAuthenticationFilter builds the Authentication straight from those claims.
+
+
+3. A token whose version stamp is older than the user's current version is rejected. That happens after a password change or when the account is disabled. The current versions are kept in memory and re-read from the database at most every few seconds per user, so a bump made on another node takes effect here too.
+
+
+
+Here's the code to achieve this:
+
+
+---
+
+Step 1: Add a version stamp to the User entity (User.java)
+
+tokenVersion goes up by one whenever something happens that should invalidate issued tokens, such as a password change or disabling the account.
+
+package com.example.moneyflow.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import lombok.Data;
+
+@Entity
+@Data
+public class User {
+    @Id
+    private String userId;
+    private String password;
+    private String email;
+
+    @Column(nullable = false)
+    private long tokenVersion = 0L;
+
+    @Column(nullable = false)
+    private boolean enabled = true;
+}
+
+
+---
+
+Step 2: Keep the current versions in memory (UserVersionRegistry.java)
+
+The registry is a bounded Caffeine cache of userId → version. The filter compares the token's "ver" claim against it. Entries expire version-ttl (30 seconds by default) after they were written and are then read again. Without that, a node would never learn about a password change made through another node, and would keep accepting the old tokens for their whole lifetime. maximumSize keeps the memory bounded however many users log in over the node's lifetime.
+
+A token that claims a newer version than the registry knows also triggers a re-read: it means the user's version was bumped somewhere else since the entry was loaded.
+
+package com.example.moneyflow.security;
+
+import com.example.moneyflow.model.User;
+import com.example.moneyflow.repos.UserRepository;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+@Component
+public class UserVersionRegistry {
+
+    // Sentinel for users that do not exist or are disabled: every token for them is stale
+    public static final long REVOKED = Long.MAX_VALUE;
+
+    private final UserRepository userRepository;
+    private final AsyncLoadingCache<String, Long> versions;
+
+    public UserVersionRegistry(UserRepository userRepository,
+                               @Value("${moneyflow.security.version-ttl:PT30S}") Duration ttl,
+                               @Value("${moneyflow.security.version-cache-size:200000}") long maxSize) {
+        this.userRepository = userRepository;
+        // Async: the map only holds a future while the query runs, so no hash bin stays locked during I/O
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .buildAsync(this::load);
+    }
+
+    public long currentVersion(String userId) {
+        // One query per user at a time; concurrent callers wait on the same future
+        return versions.get(userId).join();
+    }
+
+    public boolean isCurrent(String userId, long tokenVersion) {
+        long current = currentVersion(userId);
+        if (tokenVersion > current) {
+            // Issued after a bump this node hasn't seen (e.g. on another node): refresh from the database
+            current = load(userId);
+            versions.put(userId, CompletableFuture.completedFuture(current));
+        }
+        return tokenVersion >= current;
+    }
+
+    // Publishes a version this node has just written; never lowers one that is already known
+    public void record(User user) {
+        long version = versionOf(user);
+        CompletableFuture<Long> recorded = CompletableFuture.completedFuture(version);
+        versions.asMap().merge(user.getUserId(), recorded, (known, added) ->
+                isKnownAtLeast(known, version) ? known : added);
+    }
+
+    // For changes made inside a transaction: the new version is published only once it is committed
+    public void recordAfterCommit(User user) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(user);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(user);
+            }
+        });
+    }
+
+    private long load(String userId) {
+        return userRepository.findByUserId(userId).map(UserVersionRegistry::versionOf).orElse(REVOKED);
+    }
+
+    // A load still in flight may have read the row before the bump, so only a completed, higher value wins
+    private static boolean isKnownAtLeast(CompletableFuture<Long> known, long version) {
+        return known.isDone() && !known.isCompletedExceptionally() && known.join() >= version;
+    }
+
+    private static long versionOf(User user) {
+        return user.isEnabled() ? user.getTokenVersion() : REVOKED;
+    }
+}
+
+A disabled or missing user's version is REVOKED, which is higher than any token's version, so all of their tokens are rejected.
+
+record() only ever raises a version. A caller holding an older copy of the row, such as a login that read it just before a password change committed, can't move the registry back and make the revoked tokens valid again. Only the database can lower a version, through a load after the entry expires or a forced re-read. That is how a re-enabled user is accepted again within one TTL.
+
+The loads run on Caffeine's executor (ForkJoinPool.commonPool by default). The cache's map holds only the pending future, so a slow query for one user never blocks lookups for other users whose keys share a hash bin. The caller still waits on join() for its own user.
+
+
+---
+
+Step 3: Embed authorities and version in the token (JwtTokenProvider.java)
+
+Only the changed parts are shown. The "auth" claim holds the authorities as a comma-separated string and "ver" holds the version stamp. Tokens without a "ver" claim (issued before this change) get version -1. In stateless mode that is always stale, so they are rejected and the user logs in once more to get a stamped token.
+
+package com.example.moneyflow.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.stream.Collectors;
+
+@Component
+public class JwtTokenProvider {
+
+    public static final String AUTHORITIES_CLAIM = "auth";
+    public static final String VERSION_CLAIM = "ver";
+
+    private final SecretKey JWT_SECRET_KEY = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+    private final long JWT_EXPIRATION = 86400000L;  // 1 day
+
+    public String generateToken(Authentication authentication, long tokenVersion) {
+        String userId = authentication.getName();
+        String authorities = authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.joining(","));
+
+        Date now = new Date();
+        Date expiryDate = new Date(now.getTime() + JWT_EXPIRATION);
+
+        return Jwts.builder()
+                .setSubject(userId)
+                .claim(AUTHORITIES_CLAIM, authorities)
+                .claim(VERSION_CLAIM, tokenVersion)
+                .setIssuedAt(now)
+                .setExpiration(expiryDate)
+                .signWith(JWT_SECRET_KEY)
+                .compact();
+    }
+
+    public Claims parseVerifiedClaims(String token) {
+        try {
+            return Jwts.parserBuilder()
+                    .setSigningKey(JWT_SECRET_KEY)
+                    .build()
+                    .parseClaimsJws(token)
+                    .getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // ... getUserIdFromJWT and validateToken unchanged
+}
+
+
+---
+
+Step 4: Carry the claims in the token cache (VerifiedTokenCache.java)
+
+VerifiedToken from the previous step now also keeps the authorities and the version, so a cache hit has everything the filter needs.
+
+    public VerifiedToken put(String token, Claims claims) {
+        Number version = claims.get(JwtTokenProvider.VERSION_CLAIM, Number.class);
+        VerifiedToken verified = new VerifiedToken(
+                claims.getSubject(),
+                claims.getExpiration().getTime(),
+                claims.get(JwtTokenProvider.AUTHORITIES_CLAIM, String.class),
+                version != null ? version.longValue() : -1L);
+        // ... rest unchanged
+    }
+
+    public static final class VerifiedToken {
+        private final String userId;
+        private final long expiresAtMillis;
+        private final List<GrantedAuthority> authorities;
+        private final long version;
+
+        VerifiedToken(String userId, long expiresAtMillis, String authorities, long version) {
+            this.userId = userId;
+            this.expiresAtMillis = expiresAtMillis;
+            this.authorities = StringUtils.hasText(authorities)
+                    ? AuthorityUtils.commaSeparatedStringToAuthorityList(authorities)
+                    : Collections.emptyList();
+            this.version = version;
+        }
+
+        public List<GrantedAuthority> getAuthorities() {
+            return authorities;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        // ... getUserId, getExpiresAtMillis, isExpired unchanged
+    }
+
+The authority list is built once per token, when it is first stored, and not on every request.
+
+
+---
+
+Step 5: Build the Authentication from claims (JwtAuthenticationFilter.java)
+
+If stateless mode is off, the filter uses the existing CustomUserDetailsService path as before. If it is on, the principal is built from the token alone when the version is current, and a stale token (issued before a password change or disable, or without a "ver" claim) is rejected: no Authentication is set, so the request is treated as anonymous and protected endpoints answer 401.
+
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private UserVersionRegistry userVersionRegistry;
+
+    @Autowired
+    private UserDetailsService customUserDetailsService;
+
+    @Value("${moneyflow.security.stateless-principal:false}")
+    private boolean statelessPrincipal;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws IOException, ServletException {
+
+        String jwt = getJwtFromRequest(request);
+
+        if (StringUtils.hasText(jwt)) {
+            VerifiedTokenCache.VerifiedToken token = resolveToken(jwt);
+
+            if (token != null) {
+                UsernamePasswordAuthenticationToken authentication = buildAuthentication(token);
+                if (authentication != null) {
+                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    SecurityContextHolder.getContext().setAuthentication(authentication);
+                }
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    private UsernamePasswordAuthenticationToken buildAuthentication(VerifiedTokenCache.VerifiedToken token) {
+        if (statelessPrincipal) {
+            if (!userVersionRegistry.isCurrent(token.getUserId(), token.getVersion())) {
+                // Password changed or account disabled after this token was issued
+                return null;
+            }
+            UserDetails principal = org.springframework.security.core.userdetails.User
+                    .withUsername(token.getUserId())
+                    .password("")
+                    .authorities(token.getAuthorities())
+                    .build();
+            return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+        }
+
+        UserDetails userDetails = customUserDetailsService.loadUserByUsername(token.getUserId());
+        return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+    }
+
+    private VerifiedTokenCache.VerifiedToken resolveToken(String jwt) {
+        VerifiedTokenCache.VerifiedToken cached = verifiedTokenCache.get(jwt);
+        if (cached != null) {
+            return cached;
+        }
+
+        Claims claims = tokenProvider.parseVerifiedClaims(jwt);
+        if (claims == null) {
+            return null;
+        }
+        return verifiedTokenCache.put(jwt, claims);
+    }
+
+    // ... getJwtFromRequest unchanged
+}
+
+Explanation:
+
+In stateless mode the only per-request lookup is an in-memory cache read in UserVersionRegistry.
+
+The database is read for a user at most once per version-ttl on each node, plus once when a token carries a newer version than the node knows. For an active user that is one small query every 30 seconds instead of one per request.
+
+The principal's password is left empty because nothing after the filter needs it.
+
+
+
+
+---
+
+Step 6: Issue tokens with the version and bump it on changes
+
+MoneyFlowController.java (login)
+
+    @PostMapping("/login")
+    public ResponseEntity<String> loginUser(
+            @RequestParam String userId,
+            @RequestParam String password) {
+        try {
+            Authentication authentication = authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(userId, password));
+
+            User user = userService.findByUserId(userId);
+            userVersionRegistry.record(user);
+
+            String token = jwtTokenProvider.generateToken(authentication, user.getTokenVersion());
+
+            return ResponseEntity.ok("Bearer " + token);
+        } catch (AuthenticationException e) {
+            return ResponseEntity.status(401).body("Invalid credentials");
+        }
+    }
+
+UserService.java (new methods)
+
+    @Autowired
+    private UserVersionRegistry userVersionRegistry;
+
+    public User findByUserId(String userId) {
+        return userRepository.findByUserId(userId)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with userId: " + userId));
+    }
+
+    @Transactional
+    public void changePassword(String userId, String newPassword) {
+        User user = findByUserId(userId);
+        user.setPassword(passwordEncoder.encode(newPassword));
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        userRepository.save(user);
+        userVersionRegistry.recordAfterCommit(user);
+    }
+
+    @Transactional
+    public void disableUser(String userId) {
+        User user = findByUserId(userId);
+        user.setEnabled(false);
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        userRepository.save(user);
+        userVersionRegistry.recordAfterCommit(user);
+    }
+
+The new version is published after the commit. Recording it earlier would have no effect on security (the stale tokens would just be rejected a few milliseconds sooner), but if the transaction then rolled back, the node would reject the user's perfectly valid current tokens until the entry expired.
+
+
+---
+
+Step 7: Turn the mode on (application.properties)
+
+moneyflow.security.stateless-principal=true
+# How long a node trusts a user's version before re-reading it; bounds how long a bump on another node takes to apply
+moneyflow.security.version-ttl=PT30S
+# Users whose version is kept in memory; beyond that Caffeine evicts entries, which are re-read when needed
+moneyflow.security.version-cache-size=200000
+
+When the flag is false (the default), the filter behaves exactly as before and calls CustomUserDetailsService on every request.
+
+
+---
+
+Conclusion
+
+With stateless principal mode on, an authenticated request no longer queries the users table. Its Authentication comes from the verified token claims.
+
+A password change or account disable bumps tokenVersion, and tokens issued before the bump stop being accepted: at once on the node that made the change, and within version-ttl on every other node.
+
+The database is consulted at most once per user per version-ttl, not on every request.
@@ -0,0 +1,257 @@
+Some deployments keep the DB-backed principal and don't turn on stateless mode. For them, login (UserService.authenticateUser) and the JWT filter (CustomUserDetailsService.loadUserByUsername) keep reading the same users row through userRepository.findByUserId. A shared cache in front of that lookup reduces it to one load per user per TTL. For an active user that is one load every few seconds instead of one per request.
+
+Here's how to add a caching layer with size and TTL eviction, invalidation on commit, and hit-ratio/load-latency metrics.
+
+
+---
+
+Step 1: Add Actuator to build.gradle
+
+Caffeine is already a dependency (the verified-token cache uses it). Actuator brings in Micrometer:
+
+dependencies {
+    // Other dependencies
+    implementation 'org.springframework.boot:spring-boot-starter-actuator'
+}
+
+Caffeine gives us size-bounded, TTL-based eviction and built-in stats (hit count, miss count, total load time). Micrometer can publish those stats directly.
+
+
+---
+
+Step 2: Create the shared user lookup cache (CachedUser.java, CachedUserLookup.java)
+
+Both the login path and the JWT filter go through this class, so they share one cache. A missing user is not cached (the loader returns null), so a user who registers after a failed lookup can log in right away.
+
+The cache holds an immutable snapshot of the fields authentication needs, not the JPA User entity. An entity is mutable and attached to whichever persistence context loaded it, so a cached instance could be changed by one caller and seen by every other one.
+
+package com.example.moneyflow.service;
+
+import com.example.moneyflow.model.User;
+
+// What authentication reads from a users row, copied once when the row is loaded
+public final class CachedUser {
+
+    private final String userId;
+    private final String passwordHash;
+    private final boolean enabled;
+    private final long tokenVersion;
+
+    CachedUser(User user) {
+        this.userId = user.getUserId();
+        this.passwordHash = user.getPassword();
+        this.enabled = user.isEnabled();
+        this.tokenVersion = user.getTokenVersion();
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Never passed to UserVersionRegistry; login reads the version from the database (Step 4)
+    public long getTokenVersion() {
+        return tokenVersion;
+    }
+}
+
+package com.example.moneyflow.service;
+
+import com.example.moneyflow.repos.UserRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+@Component
+public class CachedUserLookup {
+
+    private final LoadingCache<String, CachedUser> users;
+
+    public CachedUserLookup(UserRepository userRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${moneyflow.user-cache.max-size:50000}") long maxSize,
+                            @Value("${moneyflow.user-cache.ttl:PT10S}") Duration ttl) {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(userId -> userRepository.findByUserId(userId).map(CachedUser::new).orElse(null));
+
+        // Publishes cache.gets{result=hit|miss}, cache.evictions, cache.load.duration, ...
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
+
+    public Optional<CachedUser> findByUserId(String userId) {
+        return Optional.ofNullable(users.get(userId));
+    }
+
+    // Call after any change that affects authentication (password, enabled flag, roles); affects this node only
+    public void invalidate(String userId) {
+        users.invalidate(userId);
+    }
+
+    // Same, but deferred until the caller's transaction commits, so a load can't re-cache the old row
+    public void invalidateAfterCommit(String userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            users.invalidate(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                users.invalidate(userId);
+            }
+        });
+    }
+
+    public double hitRatio() {
+        return users.stats().hitRate();
+    }
+
+    public double averageLoadMillis() {
+        return users.stats().averageLoadPenalty() / 1_000_000.0;
+    }
+}
+
+Explanation:
+
+maximumSize caps the number of cached rows, and expireAfterWrite bounds how stale a row can get.
+
+Invalidation only reaches the node that made the change. Every other node keeps its snapshot until the TTL expires. During that window an old password or a disabled account still passes the check there. That is why the TTL is short, 10 seconds by default: the cache still absorbs nearly all the lookups of an active user, and a change reaches every node within 10 seconds. Stateless mode has the same kind of bound through version-ttl. Don't raise the TTL without adding cross-node invalidation, for example a message on password change or disable that every node consumes.
+
+recordStats() turns on the hit/miss and load-time counters. CaffeineCacheMetrics exposes them under /actuator/metrics/cache.gets and /actuator/metrics/cache.load.duration with the tag cache=users.
+
+The hit ratio is cache.gets{result=hit} divided by the total number of cache.gets.
+
+Invalidation has to happen after the commit. If it ran inside the transaction, a login on another thread could load the row in between, still see the old password hash or enabled flag (the change isn't committed yet), and cache it for a whole TTL. After the commit, any load that starts reads the new row. A load that was already running when the commit happened finishes before invalidate() returns, because Caffeine's invalidate waits for an in-flight load of the same key, and its result is then removed.
+
+
+
+
+---
+
+Step 3: Keep CustomUserDetailsService as the only UserDetailsService
+
+The UserDetails objects themselves are not cached, and no second UserDetailsService bean is added. There are two reasons:
+
+1. ProviderManager calls eraseCredentials() on the Authentication it returns after a successful login. AbstractAuthenticationToken.eraseCredentials also erases the principal, and the principal is the UserDetails the provider loaded. If that object came from a cache, the cached entry would lose its password hash, and the next login within the TTL would fail.
+
+
+2. AuthenticationConfiguration wires the DAO provider automatically only when there is exactly one UserDetailsService bean. A caching decorator next to CustomUserDetailsService, even one marked @Primary, silently turns that off.
+
+
+CustomUserDetailsService instead builds a new UserDetails on every call from the cached snapshot (Step 4). Building it is a handful of field copies with no I/O, and each caller, including ProviderManager, gets its own instance to erase. The database round trip is what the cache removes, and it is still removed.
+
+
+---
+
+Step 4: Route the existing lookups through the cache
+
+CustomUserDetailsService.java
+
+@Service
+public class CustomUserDetailsService implements UserDetailsService {
+
+    @Autowired
+    private CachedUserLookup cachedUserLookup;
+
+    @Override
+    public UserDetails loadUserByUsername(String userId) throws UsernameNotFoundException {
+        CachedUser user = cachedUserLookup.findByUserId(userId)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with userId: " + userId));
+
+        return org.springframework.security.core.userdetails.User
+                .withUsername(user.getUserId())
+                .password(user.getPasswordHash())
+                .authorities("ROLE_USER")
+                .disabled(!user.isEnabled())
+                .build();
+    }
+}
+
+The UserDetails is built fresh from the cached row on every call, so erasing one never affects the cache or another request.
+
+UserService.java (changed methods)
+
+    @Autowired
+    private CachedUserLookup cachedUserLookup;
+
+    public boolean authenticateUser(String userId, String password) {
+        Optional<CachedUser> userOpt = cachedUserLookup.findByUserId(userId);
+        if (userOpt.isPresent()) {
+            CachedUser user = userOpt.get();
+            return user.isEnabled() && passwordEncoder.matches(password, user.getPasswordHash());
+        }
+        return false;
+    }
+
+    // Not cached: login takes the token version from here and records it in UserVersionRegistry
+    public User findByUserId(String userId) {
+        return userRepository.findByUserId(userId)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with userId: " + userId));
+    }
+
+    @Transactional
+    public void changePassword(String userId, String newPassword) {
+        User user = userRepository.findByUserId(userId)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with userId: " + userId));
+        user.setPassword(passwordEncoder.encode(newPassword));
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        userRepository.save(user);
+        userVersionRegistry.recordAfterCommit(user);
+        cachedUserLookup.invalidateAfterCommit(userId);
+    }
+
+    @Transactional
+    public void disableUser(String userId) {
+        User user = userRepository.findByUserId(userId)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with userId: " + userId));
+        user.setEnabled(false);
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        userRepository.save(user);
+        userVersionRegistry.recordAfterCommit(user);
+        cachedUserLookup.invalidateAfterCommit(userId);
+    }
+
+changePassword and disableUser read the row straight from the repository and not from the cache, so they always modify the current database state. The cached row is dropped only once the change is committed (Step 2).
+
+findByUserId stays uncached. Login calls it after the password check to get the token version, and passes the row to UserVersionRegistry.record. That row must be the current one. A snapshot cached before a password change on another node would carry the old version, and the new token would be stamped with it. The registry never lowers a version, but the token would still be rejected on every node that already knows the bump, which is a confusing failure right after a successful login. One primary-key read per login costs little next to the BCrypt check.
+
+
+---
+
+Step 5: Configuration (application.properties)
+
+moneyflow.user-cache.max-size=50000
+# Bounds how long a password change or disable takes to reach the other nodes
+moneyflow.user-cache.ttl=PT10S
+
+management.endpoints.web.exposure.include=health,metrics
+
+
+---
+
+Conclusion
+
+Login and the JWT filter now share one cached, immutable snapshot of each users row, which is loaded at most once per TTL.
+
+Entries are evicted by size and by age. Password changes and account disables invalidate them on the local node as soon as they commit, and reach the other nodes within the 10-second TTL. Token versions are never taken from the cache.
+
+CustomUserDetailsService stays the only UserDetailsService, so Spring Security's auto-configured DAO provider keeps working. Every caller gets its own UserDetails, so credential erasure after login never touches the cache.
+
+The hit ratio and load latency are available from /actuator/metrics/cache.gets and /actuator/metrics/cache.load.duration.
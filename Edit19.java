@@ -0,0 +1,235 @@
+Both UserService.authenticateUser and the AuthenticationManager path run BCryptPasswordEncoder.matches directly on the Tomcat request thread. BCrypt is slow on purpose (about 50-100 ms of CPU at the default cost of 10). During a login storm every servlet thread ends up busy hashing, and /api/user/balance and /api/transfer have no threads left.
+
+To keep auth CPU cost from taking the rest of the API down:
+
+1. Run password verification on its own fixed-size thread pool with a bounded queue.
+
+
+2. Make /api/user/login asynchronous, so the Tomcat thread is released while the hash runs.
+
+
+3. When the queue is full, reject the login right away with 503 Service Unavailable and a Retry-After header, instead of piling up.
+
+
+4. Publish the queue depth and the verification time as metrics.
+
+
+
+Here's the code to achieve this:
+
+
+---
+
+Step 1: Create the BCrypt executor (PasswordVerificationExecutor.java)
+
+package com.example.moneyflow.security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@Component
+public class PasswordVerificationExecutor implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+    private final Timer verificationTimer;
+
+    public PasswordVerificationExecutor(MeterRegistry meterRegistry,
+                                        @Value("${moneyflow.auth.bcrypt.threads:0}") int threads,
+                                        @Value("${moneyflow.auth.bcrypt.queue-capacity:200}") int queueCapacity) {
+        // Default: leave half of the cores for the rest of the API
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "bcrypt-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.verificationTimer = Timer.builder("moneyflow.auth.bcrypt.verification")
+                .description("Time spent verifying passwords")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+
+        Gauge.builder("moneyflow.auth.bcrypt.queue.depth", executor, e -> e.getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("moneyflow.auth.bcrypt.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+    }
+
+    // Runs the task on the BCrypt pool; fails fast with PasswordVerificationRejectedException when saturated
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> verificationTimer.record(task), executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new PasswordVerificationRejectedException());
+            return rejected;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
+
+PasswordVerificationRejectedException.java
+
+package com.example.moneyflow.security;
+
+public class PasswordVerificationRejectedException extends RuntimeException {
+
+    public PasswordVerificationRejectedException() {
+        super("Password verification capacity exhausted");
+    }
+}
+
+Explanation:
+
+The pool has a fixed size, by default half of the available cores. However many logins arrive, BCrypt can never use more CPU than that.
+
+ArrayBlockingQueue together with AbortPolicy gives a hard upper bound on queued logins. Once that bound is reached, new logins fail immediately.
+
+The timer measures only the time spent on the BCrypt thread. Queue wait is visible separately through the queue-depth gauge.
+
+
+
+
+---
+
+Step 2: Make login asynchronous (MoneyFlowController.java)
+
+The login endpoint returns a CompletableFuture. Spring MVC releases the Tomcat thread and writes the response when the future completes.
+
+    @Autowired
+    private PasswordVerificationExecutor passwordVerificationExecutor;
+
+    @PostMapping("/login")
+    public CompletableFuture<ResponseEntity<String>> loginUser(
+            @RequestParam String userId,
+            @RequestParam String password) {
+
+        return passwordVerificationExecutor
+                .submit(() -> authenticationManager.authenticate(
+                        new UsernamePasswordAuthenticationToken(userId, password)))
+                .thenApply(authentication -> {
+                    User user = userService.findByUserId(userId);
+                    userVersionRegistry.record(user);
+                    String token = jwtTokenProvider.generateToken(authentication, user.getTokenVersion());
+                    return ResponseEntity.ok("Bearer " + token);
+                })
+                .exceptionally(this::loginFailure);
+    }
+
+    private ResponseEntity<String> loginFailure(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+
+        if (cause instanceof PasswordVerificationRejectedException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body("Login temporarily unavailable, please retry");
+        }
+        if (cause instanceof AuthenticationException) {
+            return ResponseEntity.status(401).body("Invalid credentials");
+        }
+        throw new CompletionException(cause);
+    }
+
+Additional imports:
+
+import com.example.moneyflow.security.PasswordVerificationExecutor;
+import com.example.moneyflow.security.PasswordVerificationRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+The whole authenticationManager.authenticate call runs on the BCrypt pool. That covers the users lookup (served from the cache from the previous step) and BCryptPasswordEncoder.matches.
+
+
+---
+
+Step 3: Route UserService.authenticateUser through the pool (UserService.java)
+
+Any other caller that checks a password directly should use the same pool. That way there is exactly one place where BCrypt CPU is spent.
+
+    @Autowired
+    private PasswordVerificationExecutor passwordVerificationExecutor;
+
+    public CompletableFuture<Boolean> authenticateUser(String userId, String password) {
+        Optional<CachedUser> userOpt = cachedUserLookup.findByUserId(userId);
+        if (!userOpt.isPresent() || !userOpt.get().isEnabled()) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        String hash = userOpt.get().getPasswordHash();
+        return passwordVerificationExecutor.submit(() -> passwordEncoder.matches(password, hash));
+    }
+
+
+---
+
+Step 4: Security context for async requests (SecurityConfig.java)
+
+/api/user/login is permitAll(), so the async dispatch needs no authentication. It still has to be allowed through the filter chain:
+
+    @Bean
+    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+        http
+            .csrf().disable()
+            .authorizeHttpRequests(auth -> auth
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                .requestMatchers("/api/user/register", "/api/user/login").permitAll()
+                .anyRequest().authenticated()
+            )
+            .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+            .addFilterBefore(jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
+
+        return http.build();
+    }
+
+(import javax.servlet.DispatcherType;)
+
+
+---
+
+Step 5: Configuration (application.properties)
+
+# 0 = half of the available cores
+moneyflow.auth.bcrypt.threads=0
+moneyflow.auth.bcrypt.queue-capacity=200
+
+# Async login requests must not hang forever
+spring.mvc.async.request-timeout=10s
+
+
+---
+
+Conclusion
+
+BCrypt now runs only on a dedicated, fixed-size pool. A login storm can't use up Tomcat's request threads, so balance and transfer calls keep being served.
+
+When the pool and its queue are full, logins get an immediate 503 with Retry-After and don't wait in line.
+
+Queue depth, active workers and verification time are available under /actuator/metrics/moneyflow.auth.bcrypt.*.
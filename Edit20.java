@@ -0,0 +1,383 @@
+JwtTokenProvider still hands the raw JWT_SECRET / key to JJWT on every call. As a result, each generateToken, getUserIdFromJWT and validateToken call builds a new parser (Jwts.parserBuilder()...build()) and a new Mac, initialises the key, and copies the compact token into several intermediate strings before the signature is checked.
+
+Since the algorithm is always HS512 and the key never changes, almost all of that work can be done once. This answer replaces the hot path with a small dedicated engine:
+
+1. The SecretKey and the base64url-encoded header are computed once, at startup.
+
+
+2. Each thread keeps its own initialised Mac instance (Mac is not thread-safe, but it can be reset and reused).
+
+
+3. The compact token is verified directly on its ASCII bytes: one byte[] per call, no split(), no substring() copies.
+
+
+4. Only the payload is decoded into claims, and only after the signature has matched.
+
+
+
+JJWT stays on the classpath for anything else, and the JwtTokenProvider method signatures don't change.
+
+
+---
+
+Step 1: Load the key once (application.properties)
+
+A random key from Keys.secretKeyFor changes on every restart, which logs everybody out on each deployment. Read it from configuration instead (at least 64 bytes for HS512, base64-encoded):
+
+moneyflow.jwt.secret=<base64 encoded 64+ byte secret>
+moneyflow.jwt.expiration-ms=86400000
+
+
+---
+
+Step 2: Create the engine (HmacJwtEngine.java)
+
+package com.example.moneyflow.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class HmacJwtEngine {
+
+    private static final String ALGORITHM = "HmacSHA512";
+    private static final int SIGNATURE_LENGTH = 64;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    // {"alg":"HS512","typ":"JWT"} never changes, so it is encoded exactly once
+    private static final byte[] HEADER = ENCODER.encode("{\"alg\":\"HS512\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.US_ASCII));
+
+    private final SecretKey key;
+    private final ObjectMapper objectMapper;
+    private final ThreadLocal<Mac> macs;
+
+    public HmacJwtEngine(byte[] secret, ObjectMapper objectMapper) {
+        if (secret.length < SIGNATURE_LENGTH) {
+            throw new IllegalArgumentException("HS512 requires a secret of at least 64 bytes");
+        }
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.objectMapper = objectMapper;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    public String sign(Map<String, Object> claims) {
+        try {
+            byte[] payload = ENCODER.encode(objectMapper.writeValueAsBytes(claims));
+
+            // header '.' payload '.' signature, assembled in a single buffer
+            int signingInputLength = HEADER.length + 1 + payload.length;
+            int signatureLength = (SIGNATURE_LENGTH * 4 + 2) / 3;
+            byte[] token = new byte[signingInputLength + 1 + signatureLength];
+
+            System.arraycopy(HEADER, 0, token, 0, HEADER.length);
+            token[HEADER.length] = '.';
+            System.arraycopy(payload, 0, token, HEADER.length + 1, payload.length);
+            token[signingInputLength] = '.';
+
+            Mac mac = macs.get();
+            mac.update(token, 0, signingInputLength);
+            byte[] signature = ENCODER.encode(mac.doFinal());
+            System.arraycopy(signature, 0, token, signingInputLength + 1, signatureLength);
+
+            return new String(token, StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not serialise JWT claims", e);
+        }
+    }
+
+    // Returns the claims if the signature matches and the token has not expired, otherwise null
+    public Claims verify(String token) {
+        if (token == null) {
+            return null;
+        }
+
+        byte[] bytes = token.getBytes(StandardCharsets.US_ASCII);
+        int firstDot = indexOf(bytes, 0);
+        int secondDot = firstDot < 0 ? -1 : indexOf(bytes, firstDot + 1);
+        if (secondDot < 0 || indexOf(bytes, secondDot + 1) >= 0) {
+            return null;
+        }
+
+        // Only HS512 tokens issued by us are accepted: the header must match byte for byte
+        if (firstDot != HEADER.length || !regionEquals(bytes, HEADER)) {
+            return null;
+        }
+
+        Mac mac = macs.get();
+        mac.update(bytes, 0, secondDot);
+        byte[] expected = mac.doFinal();
+
+        byte[] actual;
+        try {
+            actual = DECODER.decode(ByteBuffer.wrap(bytes, secondDot + 1, bytes.length - secondDot - 1)).array();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return null;
+        }
+
+        Claims claims = readClaims(bytes, firstDot + 1, secondDot);
+        if (claims == null) {
+            return null;
+        }
+
+        Date expiration = claims.getExpiration();
+        if (expiration == null || expiration.getTime() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return claims;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Claims readClaims(byte[] bytes, int from, int to) {
+        try {
+            ByteBuffer json = DECODER.decode(ByteBuffer.wrap(bytes, from, to - from));
+            Map<String, Object> map = objectMapper.readValue(json.array(), 0, json.limit(), LinkedHashMap.class);
+            return Jwts.claims(map);
+        } catch (IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA512 not available", e);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == '.') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionEquals(byte[] bytes, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
+Explanation:
+
+The Mac is initialised with the key once per thread. Mac.doFinal() resets it, so the next call on the same thread starts clean without another init.
+
+Verification works on one US-ASCII byte[] of the token. The signing input is passed to the Mac as a range (0..secondDot) and is never copied into a substring.
+
+Base64.Decoder.decode(ByteBuffer) decodes the signature and payload straight from that byte[] region.
+
+MessageDigest.isEqual compares the signatures in constant time, so timing doesn't leak how many bytes matched.
+
+The token must carry exactly our pre-encoded header. Tokens with alg "none" or any other algorithm are rejected before any crypto runs.
+
+Jwts.claims(map) wraps the decoded map, so the rest of the code keeps working with io.jsonwebtoken.Claims (getSubject(), getExpiration(), get("ver", Number.class)).
+
+
+
+
+---
+
+Step 3: JwtTokenProvider delegates to the engine (JwtTokenProvider.java)
+
+package com.example.moneyflow.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Component
+public class JwtTokenProvider {
+
+    public static final String AUTHORITIES_CLAIM = "auth";
+    public static final String VERSION_CLAIM = "ver";
+
+    private final HmacJwtEngine engine;
+    private final long jwtExpiration;
+
+    public JwtTokenProvider(@Value("${moneyflow.jwt.secret}") String secret,
+                            @Value("${moneyflow.jwt.expiration-ms:86400000}") long jwtExpiration,
+                            ObjectMapper objectMapper) {
+        this.engine = new HmacJwtEngine(Base64.getDecoder().decode(secret), objectMapper);
+        this.jwtExpiration = jwtExpiration;
+    }
+
+    public String generateToken(Authentication authentication, long tokenVersion) {
+        String authorities = authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.joining(","));
+
+        // NumericDate claims are seconds since the epoch
+        long nowSeconds = System.currentTimeMillis() / 1000;
+
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put(Claims.SUBJECT, authentication.getName());
+        claims.put(AUTHORITIES_CLAIM, authorities);
+        claims.put(VERSION_CLAIM, tokenVersion);
+        claims.put(Claims.ISSUED_AT, nowSeconds);
+        claims.put(Claims.EXPIRATION, nowSeconds + jwtExpiration / 1000);
+
+        return engine.sign(claims);
+    }
+
+    public Claims parseVerifiedClaims(String token) {
+        return engine.verify(token);
+    }
+
+    public String getUserIdFromJWT(String token) {
+        Claims claims = engine.verify(token);
+        return claims != null ? claims.getSubject() : null;
+    }
+
+    public boolean validateToken(String token) {
+        return engine.verify(token) != null;
+    }
+}
+
+The tokens are still standard HS512 JWTs, so JJWT (or jwt.io) can verify them with the same key. This makes it easy to cross-check the engine in a test.
+
+
+---
+
+Step 4: Benchmark against the current implementation
+
+Add the JMH Gradle plugin to build.gradle:
+
+plugins {
+    id 'me.champeau.jmh' version '0.7.2'
+}
+
+jmh {
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    threads = 1
+    resultFormat = 'JSON'
+}
+
+src/jmh/java/com/example/moneyflow/security/JwtEngineBenchmark.java
+
+package com.example.moneyflow.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.crypto.SecretKey;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JwtEngineBenchmark {
+
+    private SecretKey key;
+    private HmacJwtEngine engine;
+    private String jjwtToken;
+    private String engineToken;
+
+    @Setup
+    public void setUp() {
+        byte[] secret = new byte[64];
+        new SecureRandom().nextBytes(secret);
+
+        key = Keys.hmacShaKeyFor(secret);
+        engine = new HmacJwtEngine(secret, new ObjectMapper());
+
+        jjwtToken = jjwtIssue();
+        engineToken = engineIssue();
+    }
+
+    @Benchmark
+    public String jjwtIssue() {
+        Date now = new Date();
+        return Jwts.builder()
+                .setSubject("MF12345678")
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + 86400000L))
+                .signWith(key)
+                .compact();
+    }
+
+    @Benchmark
+    public Claims jjwtVerify() {
+        return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(jjwtToken).getBody();
+    }
+
+    @Benchmark
+    public String engineIssue() {
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("sub", "MF12345678");
+        claims.put("iat", now);
+        claims.put("exp", now + 86400);
+        return engine.sign(claims);
+    }
+
+    @Benchmark
+    public Claims engineVerify() {
+        return engine.verify(engineToken);
+    }
+}
+
+Run it with:
+
+./gradlew jmh
+
+threads = 1 means the ops/s figure in build/results/jmh/results.json is tokens issued or verified per second per core. Compare jjwtIssue with engineIssue, and jjwtVerify with engineVerify. Add -prof gc to jmh.profilers to also compare bytes allocated per operation.
+
+
+---
+
+Conclusion
+
+The HS512 key and header are prepared once, Mac instances are reused per thread, and no parser is built per request.
+
+Verification works directly on the token's bytes and only decodes the payload after the signature has matched.
+
+The tokens stay standard JWTs, and JwtTokenProvider keeps the same public methods. The JMH benchmark compares issue and verify throughput with the JJWT path.
@@ -0,0 +1,496 @@
+The frontend posts senderId, receiverId and amount to /api/transfer, but on the backend Transfer.balance is just a mutable field written back with TransferRepository.save. Nothing stops two concurrent transfers from reading the same balance, each subtracting its own amount, and the second save overwriting the first (a lost update). A global synchronized block would fix that, but then the whole bank could only process one transfer at a time.
+
+The approach below makes each transfer atomic and still lets unrelated accounts move in parallel:
+
+1. Striped locks: each account number hashes to one of N locks. A transfer takes the two locks it needs, always in the same order, so two transfers can never deadlock.
+
+
+2. The lock is held until the database transaction has committed, so a second transfer on the same account always reads the committed balance.
+
+
+3. Optimistic @Version on the Transfer row covers the case the in-process lock can't: several app nodes behind a load balancer. A conflicting commit is retried a few times.
+
+
+4. Every movement is written as one debit row and one credit row in a transactions table, so the history is no longer only a mutable balance.
+
+
+
+Here's the code to achieve this:
+
+
+---
+
+Step 1: Add a version column to Transfer (Transfer.java)
+
+package com.example.moneyflow.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Version;
+import lombok.Data;
+
+@Entity
+@Data
+public class Transfer {
+    @Id
+    private String id;
+    private String userId;
+
+    @Column(unique = true, nullable = false)
+    private String accountNumber;
+
+    private String ifscCode;
+    private String firstName;
+    private String lastName;
+    private String email;
+    private double balance;
+
+    @Version
+    private long version;
+}
+
+
+---
+
+Step 2: One row per account movement (Transaction.java)
+
+package com.example.moneyflow.model;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "transactions")
+@Data
+public class Transaction {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String transactionId;           // shared by the debit and the credit row
+    private String accountNumber;           // account this row belongs to
+    private String counterpartyAccountNumber;
+    private double amount;                  // negative for a debit, positive for a credit
+    private double balanceAfterTransfer;
+    private Instant timestamp;
+}
+
+TransferRepository.java and TransactionRepository.java
+
+package com.example.moneyflow.repos;
+
+import com.example.moneyflow.model.Transfer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.Optional;
+
+public interface TransferRepository extends JpaRepository<Transfer, String> {
+    Optional<Transfer> findByEmail(String email);
+    Optional<Transfer> findByAccountNumber(String accountNumber);
+    Optional<Transfer> findByUserId(String userId);
+}
+
+package com.example.moneyflow.repos;
+
+import com.example.moneyflow.model.Transaction;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+}
+
+
+---
+
+Step 3: Striped account locks (AccountLockStripes.java)
+
+package com.example.moneyflow.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+@Component
+public class AccountLockStripes {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public AccountLockStripes(@Value("${moneyflow.transfer.lock-stripes:1024}") int stripes) {
+        int size = Integer.highestOneBit(Math.max(2, stripes - 1) << 1);  // next power of two
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    // Locks both accounts, lower stripe first, and returns a handle that unlocks them
+    public Held lock(String firstAccount, String secondAccount) {
+        int a = stripeOf(firstAccount);
+        int b = stripeOf(secondAccount);
+        int low = Math.min(a, b);
+        int high = Math.max(a, b);
+
+        locks[low].lock();
+        if (high != low) {
+            try {
+                locks[high].lock();
+            } catch (RuntimeException e) {
+                locks[low].unlock();
+                throw e;
+            }
+        }
+        return new Held(low, high);
+    }
+
+    private int stripeOf(String accountNumber) {
+        int h = accountNumber.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public final class Held implements AutoCloseable {
+        private final int low;
+        private final int high;
+
+        private Held(int low, int high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        public void close() {
+            if (high != low) {
+                locks[high].unlock();
+            }
+            locks[low].unlock();
+        }
+    }
+}
+
+Explanation:
+
+The locks are ordered by stripe index and not by the account number string. Two account numbers can share a stripe, and ordering by stripe is what guarantees that no two threads ever wait on each other in opposite order.
+
+When both accounts land on the same stripe, the lock is taken only once. ReentrantLock would allow a second lock() call, but the handle would then have to unlock twice.
+
+1024 stripes cost a few tens of kilobytes. Two transfers only contend when they share a stripe, and with that many stripes that is rare.
+
+
+
+
+---
+
+Step 4: Transfer service (TransferService.java)
+
+package com.example.moneyflow.service;
+
+import com.example.moneyflow.model.Transaction;
+import com.example.moneyflow.model.Transfer;
+import com.example.moneyflow.repos.TransactionRepository;
+import com.example.moneyflow.repos.TransferRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Service
+public class TransferService {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private AccountLockStripes accountLocks;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public TransferService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public TransferResult transfer(String userId, String senderAccount, String receiverAccount, double amount) {
+        if (!(amount > 0)) {
+            throw new TransferException("Amount must be greater than zero");
+        }
+        if (senderAccount.equals(receiverAccount)) {
+            throw new TransferException("Sender and receiver must be different accounts");
+        }
+
+        // Locks are released only after the transaction has committed
+        try (AccountLockStripes.Held held = accountLocks.lock(senderAccount, receiverAccount)) {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return transactionTemplate.execute(status -> doTransfer(userId, senderAccount, receiverAccount, amount));
+                } catch (OptimisticLockingFailureException e) {
+                    // Another node changed one of the rows between our read and our commit
+                    if (attempt == MAX_ATTEMPTS) {
+                        throw new TransferException("Account is busy, please retry");
+                    }
+                }
+            }
+        }
+    }
+
+    private TransferResult doTransfer(String userId, String senderAccount, String receiverAccount, double amount) {
+        Transfer sender = transferRepository.findByAccountNumber(senderAccount)
+                .orElseThrow(() -> new TransferException("Sender account not found"));
+        Transfer receiver = transferRepository.findByAccountNumber(receiverAccount)
+                .orElseThrow(() -> new TransferException("Receiver account not found"));
+
+        if (!sender.getUserId().equals(userId)) {
+            throw new TransferException("Sender account does not belong to the authenticated user");
+        }
+        if (sender.getBalance() < amount) {
+            throw new TransferException("Insufficient balance!");
+        }
+
+        sender.setBalance(sender.getBalance() - amount);
+        receiver.setBalance(receiver.getBalance() + amount);
+
+        // Both rows are version-checked on flush; a concurrent change on another node fails the commit
+        transferRepository.save(sender);
+        transferRepository.save(receiver);
+
+        String transactionId = UUID.randomUUID().toString();
+        Instant now = Instant.now();
+        transactionRepository.save(entry(transactionId, sender, receiverAccount, -amount, now));
+        transactionRepository.save(entry(transactionId, receiver, senderAccount, amount, now));
+
+        return new TransferResult(transactionId, sender.getBalance());
+    }
+
+    private static Transaction entry(String transactionId, Transfer account, String counterparty, double amount, Instant now) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(transactionId);
+        transaction.setAccountNumber(account.getAccountNumber());
+        transaction.setCounterpartyAccountNumber(counterparty);
+        transaction.setAmount(amount);
+        transaction.setBalanceAfterTransfer(account.getBalance());
+        transaction.setTimestamp(now);
+        return transaction;
+    }
+}
+
+TransferResult.java
+
+package com.example.moneyflow.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class TransferResult {
+    private String transactionId;
+    private double balanceAfterTransfer;
+}
+
+TransferException.java
+
+package com.example.moneyflow.service;
+
+public class TransferException extends RuntimeException {
+
+    public TransferException(String message) {
+        super(message);
+    }
+}
+
+Explanation:
+
+TransactionTemplate is used instead of @Transactional so that the commit happens inside the try-with-resources block. With @Transactional on the same method, the locks would be released before the proxy commits.
+
+A TransferException thrown inside the template rolls the transaction back, so a failed validation writes nothing.
+
+The sender must belong to the authenticated user. Otherwise anyone with a token could debit any account number they know.
+
+
+
+
+---
+
+Step 5: Controller (TransferController.java)
+
+package com.example.moneyflow.controller;
+
+import com.example.moneyflow.service.TransferException;
+import com.example.moneyflow.service.TransferResult;
+import com.example.moneyflow.service.TransferService;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/transfer")
+@CrossOrigin(origins = "http://localhost:3000")
+public class TransferController {
+
+    @Autowired
+    private TransferService transferService;
+
+    @PostMapping
+    public ResponseEntity<TransferResult> transfer(@RequestBody TransferRequest request, Authentication authentication) {
+        TransferResult result = transferService.transfer(
+                authentication.getName(), request.getSenderId(), request.getReceiverId(), request.getAmount());
+        return ResponseEntity.ok(result);
+    }
+
+    @ExceptionHandler(TransferException.class)
+    public ResponseEntity<String> handleTransferException(TransferException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @Data
+    public static class TransferRequest {
+        private String senderId;     // sender account number
+        private String receiverId;   // receiver account number
+        private double amount;
+    }
+}
+
+
+---
+
+Step 6: Multi-threaded stress test (TransferServiceStressTest.java)
+
+The test runs against an in-memory H2 database (testRuntimeOnly 'com.h2database:h2' in build.gradle). Several threads move random amounts between a small set of accounts, so there is a lot of contention. At the end the total money in the bank must be unchanged, no balance may be negative, and the debit and credit rows must add up to zero.
+
+The only failure the test accepts is "Insufficient balance!". Any other TransferException (for example "Account is busy", which would mean the stripe locks didn't serialise the transfers) or any other exception fails the test. Most transfers must also succeed, so a service that rejects everything can't pass by conserving money trivially.
+
+package com.example.moneyflow.service;
+
+import com.example.moneyflow.model.Transfer;
+import com.example.moneyflow.repos.TransactionRepository;
+import com.example.moneyflow.repos.TransferRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// NON_KEYWORDS: H2 2.x reserves USER and TIMESTAMP, the user table and transactions.timestamp
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:stress;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER,TIMESTAMP")
+class TransferServiceStressTest {
+
+    private static final int ACCOUNTS = 20;
+    private static final int THREADS = 16;
+    private static final int TRANSFERS_PER_THREAD = 500;
+    private static final double OPENING_BALANCE = 1000.0;
+    // Amounts average 100 against opening balances of 1000, so far more than half go through
+    private static final int MIN_SUCCEEDED = THREADS * TRANSFERS_PER_THREAD / 2;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Test
+    void concurrentTransfersConserveMoney() throws Exception {
+        List<Transfer> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Transfer account = new Transfer();
+            account.setId("id-" + i);
+            account.setUserId("user-" + i);
+            account.setAccountNumber("ACC" + i);
+            account.setBalance(OPENING_BALANCE);
+            accounts.add(transferRepository.save(account));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger insufficient = new AtomicInteger();
+        Queue<String> unexpected = new ConcurrentLinkedQueue<>();
+        List<Future<?>> workers = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int from = random.nextInt(ACCOUNTS);
+                    int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                    try {
+                        transferService.transfer("user-" + from, "ACC" + from, "ACC" + to, random.nextInt(1, 200));
+                        succeeded.incrementAndGet();
+                    } catch (TransferException e) {
+                        // Insufficient balance is a legitimate outcome under contention; nothing else is
+                        if ("Insufficient balance!".equals(e.getMessage())) {
+                            insufficient.incrementAndGet();
+                        } else {
+                            unexpected.add(e.getMessage());
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(2, TimeUnit.MINUTES)).isTrue();
+        for (Future<?> worker : workers) {
+            worker.get();   // rethrows anything other than a TransferException
+        }
+
+        assertThat(unexpected).isEmpty();
+        assertThat(succeeded.get() + insufficient.get()).isEqualTo(THREADS * TRANSFERS_PER_THREAD);
+        assertThat(succeeded.get()).isGreaterThanOrEqualTo(MIN_SUCCEEDED);
+        // One debit and one credit row per successful transfer, none for a rejected one
+        assertThat(transactionRepository.count()).isEqualTo(2L * succeeded.get());
+
+        List<Transfer> after = transferRepository.findAll();
+        double total = after.stream().mapToDouble(Transfer::getBalance).sum();
+
+        assertThat(total).isEqualTo(ACCOUNTS * OPENING_BALANCE);
+        assertThat(after).allSatisfy(account -> assertThat(account.getBalance()).isGreaterThanOrEqualTo(0.0));
+        assertThat(transactionRepository.findAll().stream().mapToDouble(t -> t.getAmount()).sum()).isZero();
+    }
+}
+
+The amounts are whole numbers, so the double sums in the assertions are exact. The next step replaces the double balance with exact integer minor units.
+
+
+---
+
+Conclusion
+
+Each transfer debits and credits both accounts inside one committed transaction while holding both stripe locks. Concurrent transfers on the same account are serialised, and transfers on different accounts run in parallel.
+
+@Version with a bounded retry keeps updates safe when several application nodes share the database.
+
+The stress test checks that money is conserved and that no balance goes negative under heavy contention.
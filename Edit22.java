@@ -0,0 +1,554 @@
+Transfer.balance is a double, and BalanceService.generateRandomBalance creates a new BigDecimal on every call just to round to two places, then converts the result back to double. The double itself still can't hold most two-decimal values exactly (0.1 + 0.2 != 0.3). Over many transfers the balances drift by fractions of a cent, and every rounding step allocates.
+
+The fix is to store money as a long count of minor units (paise/cents): 1234.56 is stored as 123456. Adding and subtracting longs is exact and allocates nothing. A small immutable Money type is used only at the edges (JSON in/out, DTOs), and JPA and Jackson converters take care of the mapping.
+
+
+---
+
+Step 1: The Money value type (Money.java)
+
+package com.example.moneyflow.model;
+
+public final class Money implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+    private static final long FACTOR = 100L;
+
+    public static final Money ZERO = new Money(0L);
+
+    private final long minor;
+
+    private Money(long minor) {
+        this.minor = minor;
+    }
+
+    public static Money ofMinor(long minor) {
+        return minor == 0L ? ZERO : new Money(minor);
+    }
+
+    // Parses "1234", "1234.5" or "1234.56" exactly; more than two decimals is an error, not a rounding
+    public static Money parse(CharSequence text) {
+        return ofMinor(parseMinor(text));
+    }
+
+    public static long parseMinor(CharSequence text) {
+        int length = text.length();
+        if (length == 0) {
+            throw new NumberFormatException("Empty amount");
+        }
+
+        int i = 0;
+        boolean negative = text.charAt(0) == '-';
+        if (negative || text.charAt(0) == '+') {
+            i++;
+        }
+
+        long units = 0L;
+        int digits = 0;
+        for (; i < length && text.charAt(i) != '.'; i++) {
+            units = Math.addExact(Math.multiplyExact(units, 10L), digit(text, i));
+            digits++;
+        }
+
+        long fraction = 0L;
+        int fractionDigits = 0;
+        if (i < length) {
+            for (i++; i < length; i++) {
+                if (++fractionDigits > SCALE) {
+                    throw new NumberFormatException("More than " + SCALE + " decimal places: " + text);
+                }
+                fraction = fraction * 10L + digit(text, i);
+            }
+        }
+        if (digits == 0 && fractionDigits == 0) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10L;
+        }
+
+        long minor = Math.addExact(Math.multiplyExact(units, FACTOR), fraction);
+        return negative ? -minor : minor;
+    }
+
+    public long getMinor() {
+        return minor;
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minor, other.minor));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minor, other.minor));
+    }
+
+    public boolean isPositive() {
+        return minor > 0L;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Money && ((Money) o).minor == minor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    @Override
+    public String toString() {
+        return format(minor);
+    }
+
+    // 123456 -> "1234.56", -5 -> "-0.05"
+    public static String format(long minor) {
+        StringBuilder sb = new StringBuilder(24);
+        appendTo(sb, minor);
+        return sb.toString();
+    }
+
+    public static void appendTo(StringBuilder sb, long minor) {
+        if (minor < 0) {
+            sb.append('-');
+        }
+        // Long.MIN_VALUE can't be negated; the quotient/remainder form handles it
+        long units = Math.abs(minor / FACTOR);
+        int cents = (int) Math.abs(minor % FACTOR);
+        sb.append(units).append('.');
+        if (cents < 10) {
+            sb.append('0');
+        }
+        sb.append(cents);
+    }
+
+    private static int digit(CharSequence text, int index) {
+        char c = text.charAt(index);
+        if (c < '0' || c > '9') {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+        return c - '0';
+    }
+}
+
+Explanation:
+
+parse never goes through double, so "0.10" is exactly 10 minor units. An amount with three decimals is rejected instead of being silently rounded.
+
+Math.addExact/subtractExact throw on overflow instead of wrapping around to a negative balance.
+
+format/appendTo write straight into a StringBuilder. The statement export in a later step uses appendTo to print amounts without creating a Money or a BigDecimal per row.
+
+
+
+
+---
+
+Step 2: JPA converter (MoneyConverter.java)
+
+Money columns are stored as BIGINT minor units.
+
+package com.example.moneyflow.model;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+@Converter(autoApply = true)
+public class MoneyConverter implements AttributeConverter<Money, Long> {
+
+    @Override
+    public Long convertToDatabaseColumn(Money money) {
+        return money == null ? null : money.getMinor();
+    }
+
+    @Override
+    public Money convertToEntityAttribute(Long minor) {
+        return minor == null ? null : Money.ofMinor(minor);
+    }
+}
+
+
+---
+
+Step 3: Jackson serializer/deserializer (MoneyJsonComponent.java)
+
+The API keeps sending and accepting plain decimal numbers (1234.56), so the React frontend doesn't need any change. On input, the deserializer reads the number's original text and never parses it as a double.
+
+package com.example.moneyflow.config;
+
+import com.example.moneyflow.model.Money;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+
+@JsonComponent
+public class MoneyJsonComponent {
+
+    public static class Serializer extends JsonSerializer<Money> {
+        @Override
+        public void serialize(Money value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeNumber(value.toString());
+        }
+    }
+
+    public static class Deserializer extends JsonDeserializer<Money> {
+        @Override
+        public Money deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            try {
+                // getText() returns the literal as sent ("12.30"), for both number and string tokens
+                return Money.parse(p.getText().trim());
+            } catch (NumberFormatException | ArithmeticException e) {
+                return (Money) ctxt.handleWeirdStringValue(Money.class, p.getText(), e.getMessage());
+            }
+        }
+    }
+
+    // For entity fields kept as primitive long minor units
+    public static class MinorUnitsSerializer extends JsonSerializer<Long> {
+        @Override
+        public void serialize(Long minor, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeNumber(Money.format(minor));
+        }
+    }
+
+    // The reverse: "balance": 1234.56 -> 123456. Without it Jackson coerces the number to a long and drops the decimals.
+    public static class MinorUnitsDeserializer extends JsonDeserializer<Long> {
+        @Override
+        public Long deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            try {
+                return Money.parseMinor(p.getText().trim());
+            } catch (NumberFormatException | ArithmeticException e) {
+                return (Long) ctxt.handleWeirdStringValue(Long.class, p.getText(), e.getMessage());
+            }
+        }
+    }
+}
+
+
+---
+
+Step 4: Keep entities on primitive longs (Transfer.java, Transaction.java)
+
+The entities keep balances as long fields, so reading, comparing and updating a balance on the transfer path creates no objects at all. The JSON output still shows "balance": 1234.56.
+
+Every such field needs both annotations. The serializer alone only covers output. When JSON is read back into the entity (a cached copy, a test fixture, a client that posts the profile), Jackson would bind "balance": 52345.67 to the long by truncating it to 52345, which is 523.45 in minor units, and it would do so without an error. With the deserializer the text goes through Money.parseMinor, so the value is exact and three decimals are rejected.
+
+package com.example.moneyflow.model;
+
+import com.example.moneyflow.config.MoneyJsonComponent;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Version;
+import lombok.Data;
+
+@Entity
+@Data
+public class Transfer {
+    @Id
+    private String id;
+    private String userId;
+
+    @Column(unique = true, nullable = false)
+    private String accountNumber;
+
+    private String ifscCode;
+    private String firstName;
+    private String lastName;
+    private String email;
+
+    @Column(name = "balance_minor", nullable = false)
+    @JsonProperty("balance")
+    @JsonSerialize(using = MoneyJsonComponent.MinorUnitsSerializer.class)
+    @JsonDeserialize(using = MoneyJsonComponent.MinorUnitsDeserializer.class)
+    private long balanceMinor;
+
+    @Version
+    private long version;
+}
+
+Transaction.java (changed fields)
+
+    @JsonSerialize(using = MoneyJsonComponent.MinorUnitsSerializer.class)
+    @JsonDeserialize(using = MoneyJsonComponent.MinorUnitsDeserializer.class)
+    private long amountMinor;                  // negative for a debit, positive for a credit
+
+    @JsonSerialize(using = MoneyJsonComponent.MinorUnitsSerializer.class)
+    @JsonDeserialize(using = MoneyJsonComponent.MinorUnitsDeserializer.class)
+    private long balanceAfterTransferMinor;
+
+
+---
+
+Step 5: Generate the opening balance without BigDecimal (BalanceService.java)
+
+package com.example.moneyflow.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+@Service
+public class BalanceService {
+
+    private static final long MIN_BALANCE_MINOR = 1_000_00L;               // 1,000.00
+    private static final long MAX_BALANCE_MINOR = 1_000_000_000_00L;       // 1,000,000,000.00
+
+    // Random balance between 1000 and 1,000,000,000 with exactly 2 decimal places, as minor units
+    public long generateRandomBalance() {
+        return ThreadLocalRandom.current().nextLong(MIN_BALANCE_MINOR, MAX_BALANCE_MINOR);
+    }
+}
+
+Drawing a random long of minor units gives exactly two decimals by construction, so no rounding step is needed.
+
+
+---
+
+Step 6: Exact arithmetic on the transfer path (TransferService.java)
+
+Only the changed parts are shown. The controller's TransferRequest.amount becomes Money (deserialized from the request JSON as shown above), and the service works with the long value.
+
+    public TransferResult transfer(String userId, String senderAccount, String receiverAccount, long amountMinor) {
+        if (amountMinor <= 0L) {
+            throw new TransferException("Amount must be greater than zero");
+        }
+        // ... locking and retries unchanged
+    }
+
+    private TransferResult doTransfer(String userId, String senderAccount, String receiverAccount, long amountMinor) {
+        // ... lookups and ownership check unchanged
+
+        if (sender.getBalanceMinor() < amountMinor) {
+            throw new TransferException("Insufficient balance!");
+        }
+
+        sender.setBalanceMinor(sender.getBalanceMinor() - amountMinor);
+        receiver.setBalanceMinor(Math.addExact(receiver.getBalanceMinor(), amountMinor));
+
+        // ... saves and debit/credit entries unchanged, using -amountMinor / amountMinor
+        return new TransferResult(transactionId, Money.ofMinor(sender.getBalanceMinor()));
+    }
+
+TransferController.java
+
+    @PostMapping
+    public ResponseEntity<TransferResult> transfer(@RequestBody TransferRequest request, Authentication authentication) {
+        TransferResult result = transferService.transfer(
+                authentication.getName(), request.getSenderId(), request.getReceiverId(), request.getAmount().getMinor());
+        return ResponseEntity.ok(result);
+    }
+
+    @Data
+    public static class TransferRequest {
+        private String senderId;
+        private String receiverId;
+        private Money amount;
+    }
+
+TransferResult.balanceAfterTransfer becomes Money as well. In the stress test from the previous step, the sums become mapToLong(Transfer::getBalanceMinor).sum() and the opening balance becomes 1000_00L.
+
+
+---
+
+Step 7: Migrate the existing columns (MySQL)
+
+The columns are replaced in three phases: expand, backfill, contract. Old and new nodes run side by side during a rolling deploy, and the old code keeps working until the very last phase. Nothing is dropped before the new code is everywhere.
+
+Phase 1, expand (before deploying). Add the new columns as nullable, and give the old ones a default so that inserts from the new code, which no longer mention them, are accepted. Both are metadata-only changes:
+
+ALTER TABLE transfer ADD COLUMN balance_minor BIGINT NULL,
+                     ALTER COLUMN balance SET DEFAULT 0;
+
+ALTER TABLE transactions ADD COLUMN amount_minor BIGINT NULL,
+                         ADD COLUMN balance_after_transfer_minor BIGINT NULL,
+                         ALTER COLUMN amount SET DEFAULT 0,
+                         ALTER COLUMN balance_after_transfer SET DEFAULT 0;
+
+Triggers keep the two representations in step, whichever version of the code wrote the row. Old nodes write balance and never mention balance_minor. New nodes do the reverse. The trigger copies whichever side changed to the other:
+
+DELIMITER //
+CREATE TRIGGER transfer_minor_bi BEFORE INSERT ON transfer FOR EACH ROW
+BEGIN
+    IF NEW.balance_minor IS NULL THEN
+        SET NEW.balance_minor = ROUND(NEW.balance * 100);
+    ELSE
+        SET NEW.balance = NEW.balance_minor / 100;
+    END IF;
+END//
+
+CREATE TRIGGER transfer_minor_bu BEFORE UPDATE ON transfer FOR EACH ROW
+BEGIN
+    IF NOT (NEW.balance_minor <=> OLD.balance_minor) THEN
+        SET NEW.balance = NEW.balance_minor / 100;
+    ELSEIF NOT (NEW.balance <=> OLD.balance) THEN
+        SET NEW.balance_minor = ROUND(NEW.balance * 100);
+    END IF;
+END//
+
+-- Transactions are only ever inserted
+CREATE TRIGGER transactions_minor_bi BEFORE INSERT ON transactions FOR EACH ROW
+BEGIN
+    IF NEW.amount_minor IS NULL THEN
+        SET NEW.amount_minor = ROUND(NEW.amount * 100),
+            NEW.balance_after_transfer_minor = ROUND(NEW.balance_after_transfer * 100);
+    ELSE
+        SET NEW.amount = NEW.amount_minor / 100,
+            NEW.balance_after_transfer = NEW.balance_after_transfer_minor / 100;
+    END IF;
+END//
+DELIMITER ;
+
+Phase 2, backfill (still before deploying). Fill the rows written before the triggers existed. Walk the primary key in ranges of about 5,000 rows, so that each statement is a short autocommit transaction that locks only its own range:
+
+UPDATE transfer SET balance_minor = ROUND(balance * 100)
+WHERE id > ? AND id <= ? AND balance_minor IS NULL;
+
+UPDATE transactions SET amount_minor = ROUND(amount * 100),
+                        balance_after_transfer_minor = ROUND(balance_after_transfer * 100)
+WHERE id > ? AND id <= ? AND amount_minor IS NULL;
+
+The upper bound of each range comes from SELECT id FROM <table> WHERE id > ? ORDER BY id LIMIT 1 OFFSET 4999. The IS NULL condition leaves alone the rows the triggers have already filled. Once SELECT COUNT(*) FROM transfer WHERE balance_minor IS NULL and the same count for transactions both return 0, deploy the new code. Nodes can be rolled one at a time, and rolling back to the old code is safe for as long as the triggers exist.
+
+Phase 3, contract (after every node runs the new code and the rollback window has passed):
+
+DROP TRIGGER transfer_minor_bi;
+DROP TRIGGER transfer_minor_bu;
+DROP TRIGGER transactions_minor_bi;
+
+ALTER TABLE transfer MODIFY balance_minor BIGINT NOT NULL,
+                     DROP COLUMN balance;
+ALTER TABLE transactions MODIFY amount_minor BIGINT NOT NULL,
+                         MODIFY balance_after_transfer_minor BIGINT NOT NULL,
+                         DROP COLUMN amount,
+                         DROP COLUMN balance_after_transfer;
+
+Both operations rebuild the table in place and allow concurrent DML, so transfers keep running. The NOT NULL change needs strict SQL mode, which is MySQL's default, to run that way.
+
+Don't rely on spring.jpa.hibernate.ddl-auto=update for any of this. Hibernate would add the new columns but never fill them from the old ones.
+
+
+---
+
+Step 8: Benchmark against the BigDecimal round trip
+
+src/jmh/java/com/example/moneyflow/model/MoneyBenchmark.java
+
+package com.example.moneyflow.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoneyBenchmark {
+
+    private double balance = 52_345.67;
+    private long balanceMinor = 52_345_67L;
+
+    @Benchmark
+    public double randomBalanceBigDecimal() {
+        double random = ThreadLocalRandom.current().nextDouble(1000, 1_000_000_000);
+        return new BigDecimal(random).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    @Benchmark
+    public long randomBalanceMinorUnits() {
+        return ThreadLocalRandom.current().nextLong(1_000_00L, 1_000_000_000_00L);
+    }
+
+    @Benchmark
+    public double debitCreditDouble() {
+        double debited = BigDecimal.valueOf(balance - 12.34).setScale(2, RoundingMode.HALF_UP).doubleValue();
+        return BigDecimal.valueOf(debited + 12.34).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    @Benchmark
+    public long debitCreditMinorUnits() {
+        long debited = balanceMinor - 12_34L;
+        return Math.addExact(debited, 12_34L);
+    }
+}
+
+Run ./gradlew jmh with -prof gc. The minor-unit variants should show 0 B/op, while the BigDecimal variants allocate on every call.
+
+
+---
+
+Step 9: Round-trip test (MoneyJsonComponentTest.java)
+
+package com.example.moneyflow.config;
+
+import com.example.moneyflow.model.Transfer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MoneyJsonComponentTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void balanceRoundTripsExactly() throws Exception {
+        Transfer transfer = new Transfer();
+        transfer.setBalanceMinor(52_345_67L);
+
+        String json = objectMapper.writeValueAsString(transfer);
+
+        assertThat(json).contains("\"balance\":52345.67");
+        assertThat(objectMapper.readValue(json, Transfer.class).getBalanceMinor()).isEqualTo(52_345_67L);
+    }
+
+    @Test
+    void wholeAndOneDecimalAmountsAreScaled() throws Exception {
+        assertThat(objectMapper.readValue("{\"balance\": 52345}", Transfer.class).getBalanceMinor()).isEqualTo(52_345_00L);
+        assertThat(objectMapper.readValue("{\"balance\": 0.1}", Transfer.class).getBalanceMinor()).isEqualTo(10L);
+    }
+
+    @Test
+    void moreThanTwoDecimalsIsRejected() {
+        assertThatThrownBy(() -> objectMapper.readValue("{\"balance\": 1.005}", Transfer.class))
+                .isInstanceOf(InvalidFormatException.class);
+    }
+}
+
+The property-level annotations work with a plain ObjectMapper, so the test needs no Spring context.
+
+
+---
+
+Conclusion
+
+Balances and amounts are now exact long minor units. Debits, credits and balance checks on the transfer path are plain long arithmetic with overflow checks and no allocation.
+
+Money and its JPA/Jackson converters are used at the API and DTO edges. The JSON format the frontend sees doesn't change.
+
+generateRandomBalance no longer allocates a BigDecimal, and the JMH benchmark shows the difference.
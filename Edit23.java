@@ -0,0 +1,482 @@
+UserService.registerUser handles one customer per call. It BCrypt-hashes the password on the request thread, then saves one User and one Transfer, each with its own save() and its own INSERT round trip. Onboarding a partner bank with a few hundred thousand customers this way means a few hundred thousand HTTP calls, and at BCrypt cost 10 that is more than an hour of hashing on a single thread.
+
+Hibernate's hibernate.jdbc.batch_size won't help much here. The entities use assigned String ids, so every save() first runs a SELECT to decide between insert and merge, and that kills batching.
+
+Here is a bulk path that doesn't go through the entity manager at all:
+
+1. POST /api/user/register/bulk accepts newline-delimited JSON (one applicant per line) and reads it as a stream, so the whole file is never held in memory. A line that isn't valid JSON is reported as a failure of that line, like any other bad row.
+
+
+2. Applicants are grouped into chunks of a configurable size. Each chunk's passwords are hashed in parallel on a dedicated pool (not the login pool from the earlier step, so onboarding can't slow down logins).
+
+
+3. Each chunk is written with two JdbcTemplate.batchUpdate calls (users, then transfer) in its own transaction.
+
+
+4. A failing chunk is rolled back and then retried row by row, so only the bad rows are rejected. The job always continues with the next chunk.
+
+
+5. A progress line is streamed back to the caller after every chunk.
+
+
+6. Only operators may call it. Users get a role column, and CustomUserDetailsService grants ROLE_ADMIN to operator accounts.
+
+
+
+
+---
+
+Step 1: Turn on JDBC batch rewriting (application.properties)
+
+# MySQL: collapse a JDBC batch into multi-row INSERTs
+spring.datasource.url=jdbc:mysql://localhost:3306/moneyflowdb?rewriteBatchedStatements=true
+
+moneyflow.bulk.chunk-size=1000
+moneyflow.bulk.hash-threads=0
+moneyflow.bulk.timeout=PT2H
+
+Without rewriteBatchedStatements, MySQL Connector/J still sends one INSERT per row, even inside batchUpdate.
+
+
+---
+
+Step 2: Request and progress DTOs
+
+package com.example.moneyflow.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+@Data
+public class BulkApplicant {
+    private String externalRef;   // partner's own customer id, echoed back in failures
+    private String firstName;
+    private String lastName;
+    private String email;
+    private String password;
+
+    @JsonIgnore
+    private String parseError;    // set instead of the fields above when the input line wasn't valid JSON
+
+    public static BulkApplicant malformed(long lineNumber, String reason) {
+        BulkApplicant applicant = new BulkApplicant();
+        applicant.setExternalRef("line " + lineNumber);
+        applicant.setParseError("Malformed JSON: " + reason);
+        return applicant;
+    }
+}
+
+package com.example.moneyflow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BulkChunkReport {
+    private int chunk;
+    private int registered;
+    private int failed;
+    private long totalRegistered;
+    private long totalFailed;
+    private long elapsedMillis;
+    private List<Failure> failures;
+
+    @Data
+    @AllArgsConstructor
+    public static class Failure {
+        private String externalRef;
+        private String reason;
+    }
+}
+
+
+---
+
+Step 3: The bulk registration service (BulkRegistrationService.java)
+
+package com.example.moneyflow.service;
+
+import com.example.moneyflow.dto.BulkApplicant;
+import com.example.moneyflow.dto.BulkChunkReport;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+@Service
+public class BulkRegistrationService implements DisposableBean {
+
+    private static final String INSERT_USER =
+            "INSERT INTO user (user_id, password, email, token_version, enabled, role) VALUES (?, ?, ?, 0, TRUE, 'USER')";
+    private static final String INSERT_TRANSFER =
+            "INSERT INTO transfer (id, user_id, account_number, ifsc_code, first_name, last_name, email, balance_minor, version) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, 0, 0)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UserService userService;
+
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService hashPool;
+    private final int chunkSize;
+
+    public BulkRegistrationService(PlatformTransactionManager transactionManager,
+                                   @Value("${moneyflow.bulk.chunk-size:1000}") int chunkSize,
+                                   @Value("${moneyflow.bulk.hash-threads:0}") int hashThreads) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.hashPool = Executors.newFixedThreadPool(
+                hashThreads > 0 ? hashThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    // Consumes the applicants lazily and reports after every chunk; never aborts on a bad chunk
+    public void register(Iterator<BulkApplicant> applicants, Consumer<BulkChunkReport> progress) {
+        long started = System.currentTimeMillis();
+        long totalRegistered = 0;
+        long totalFailed = 0;
+        int chunkNumber = 0;
+
+        List<BulkApplicant> chunk = new ArrayList<>(chunkSize);
+        while (applicants.hasNext()) {
+            chunk.add(applicants.next());
+            if (chunk.size() == chunkSize || !applicants.hasNext()) {
+                List<BulkChunkReport.Failure> failures = new ArrayList<>();
+                int registered = writeChunk(prepare(chunk, failures), failures);
+
+                totalRegistered += registered;
+                totalFailed += failures.size();
+                progress.accept(new BulkChunkReport(++chunkNumber, registered, failures.size(),
+                        totalRegistered, totalFailed, System.currentTimeMillis() - started, failures));
+
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+    }
+
+    // Validates, assigns ids and hashes passwords in parallel
+    private List<Row> prepare(List<BulkApplicant> chunk, List<BulkChunkReport.Failure> failures) {
+        List<CompletableFuture<Row>> pending = new ArrayList<>(chunk.size());
+        for (BulkApplicant applicant : chunk) {
+            if (applicant.getParseError() != null) {
+                failures.add(new BulkChunkReport.Failure(applicant.getExternalRef(), applicant.getParseError()));
+                continue;
+            }
+            if (applicant.getEmail() == null || applicant.getPassword() == null || applicant.getPassword().isEmpty()) {
+                failures.add(new BulkChunkReport.Failure(applicant.getExternalRef(), "email and password are required"));
+                continue;
+            }
+            Row row = new Row(applicant,
+                    userService.generateUserId(UserService.USER_ID_LENGTH),
+                    userService.generateAccountNumber(),
+                    userService.generateIFSCCode(),
+                    userService.generateUniquePin());
+            pending.add(CompletableFuture.supplyAsync(() -> {
+                row.passwordHash = passwordEncoder.encode(applicant.getPassword());
+                return row;
+            }, hashPool));
+        }
+
+        List<Row> rows = new ArrayList<>(pending.size());
+        for (CompletableFuture<Row> future : pending) {
+            rows.add(future.join());
+        }
+        return rows;
+    }
+
+    private int writeChunk(List<Row> rows, List<BulkChunkReport.Failure> failures) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(rows));
+            return rows.size();
+        } catch (DataAccessException chunkFailure) {
+            // The whole chunk was rolled back; isolate the offending rows one by one
+            int registered = 0;
+            for (Row row : rows) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(List.of(row)));
+                    registered++;
+                } catch (DataAccessException rowFailure) {
+                    failures.add(new BulkChunkReport.Failure(row.applicant.getExternalRef(),
+                            rowFailure.getMostSpecificCause().getMessage()));
+                }
+            }
+            return registered;
+        }
+    }
+
+    private void insert(List<Row> rows) {
+        jdbcTemplate.batchUpdate(INSERT_USER, rows, rows.size(), (ps, row) -> {
+            ps.setString(1, row.userId);
+            ps.setString(2, row.passwordHash);
+            ps.setString(3, row.applicant.getEmail());
+        });
+        jdbcTemplate.batchUpdate(INSERT_TRANSFER, rows, rows.size(), (ps, row) -> {
+            ps.setString(1, row.pin);
+            ps.setString(2, row.userId);
+            ps.setString(3, row.accountNumber);
+            ps.setString(4, row.ifscCode);
+            ps.setString(5, row.applicant.getFirstName());
+            ps.setString(6, row.applicant.getLastName());
+            ps.setString(7, row.applicant.getEmail());
+        });
+    }
+
+    @Override
+    public void destroy() {
+        hashPool.shutdown();
+    }
+
+    private static final class Row {
+        final BulkApplicant applicant;
+        final String userId;
+        final String accountNumber;
+        final String ifscCode;
+        final String pin;
+        volatile String passwordHash;
+
+        Row(BulkApplicant applicant, String userId, String accountNumber, String ifscCode, String pin) {
+            this.applicant = applicant;
+            this.userId = userId;
+            this.accountNumber = accountNumber;
+            this.ifscCode = ifscCode;
+            this.pin = pin;
+        }
+    }
+}
+
+Explanation:
+
+Ids and the PIN (the Transfer id) are assigned before the insert. No row needs a generated key read back, so both batchUpdate calls run as true JDBC batches.
+
+Hashing is the expensive part. With N hash threads a chunk of 1000 takes about 1000 × 70 ms / N instead of 70 s.
+
+A failed chunk (for example a duplicate email that hits a unique constraint) costs one extra pass of single-row inserts over that chunk only. Every other chunk still goes through the fast path.
+
+The existing generateUserId/generateAccountNumber/generateIFSCCode/generateUniquePin helpers in UserService change from private to package-private so this service can reuse them. The next step replaces them with a collision-free allocator.
+
+
+
+
+---
+
+Step 4: Reading NDJSON line by line (NdjsonApplicantReader.java)
+
+A Jackson MappingIterator over the whole body would stop at the first malformed line: hasNext() throws, and every applicant after it is lost. This reader splits the body into lines itself and parses each one on its own, so a bad line becomes a failed row in its chunk's report and the job goes on.
+
+package com.example.moneyflow.service;
+
+import com.example.moneyflow.dto.BulkApplicant;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class NdjsonApplicantReader implements Iterator<BulkApplicant>, Closeable {
+
+    private final BufferedReader reader;
+    private final ObjectReader json;
+
+    private String pendingLine;
+    private long lineNumber;
+
+    public NdjsonApplicantReader(InputStream in, ObjectMapper objectMapper) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.json = objectMapper.readerFor(BulkApplicant.class);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pendingLine != null) {
+            return true;
+        }
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.isBlank()) {
+                    pendingLine = line;
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public BulkApplicant next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String line = pendingLine;
+        pendingLine = null;
+        try {
+            return json.readValue(line);
+        } catch (JsonProcessingException e) {
+            return BulkApplicant.malformed(lineNumber, e.getOriginalMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
+
+A malformed line is reported under "line N" (its 1-based line number in the upload), because it has no externalRef that could be read.
+
+
+---
+
+Step 5: Streaming endpoint (MoneyFlowController.java)
+
+The response writes one JSON progress line per chunk as soon as the chunk has committed. A large file takes minutes, far longer than the 10 s spring.mvc.async.request-timeout from the login pool step. The endpoint therefore returns a WebAsyncTask with a timeout of its own.
+
+    @Autowired
+    private BulkRegistrationService bulkRegistrationService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${moneyflow.bulk.timeout:PT2H}")
+    private Duration bulkTimeout;
+
+    @PostMapping(value = "/register/bulk", consumes = "application/x-ndjson", produces = "application/x-ndjson")
+    @PreAuthorize("hasRole('ADMIN')")
+    public WebAsyncTask<Void> registerBulk(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        NdjsonApplicantReader applicants = new NdjsonApplicantReader(request.getInputStream(), objectMapper);
+        response.setContentType("application/x-ndjson");
+
+        return new WebAsyncTask<>(bulkTimeout.toMillis(), () -> {
+            OutputStream out = response.getOutputStream();
+            try (NdjsonApplicantReader it = applicants) {
+                bulkRegistrationService.register(it, report -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(report));
+                        out.write('\n');
+                        out.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            return null;
+        });
+    }
+
+Additional imports:
+
+import com.example.moneyflow.service.BulkRegistrationService;
+import com.example.moneyflow.service.NdjsonApplicantReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+Bulk onboarding is an operator action, not a customer one, so the endpoint requires ROLE_ADMIN (enable it with @EnableMethodSecurity on SecurityConfig). Unlike /api/user/register, it is not added to the permitAll() list.
+
+
+---
+
+Step 6: Operator accounts (User.java, CustomUserDetailsService.java)
+
+Until now every user got the fixed authority ROLE_USER, so no token could ever carry ROLE_ADMIN and hasRole('ADMIN') would reject everyone. Users get a role:
+
+ALTER TABLE user ADD COLUMN role VARCHAR(16) NOT NULL DEFAULT 'USER';
+
+-- Operators are promoted by hand; there is no API for it
+UPDATE user SET role = 'ADMIN' WHERE user_id IN ('<operator user ids>');
+
+User.java
+
+    @Column(nullable = false)
+    private String role = "USER";
+
+CachedUser.java (the user cache's snapshot) copies it as well
+
+    private final String role;
+
+        this.role = user.getRole();     // in the CachedUser(User) constructor
+
+    public String getRole() {
+        return role;
+    }
+
+CustomUserDetailsService.loadUserByUsername
+
+        return org.springframework.security.core.userdetails.User
+                .withUsername(user.getUserId())
+                .password(user.getPasswordHash())
+                .authorities("ROLE_" + user.getRole())
+                .disabled(!user.isEnabled())
+                .build();
+
+Customer registration (single and bulk) always creates role USER. The role is read from the cached user snapshot, so a promotion takes effect at the operator's next login after the user cache TTL (10 seconds). In stateless mode it also goes into the token's "auth" claim at login, so the operator logs in again after being promoted.
+
+
+---
+
+Step 7: Example run
+
+curl -X POST http://localhost:8080/api/user/register/bulk \
+     -H "Authorization: Bearer <token of a user with role ADMIN>" \
+     -H "Content-Type: application/x-ndjson" \
+     --data-binary @partner-customers.ndjson
+
+partner-customers.ndjson
+
+{"externalRef":"P-000001","firstName":"Asha","lastName":"Rao","email":"asha@example.com","password":"..."}
+{"externalRef":"P-000002","firstName":"Ravi","lastName":"Kumar","email":"ravi@example.com","password":"..."}
+
+Response (one line per chunk, as it happens):
+
+{"chunk":1,"registered":1000,"failed":0,"totalRegistered":1000,"totalFailed":0,"elapsedMillis":9120,"failures":[]}
+{"chunk":2,"registered":998,"failed":2,"totalRegistered":1998,"totalFailed":2,"elapsedMillis":18044,"failures":[{"externalRef":"P-001207","reason":"Duplicate entry 'x@example.com' for key 'user.email'"},{"externalRef":"line 1544","reason":"Malformed JSON: Unexpected end-of-input: expected close marker for Object"}]}
+
+
+---
+
+Conclusion
+
+Partner onboarding is now one streamed request. Passwords are hashed in parallel on a separate pool, and both tables are written with JDBC batches in configurable chunks.
+
+Per-chunk progress is streamed back as it happens. A bad row, or a line that isn't JSON at all, only fails itself, never the job.
@@ -0,0 +1,415 @@
+UserService.registerUser builds a new customer from generateUserId(USER_ID_LENGTH), generateAccountNumber(), generateIFSCCode() and generateUniquePin(). The other variant uses UUID.randomUUID().toString().substring(0, 8) for account numbers. All of these draw random values and hope they don't collide. Eight hex characters give only about 4 billion values, so by the birthday bound the first collision is expected after roughly 77,000 accounts. A collision then either fails the insert on the unique constraint or needs a "does it exist?" query and a retry. The bulk registration from the previous step makes this much more likely.
+
+Here's an ID allocator that can't collide and needs no uniqueness round trip:
+
+1. A persistent id_sequence table holds the next free number for each kind of id.
+
+
+2. Each app node leases a block of numbers (for example 1000) from that table with one atomic UPDATE, and then hands them out from memory with a lock-free counter.
+
+
+3. Account numbers keep a Luhn check digit, so typos are caught before any lookup.
+
+
+4. User ids and PINs go through a keyed permutation. They are unique because the underlying sequence is unique, but they don't look sequential and can't be guessed from your own id.
+
+
+5. Several nodes are safe by construction: two nodes can never lease the same block, because the lease is a single row update inside a transaction.
+
+
+6. Leases use a small connection pool of their own. They happen in the middle of a registration that already holds a connection from the main pool, so they must never wait for that pool.
+
+
+
+
+---
+
+Step 1: The sequence table (schema.sql)
+
+CREATE TABLE id_sequence (
+    name       VARCHAR(32) PRIMARY KEY,
+    next_value BIGINT      NOT NULL
+);
+
+INSERT INTO id_sequence (name, next_value) VALUES ('user_id', 1), ('account_number', 1), ('pin', 1);
+
+ALTER TABLE transfer ADD CONSTRAINT uk_transfer_account_number UNIQUE (account_number);
+
+The unique constraint stays in place as a safety net. With the allocator it should never fire.
+
+
+---
+
+Step 2: Leasing blocks (IdSequenceDao.java)
+
+package com.example.moneyflow.ids;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class IdSequenceDao {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // Both are bound to the id-sequence pool (IdSequenceConfig), not to the application's DataSource
+    public IdSequenceDao(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    // Reserves [start, start + size) for the caller. Runs in its own transaction on its own connection, so a lease
+    // is never rolled back together with a failed registration (a few wasted numbers are fine, a reused one is not).
+    public long lease(String name, int size) {
+        Long start = transactionTemplate.execute(status -> {
+            Long next = jdbcTemplate.queryForObject(
+                    "SELECT next_value FROM id_sequence WHERE name = ? FOR UPDATE", Long.class, name);
+            if (next == null) {
+                throw new IllegalStateException("Unknown id sequence: " + name);
+            }
+            jdbcTemplate.update("UPDATE id_sequence SET next_value = ? WHERE name = ?", next + size, name);
+            return next;
+        });
+        return start;
+    }
+}
+
+IdSequenceConfig.java
+
+package com.example.moneyflow.ids;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Configuration
+public class IdSequenceConfig implements DisposableBean {
+
+    private HikariDataSource pool;
+
+    // Not a DataSource bean: that would switch off Spring Boot's DataSource auto-configuration
+    @Bean
+    public IdSequenceDao idSequenceDao(DataSourceProperties dataSourceProperties,
+                                       @Value("${moneyflow.ids.pool-size:3}") int poolSize) {
+        pool = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        pool.setPoolName("id-sequence");
+        pool.setMaximumPoolSize(poolSize);
+        pool.setMinimumIdle(1);
+        return new IdSequenceDao(new JdbcTemplate(pool), new TransactionTemplate(new DataSourceTransactionManager(pool)));
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+}
+
+Why a separate pool: registerUser is @Transactional, so by the time it asks for an id it already holds a connection from the main pool. If the block runs out, refill() leases the next one while the other registering threads wait on its monitor, each still holding its connection. When those threads have taken the whole main pool, a lease that borrows from the same pool (as a REQUIRES_NEW transaction would) waits for a connection that only frees up after the lease returns. Nothing moves until the pool's connection timeout fails every one of them.
+
+The id-sequence pool is used only by refill(). refill() is synchronized per sequence, so at most three leases (user id, account number, PIN) run at once, and a pool of 3 means a lease never waits for a connection. The connection settings come from spring.datasource, and the pool shows up in the hikaricp.* metrics as id-sequence.
+
+
+---
+
+Step 3: Lock-free block allocator (BlockIdAllocator.java)
+
+package com.example.moneyflow.ids;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class BlockIdAllocator {
+
+    private final IdSequenceDao dao;
+    private final String sequenceName;
+    private final int blockSize;
+    private final long maxValue;
+
+    private final AtomicReference<Block> current = new AtomicReference<>(Block.EMPTY);
+
+    public BlockIdAllocator(IdSequenceDao dao, String sequenceName, int blockSize, long maxValue) {
+        this.dao = dao;
+        this.sequenceName = sequenceName;
+        this.blockSize = blockSize;
+        this.maxValue = maxValue;
+    }
+
+    public long next() {
+        while (true) {
+            Block block = current.get();
+            long value = block.cursor.getAndIncrement();
+            if (value < block.end) {
+                return value;
+            }
+            refill(block);
+        }
+    }
+
+    // Only one thread leases a new block; the others spin back into next() and pick it up
+    private synchronized void refill(Block exhausted) {
+        if (current.get() != exhausted) {
+            return;
+        }
+        long start = dao.lease(sequenceName, blockSize);
+        if (start + blockSize - 1 > maxValue) {
+            throw new IllegalStateException("Id sequence '" + sequenceName + "' is exhausted");
+        }
+        current.set(new Block(start, start + blockSize));
+    }
+
+    private static final class Block {
+        static final Block EMPTY = new Block(0, 0);
+
+        final AtomicLong cursor;
+        final long end;
+
+        Block(long start, long end) {
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
+
+Explanation:
+
+On the fast path, next() is one getAndIncrement on an AtomicLong. There is no lock and no database access.
+
+The synchronized refill runs once per block (once every 1000 ids by default). It re-checks that the block is still the exhausted one, so concurrent threads don't lease twice. Threads wait on the monitor only for the one short lease transaction on the id-sequence pool.
+
+Numbers left over in a block when the node shuts down are simply never used. The ids have gaps but never duplicates.
+
+
+
+
+---
+
+Step 4: Formatting the identifiers (IdentifierService.java)
+
+package com.example.moneyflow.ids;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+@Service
+public class IdentifierService {
+
+    private static final int USER_ID_DIGITS = 10;       // even, so the permutation splits into two halves
+    private static final int ACCOUNT_BODY_DIGITS = 11;  // + 1 Luhn digit = 12-digit account number
+    private static final int PIN_DIGITS = 8;
+
+    private final BlockIdAllocator userIds;
+    private final BlockIdAllocator accountNumbers;
+    private final BlockIdAllocator pins;
+
+    private final String accountPrefix;
+    private final String ifscCode;
+    private final byte[] permutationKey;
+
+    public IdentifierService(IdSequenceDao dao,
+                             @Value("${moneyflow.ids.block-size:1000}") int blockSize,
+                             @Value("${moneyflow.ids.account-prefix:5}") String accountPrefix,
+                             @Value("${moneyflow.ids.ifsc-code:MFLW0000001}") String ifscCode,
+                             @Value("${moneyflow.ids.permutation-key}") String permutationKey) {
+        this.userIds = new BlockIdAllocator(dao, "user_id", blockSize, pow10(USER_ID_DIGITS) - 1);
+        this.accountNumbers = new BlockIdAllocator(dao, "account_number", blockSize,
+                pow10(ACCOUNT_BODY_DIGITS - accountPrefix.length()) - 1);
+        this.pins = new BlockIdAllocator(dao, "pin", blockSize, pow10(PIN_DIGITS) - 1);
+        this.accountPrefix = accountPrefix;
+        this.ifscCode = ifscCode;
+        this.permutationKey = permutationKey.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String nextUserId() {
+        return pad(permute(userIds.next(), USER_ID_DIGITS, 1), USER_ID_DIGITS);
+    }
+
+    public String nextPin() {
+        return pad(permute(pins.next(), PIN_DIGITS, 2), PIN_DIGITS);
+    }
+
+    public String nextAccountNumber() {
+        String body = accountPrefix + pad(accountNumbers.next(), ACCOUNT_BODY_DIGITS - accountPrefix.length());
+        return body + luhnCheckDigit(body);
+    }
+
+    // All accounts are opened at the same branch; IFSC identifies the branch, not the account
+    public String ifscCode() {
+        return ifscCode;
+    }
+
+    public static boolean isValidAccountNumber(String accountNumber) {
+        if (accountNumber == null || accountNumber.length() != ACCOUNT_BODY_DIGITS + 1) {
+            return false;
+        }
+        String body = accountNumber.substring(0, ACCOUNT_BODY_DIGITS);
+        return accountNumber.charAt(ACCOUNT_BODY_DIGITS) == luhnCheckDigit(body);
+    }
+
+    static char luhnCheckDigit(String digits) {
+        int sum = 0;
+        boolean doubleIt = true;  // rightmost body digit is doubled, because the check digit goes after it
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int d = digits.charAt(i) - '0';
+            if (doubleIt) {
+                d *= 2;
+                if (d > 9) {
+                    d -= 9;
+                }
+            }
+            sum += d;
+            doubleIt = !doubleIt;
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+
+    // Balanced Feistel network over [0, 10^digits): a bijection, so distinct inputs give distinct outputs
+    private long permute(long value, int digits, int domain) {
+        long half = pow10(digits / 2);
+        long left = value / half;
+        long right = value % half;
+        MessageDigest sha = sha256();   // one provider lookup per id; digest() resets it between rounds
+        for (int round = 0; round < 4; round++) {
+            long next = (left + roundFunction(sha, right, round, domain)) % half;
+            left = right;
+            right = next;
+        }
+        return left * half + right;
+    }
+
+    private long roundFunction(MessageDigest sha, long input, int round, int domain) {
+        sha.update(permutationKey);
+        sha.update((byte) domain);
+        sha.update((byte) round);
+        sha.update(Long.toString(input).getBytes(StandardCharsets.US_ASCII));
+        byte[] h = sha.digest();
+        long v = 0;
+        for (int i = 0; i < 7; i++) {
+            v = (v << 8) | (h[i] & 0xFF);
+        }
+        return v;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String pad(long value, int digits) {
+        String s = Long.toString(value);
+        StringBuilder sb = new StringBuilder(digits);
+        for (int i = s.length(); i < digits; i++) {
+            sb.append('0');
+        }
+        return sb.append(s).toString();
+    }
+
+    private static long pow10(int n) {
+        long p = 1;
+        for (int i = 0; i < n; i++) {
+            p *= 10;
+        }
+        return p;
+    }
+}
+
+Explanation:
+
+Account numbers are prefix + zero-padded sequence + Luhn digit, for example 500000000124 (prefix 5, sequence 12, check digit 4). A single mistyped digit or a swap of two adjacent digits fails isValidAccountNumber before any database lookup.
+
+The Feistel permutation is a bijection on the full 10-digit (or 8-digit) range, so the uniqueness of the sequence carries over to the output. The secret key (moneyflow.ids.permutation-key) means ids are not predictable from each other. Never change the key once ids have been issued.
+
+The key and domain byte are fed to the round function separately, so user ids and PINs use independent permutations.
+
+IFSC codes identify a branch, not an account, and don't need to be unique. They come from configuration instead of being random.
+
+
+
+
+---
+
+Step 5: Use it in registration (UserService.java)
+
+    @Autowired
+    private IdentifierService identifierService;
+
+    @Autowired
+    private BalanceService balanceService;
+
+    @Transactional
+    public Transfer registerUser(String firstName, String lastName, String email, String password) {
+        String userId = identifierService.nextUserId();
+
+        User user = new User();
+        user.setUserId(userId);
+        user.setPassword(passwordEncoder.encode(password));
+        user.setEmail(email);
+        userRepository.save(user);
+
+        Transfer transfer = new Transfer();
+        transfer.setId(identifierService.nextPin());
+        transfer.setUserId(userId);
+        transfer.setFirstName(firstName);
+        transfer.setLastName(lastName);
+        transfer.setEmail(email);
+        transfer.setAccountNumber(identifierService.nextAccountNumber());
+        transfer.setIfscCode(identifierService.ifscCode());
+        transfer.setBalanceMinor(0L);
+        transferRepository.save(transfer);
+
+        return transfer;
+    }
+
+The old generateUserId/generateAccountNumber/generateIFSCCode/generateUniquePin helpers are removed. In BulkRegistrationService.prepare, the Row is now built from the same calls:
+
+            Row row = new Row(applicant,
+                    identifierService.nextUserId(),
+                    identifierService.nextAccountNumber(),
+                    identifierService.ifscCode(),
+                    identifierService.nextPin());
+
+Because the ids are final before the INSERT, the bulk path still needs no key read-back and no existence check.
+
+The transfer endpoint can also reject malformed receiver account numbers early:
+
+        if (!IdentifierService.isValidAccountNumber(receiverAccount)) {
+            throw new TransferException("Invalid receiver account number");
+        }
+
+(Existing accounts created with the old UUID-based format won't pass the Luhn check. Only enable this check after they have been migrated, or let it accept the old length as well.)
+
+
+---
+
+Step 6: Configuration (application.properties)
+
+moneyflow.ids.block-size=1000
+moneyflow.ids.pool-size=3
+moneyflow.ids.account-prefix=5
+moneyflow.ids.ifsc-code=MFLW0000001
+moneyflow.ids.permutation-key=<random secret, never change after first use>
+
+
+---
+
+Conclusion
+
+userId, account number and PIN now come from leased blocks of a persistent sequence. They are unique across all app nodes without any existence query or retry.
+
+Handing out an id is a single atomic increment in memory. The database is touched once per block.
+
+Account numbers carry a Luhn check digit, and user ids and PINs are permuted so they can't be enumerated.
@@ -0,0 +1,407 @@
+The frontend calls /api/transactions and renders the whole list. The repositories only offer JpaRepository-style findAll access, so a power user with years of history gets one huge response: every row is loaded into the persistence context, turned into an entity, then into JSON, all in memory at once. OFFSET paging (PageRequest.of(page, size)) isn't a real fix either. The database still reads and discards all the skipped rows, so page 5,000 is far slower than page 1.
+
+Here's a transaction history API that costs the same for every page and a streaming mode whose memory use stays flat:
+
+1. Keyset (seek) pagination on (account_number, timestamp, id). The client gets an opaque cursor, and the next page continues "after the last row you saw" through an index range scan.
+
+
+2. A composite index that matches the ORDER BY exactly, so each page is one index seek plus size rows.
+
+
+3. A streaming mode that reads from a forward-only JDBC cursor and writes each row as JSON straight to the response, without building entities or lists.
+
+
+
+
+---
+
+Step 1: The supporting index (schema.sql)
+
+CREATE INDEX idx_transactions_account_ts_id
+    ON transactions (account_number, timestamp DESC, id DESC);
+
+Each transfer writes one row per affected account (from the transfer step), so "history of account X" is a contiguous range of this index.
+
+
+---
+
+Step 2: Cursor encoding (HistoryCursor.java)
+
+The cursor is the (timestamp, id) of the last row returned, encoded as base64url. Clients treat it as opaque.
+
+package com.example.moneyflow.history;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+public final class HistoryCursor {
+
+    private final long timestampMicros;
+    private final long id;
+
+    public HistoryCursor(long timestampMicros, long id) {
+        this.timestampMicros = timestampMicros;
+        this.id = id;
+    }
+
+    public long getTimestampMicros() {
+        return timestampMicros;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(16).putLong(timestampMicros).putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static HistoryCursor decode(String token) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token));
+            if (buffer.remaining() != 16) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new HistoryCursor(buffer.getLong(), buffer.getLong());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
+
+
+---
+
+Step 3: The history service (TransactionHistoryService.java)
+
+This uses JdbcTemplate rather than the JPA repository. History rows are read-only, so mapping them to managed entities would only fill the persistence context for nothing.
+
+The streaming mode needs a JdbcTemplate whose driver hands rows over as they arrive instead of reading the whole result set first. Each driver is asked for that differently, so the template is built by a small factory:
+
+StreamingJdbcTemplates.java
+
+package com.example.moneyflow.config;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+public final class StreamingJdbcTemplates {
+
+    // Rows per round trip for drivers that fetch in batches
+    private static final int FETCH_SIZE = 500;
+
+    private StreamingJdbcTemplates() {
+    }
+
+    // MySQL Connector/J only streams row by row with fetchSize = Integer.MIN_VALUE; a positive value is ignored
+    // (the whole result is buffered) unless useCursorFetch=true is set. H2, PostgreSQL and most other drivers
+    // reject a negative fetch size and fetch in batches of a positive one.
+    public static JdbcTemplate forwardOnly(DataSource dataSource) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.setFetchSize("MySQL".equals(databaseName(dataSource)) ? Integer.MIN_VALUE : FETCH_SIZE);
+        return template;
+    }
+
+    private static String databaseName(DataSource dataSource) {
+        try {
+            return JdbcUtils.commonDatabaseName(
+                    JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName));
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Could not determine the database product", e);
+        }
+    }
+}
+
+TransactionHistoryService.java
+
+package com.example.moneyflow.history;
+
+import com.example.moneyflow.config.StreamingJdbcTemplates;
+import com.example.moneyflow.model.Money;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class TransactionHistoryService {
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private static final String COLUMNS =
+            "SELECT id, transaction_id, counterparty_account_number, amount_minor, balance_after_transfer_minor, timestamp "
+                    + "FROM transactions WHERE account_number = ? ";
+
+    private static final String FIRST_PAGE = COLUMNS
+            + "ORDER BY timestamp DESC, id DESC LIMIT ?";
+
+    // Row-value comparison lets MySQL 8 / PostgreSQL use the composite index as a range
+    private static final String NEXT_PAGE = COLUMNS
+            + "AND (timestamp, id) < (?, ?) ORDER BY timestamp DESC, id DESC LIMIT ?";
+
+    private static final String STREAM_ALL = COLUMNS
+            + "ORDER BY timestamp DESC, id DESC";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+
+    public TransactionHistoryService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+
+        this.streamingJdbcTemplate = StreamingJdbcTemplates.forwardOnly(jdbcTemplate.getDataSource());
+    }
+
+    public HistoryPage page(String accountNumber, String cursorToken, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        // Fetch one extra row to know whether there is a next page without a COUNT query
+        List<HistoryRow> rows;
+        if (cursorToken == null || cursorToken.isEmpty()) {
+            rows = jdbcTemplate.query(FIRST_PAGE, this::mapRow, accountNumber, limit + 1);
+        } else {
+            HistoryCursor cursor = HistoryCursor.decode(cursorToken);
+            rows = jdbcTemplate.query(NEXT_PAGE, this::mapRow, accountNumber,
+                    toTimestamp(cursor.getTimestampMicros()), cursor.getId(), limit + 1);
+        }
+
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+            HistoryRow last = rows.get(limit - 1);
+            nextCursor = new HistoryCursor(toMicros(last.getTimestamp()), last.getId()).encode();
+        }
+        return new HistoryPage(rows, nextCursor);
+    }
+
+    // Writes every row of the account as a JSON array element as soon as it is read.
+    // The transaction is for PostgreSQL, whose driver only honours the fetch size with autocommit off.
+    @Transactional(readOnly = true)
+    public void stream(String accountNumber, JsonGenerator json) throws IOException {
+        json.writeStartArray();
+        try {
+            streamingJdbcTemplate.query(STREAM_ALL, (RowCallbackHandler) rs -> writeRow(rs, json), accountNumber);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        json.writeEndArray();
+        json.flush();
+    }
+
+    private void writeRow(ResultSet rs, JsonGenerator json) throws SQLException {
+        try {
+            json.writeStartObject();
+            json.writeNumberField("id", rs.getLong(1));
+            json.writeStringField("transactionId", rs.getString(2));
+            json.writeStringField("counterpartyAccountNumber", rs.getString(3));
+            json.writeFieldName("amount");
+            json.writeNumber(Money.format(rs.getLong(4)));
+            json.writeFieldName("balanceAfterTransfer");
+            json.writeNumber(Money.format(rs.getLong(5)));
+            json.writeStringField("timestamp", rs.getTimestamp(6).toInstant().toString());
+            json.writeEndObject();
+        } catch (IOException e) {
+            // Client went away; abort the query instead of reading the rest of the history
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private HistoryRow mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new HistoryRow(
+                rs.getLong(1),
+                rs.getString(2),
+                rs.getString(3),
+                Money.ofMinor(rs.getLong(4)),
+                Money.ofMinor(rs.getLong(5)),
+                rs.getTimestamp(6).toInstant());
+    }
+
+    private static Timestamp toTimestamp(long micros) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000L);
+        return Timestamp.from(instant);
+    }
+
+    private static long toMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1000L;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class HistoryRow {
+        private long id;
+        private String transactionId;
+        private String counterpartyAccountNumber;
+        private Money amount;
+        private Money balanceAfterTransfer;
+        private Instant timestamp;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class HistoryPage {
+        private List<HistoryRow> items;
+        private String nextCursor;   // null on the last page
+    }
+}
+
+Explanation:
+
+Both page queries start with account_number = ? and then seek on (timestamp, id). The database jumps straight to the cursor position in idx_transactions_account_ts_id and reads size + 1 rows, so page 1 and page 5,000 cost the same.
+
+id breaks ties between rows with the same timestamp. The debit and credit of one transfer share a timestamp, and without the tie-breaker rows could repeat or be skipped across pages.
+
+The cursor stores the timestamp in microseconds (the precision of TIMESTAMP(6)) so that the seek is exact.
+
+StreamingJdbcTemplates looks up the database product once, when the service is created. The same code then streams on MySQL in production and on H2 in tests and in the load-test harness, where Integer.MIN_VALUE would be rejected as an invalid fetch size.
+
+In streaming mode, each row goes from the ResultSet straight to the JsonGenerator. Nothing is collected, so memory use is the same for 10 rows or 10 million. If the client disconnects, the write fails and the query is aborted.
+
+
+
+
+---
+
+Step 4: Controller (TransactionController.java)
+
+package com.example.moneyflow.controller;
+
+import com.example.moneyflow.history.TransactionHistoryService;
+import com.example.moneyflow.model.Transfer;
+import com.example.moneyflow.repos.TransferRepository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+
+@RestController
+@RequestMapping("/api/transactions")
+@CrossOrigin(origins = "http://localhost:3000")
+public class TransactionController {
+
+    @Autowired
+    private TransactionHistoryService historyService;
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // A long history over a slow link needs far more than the default spring.mvc.async.request-timeout
+    @Value("${moneyflow.transactions.stream-timeout:PT10M}")
+    private Duration streamTimeout;
+
+    @GetMapping
+    public TransactionHistoryService.HistoryPage history(
+            Authentication authentication,
+            @RequestParam(required = false) String accountNumber,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            return historyService.page(ownedAccount(authentication, accountNumber), cursor, size);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public WebAsyncTask<Void> stream(
+            Authentication authentication,
+            @RequestParam(required = false) String accountNumber,
+            HttpServletResponse response) {
+        String account = ownedAccount(authentication, accountNumber);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        // Written from the MVC async executor, with a timeout of its own instead of the application-wide one
+        return new WebAsyncTask<>(streamTimeout.toMillis(), () -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+                historyService.stream(account, json);
+            }
+            return null;
+        });
+    }
+
+    // Defaults to the caller's own account; any other account number must belong to the caller
+    private String ownedAccount(Authentication authentication, String accountNumber) {
+        Transfer account = (accountNumber == null
+                ? transferRepository.findByUserId(authentication.getName())
+                : transferRepository.findByAccountNumber(accountNumber))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Account not found"));
+
+        if (!account.getUserId().equals(authentication.getName())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account not found");
+        }
+        return account.getAccountNumber();
+    }
+}
+
+Someone else's account gets the same 404 as a missing account, so the endpoint can't be used to probe which account numbers exist.
+
+The stream is a WebAsyncTask rather than a StreamingResponseBody. A StreamingResponseBody always runs under spring.mvc.async.request-timeout, which the login pool step set to 10 s, so any history that takes longer to send was cut off mid-array. WebAsyncTask carries its own timeout (moneyflow.transactions.stream-timeout, 10 minutes by default) and leaves the global one alone.
+
+application.properties
+
+moneyflow.transactions.stream-timeout=PT10M
+
+
+---
+
+Step 5: Frontend usage (MoneyTracking.js)
+
+The list now loads page by page with a "Load more" button, instead of one huge request:
+
+  const [transactions, setTransactions] = useState([]);
+  const [cursor, setCursor] = useState(null);
+  const [hasMore, setHasMore] = useState(true);
+
+  const loadMore = () => {
+    axios.get('/api/transactions', {
+      params: { size: 50, cursor },
+      headers: { Authorization: `Bearer ${localStorage.getItem('jwtToken')}` }
+    })
+    .then(response => {
+      setTransactions(prev => [...prev, ...response.data.items]);
+      setCursor(response.data.nextCursor);
+      setHasMore(response.data.nextCursor !== null);
+    })
+    .catch(err => console.error(err));
+  };
+
+  useEffect(loadMore, []);
+
+Full exports (for example "download everything") use /api/transactions/stream.
+
+
+---
+
+Conclusion
+
+/api/transactions now returns fixed-size pages with an opaque cursor. Each page is a single index range scan on (account_number, timestamp, id), however deep the history goes.
+
+/api/transactions/stream writes the whole history as a JSON array from a forward-only cursor, with flat memory use.
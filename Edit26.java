@@ -0,0 +1,289 @@
+Month-end and audit statement downloads currently load an account's whole history through TransferRepository into memory before the response is even started. For a large corporate account that means hundreds of thousands of entities on the heap at once, and one download can trigger long GC pauses for every other request on the node.
+
+Here's how to add a statement export on MoneyFlowController that streams CSV (optionally gzip-compressed) straight from a database cursor to the socket:
+
+1. Rows are read with the forward-only streaming cursor from the previous step and written as CSV lines as they arrive. Memory stays at the size of one write buffer.
+
+
+2. The response is written by an async task on a dedicated export pool, not on a Tomcat request thread and not on the shared MVC async executor.
+
+
+3. Backpressure comes for free from the blocking servlet output stream: when a slow client's TCP window is full, write() blocks, the cursor stops advancing and the database sends nothing more.
+
+
+4. A small semaphore limits how many exports run at once, so a burst of downloads can't take every async thread and database connection.
+
+
+
+
+---
+
+Step 1: CSV export in the history service (TransactionHistoryService.java)
+
+Add a date-bounded streaming query and a CSV writer next to the existing JSON streaming:
+
+    private static final String STATEMENT_RANGE =
+            "SELECT timestamp, transaction_id, counterparty_account_number, amount_minor, balance_after_transfer_minor "
+                    + "FROM transactions WHERE account_number = ? AND timestamp >= ? AND timestamp < ? "
+                    + "ORDER BY timestamp ASC, id ASC";
+
+    private static final String CSV_HEADER = "timestamp,transaction_id,counterparty_account,amount,balance_after\n";
+
+    // Streams the statement rows for [from, to) as CSV; returns the number of rows written
+    @Transactional(readOnly = true)   // like stream(): PostgreSQL only honours the fetch size with autocommit off
+    public long exportCsv(String accountNumber, Instant from, Instant to, Writer out) throws IOException {
+        out.write(CSV_HEADER);
+
+        StringBuilder line = new StringBuilder(128);
+        long[] rows = new long[1];
+        try {
+            streamingJdbcTemplate.query(STATEMENT_RANGE, (RowCallbackHandler) rs -> {
+                line.setLength(0);
+                line.append(rs.getTimestamp(1).toInstant()).append(',');
+                appendCsv(line, rs.getString(2)).append(',');
+                appendCsv(line, rs.getString(3)).append(',');
+                Money.appendTo(line, rs.getLong(4));
+                line.append(',');
+                Money.appendTo(line, rs.getLong(5));
+                line.append('\n');
+                try {
+                    out.append(line);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            }, accountNumber, Timestamp.from(from), Timestamp.from(to));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        out.flush();
+        return rows[0];
+    }
+
+    // RFC 4180 quoting, plus a leading quote for values that spreadsheets would run as formulas
+    private static StringBuilder appendCsv(StringBuilder sb, String value) {
+        if (value == null) {
+            return sb;
+        }
+        boolean formula = !value.isEmpty() && "=+-@".indexOf(value.charAt(0)) >= 0;
+        boolean quote = formula || value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0;
+        if (!quote) {
+            return sb.append(value);
+        }
+        sb.append('"');
+        if (formula) {
+            sb.append('\'');
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+Explanation:
+
+One StringBuilder is reused for every line, and amounts go through Money.appendTo (from the money step). Producing a row allocates nothing beyond what the JDBC driver itself needs.
+
+The rows are written in ascending order, as a statement is read, so they use the same (account_number, timestamp, id) index in reverse.
+
+If the client disconnects, the next write throws, the RowCallbackHandler rethrows it, and the query is cancelled. The rest of the history is never read.
+
+
+
+
+---
+
+Step 2: A dedicated executor for exports (StatementExportConfig.java)
+
+Exports get their own small pool rather than the global Spring MVC async executor. That executor is shared with the JSON history stream and bulk registration, which have no admission control of their own, and its default timeout is the application-wide spring.mvc.async.request-timeout (10 s, from the login pool step). Replacing it for the sake of exports would starve those endpoints and silently override that setting.
+
+package com.example.moneyflow.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class StatementExportConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor statementExportExecutor(@Value("${moneyflow.export.threads:8}") int exportThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(exportThreads);
+        executor.setMaxPoolSize(exportThreads);
+        // Unbounded, but never used: the controller admits at most exportThreads exports at a time
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("export-");
+        return executor;
+    }
+}
+
+
+---
+
+Step 3: The export endpoint (MoneyFlowController.java)
+
+The endpoint returns a WebAsyncTask bound to that executor, with its own timeout. The CSV is written straight to the response from the export thread.
+
+    private final Semaphore exportPermits;
+
+    @Autowired
+    private TransactionHistoryService historyService;
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Autowired
+    @Qualifier("statementExportExecutor")
+    private AsyncTaskExecutor statementExportExecutor;
+
+    @Value("${moneyflow.export.timeout:PT30M}")   // a very large statement over a slow link
+    private Duration exportTimeout;
+
+    public MoneyFlowController(@Value("${moneyflow.export.threads:8}") int exportThreads) {
+        this.exportPermits = new Semaphore(exportThreads);
+    }
+
+    @GetMapping("/statement")
+    public WebAsyncTask<Void> exportStatement(
+            Authentication authentication,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletResponse response) {
+
+        if (!from.isBefore(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+        }
+
+        Transfer account = transferRepository.findByUserId(authentication.getName())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Account not found"));
+
+        // Fail fast instead of queueing when the export capacity is in use
+        if (!exportPermits.tryAcquire()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "30");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many exports in progress");
+        }
+        AtomicBoolean permitHeld = new AtomicBoolean(true);
+        Runnable releasePermit = () -> {
+            if (permitHeld.compareAndSet(true, false)) {
+                exportPermits.release();
+            }
+        };
+
+        String filename = "statement-" + account.getAccountNumber() + "-" + from + "-" + to + (gzip ? ".csv.gz" : ".csv");
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+
+        Callable<Void> export = () -> {
+            try {
+                OutputStream out = response.getOutputStream();
+                OutputStream target = gzip ? new GZIPOutputStream(out, 8192) : out;
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 16 * 1024)) {
+                    historyService.exportCsv(account.getAccountNumber(),
+                            from.atStartOfDay(ZoneOffset.UTC).toInstant(),
+                            to.atStartOfDay(ZoneOffset.UTC).toInstant(),
+                            writer);
+                }
+                return null;
+            } finally {
+                releasePermit.run();
+            }
+        };
+
+        WebAsyncTask<Void> task = new WebAsyncTask<>(exportTimeout.toMillis(), statementExportExecutor, export);
+        // Covers the paths where the callable never runs or never finishes (rejected, timed out, failed)
+        task.onCompletion(releasePermit);
+        return task;
+    }
+
+Additional imports:
+
+import com.example.moneyflow.history.TransactionHistoryService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+Explanation:
+
+With gzip=true the response is a .csv.gz file. A CSV statement usually compresses 8-10x, which also shortens how long a slow client holds the cursor open.
+
+The permit is released exactly once, whichever happens first: the export finishes or fails on the export thread, or the async request completes. The second path covers the cases where the export body never runs or never returns, such as a task rejected at shutdown, a timeout or an error dispatch. A slot can't leak, so exports can't stay blocked until a restart.
+
+The executor has as many threads as there are permits, so an admitted export always gets a thread at once. Its queue exists only so a submit never fails.
+
+The 30-minute timeout applies to this endpoint alone. Every other async endpoint keeps the application-wide spring.mvc.async.request-timeout.
+
+Because the body is written with chunked transfer encoding, the first bytes reach the client right after the first rows are read, long before the last row.
+
+
+
+
+---
+
+Step 4: Database-side settings for long streams
+
+A streaming cursor holds its connection until the last row has been sent. Two settings keep that safe:
+
+application.properties
+
+# Exports must never use up the pool the transfer path needs
+spring.datasource.hikari.maximum-pool-size=30
+moneyflow.export.threads=8
+moneyflow.export.timeout=PT30M
+
+MySQL server
+
+# How long the server waits for a slow client to accept more rows before aborting
+SET GLOBAL net_write_timeout = 600;
+
+The export semaphore (8) is kept well below the connection pool size (30), so exports can never take all the connections.
+
+
+---
+
+Step 5: Frontend download (Reports.js)
+
+  const downloadStatement = async (from, to) => {
+    const response = await axios.get('/api/user/statement', {
+      params: { from, to, gzip: true },
+      responseType: 'blob',
+      headers: { Authorization: `Bearer ${localStorage.getItem('jwtToken')}` }
+    });
+    const url = window.URL.createObjectURL(response.data);
+    const link = document.createElement('a');
+    link.href = url;
+    link.download = `statement-${from}-${to}.csv.gz`;
+    link.click();
+    window.URL.revokeObjectURL(url);
+  };
+
+
+---
+
+Conclusion
+
+Statement exports now stream from a forward-only cursor to the socket, with constant memory, optional gzip, and natural backpressure from blocking writes.
+
+Concurrent exports are limited by a semaphore and run on their own bounded pool with their own timeout, so large corporate downloads don't cause heap spikes or take threads and connections from the rest of the API.
@@ -0,0 +1,749 @@
+Balances currently exist only as mutable Transfer.balance values that TransferRepository.save rewrites in place. There is no durable sequence of money movements; the transactions rows are written next to the balance update, but nothing ties the balance back to them. Each transfer also costs two random-write UPDATEs plus the commit fsync of a general-purpose database. That makes the database commit the floor on transfer latency.
+
+This answer adds an opt-in ledger journal under the transfer path:
+
+1. Every transfer is appended as one fixed-size record (debit account, credit account, amount) to an append-only journal made of memory-mapped segment files.
+
+
+2. Appends are sequential memory writes. A single flusher thread forces the mapped pages to disk for many transfers at once (group fsync), and each caller is told "committed" only after its record is durable.
+
+
+3. Live balances are kept in memory and derived from the journal. A background checkpointer applies journal records to the database in batches and records the last applied sequence number, so the database becomes a checkpoint of the journal and not the source of truth.
+
+
+4. On startup, balances are loaded from the database checkpoint and the journal is replayed from the checkpoint sequence onward.
+
+
+
+Commit latency is then bounded by a sequential append plus at most one group-fsync interval, instead of by row-level updates.
+
+
+---
+
+Step 1: Journal record format
+
+Every record is exactly 64 bytes, so the position of record n in a segment is n * 64 and there is no length prefix to parse:
+
+offset  size  field
+0       8     sequence number (starts at 1, strictly increasing)
+8       8     timestamp (epoch micros)
+16      8     amount in minor units
+24      16    debit account number (ASCII, zero padded)
+40      16    credit account number (ASCII, zero padded)
+56      4     reserved
+60      4     CRC32C of bytes 0..59
+
+A record with sequence 0 or a bad CRC marks the end of the valid journal. Segment files are preallocated and start zeroed, so a torn last write simply fails its CRC.
+
+
+---
+
+Step 2: The journal (LedgerJournal.java)
+
+package com.example.moneyflow.ledger;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+public class LedgerJournal implements DisposableBean {
+
+    public static final int RECORD_SIZE = 64;
+    private static final int ACCOUNT_FIELD = 16;
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final long flushIntervalNanos;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final CRC32C crc = new CRC32C();   // guarded by appendLock
+
+    private MappedByteBuffer segment;          // guarded by appendLock
+    private long segmentFirstSequence;         // guarded by appendLock
+    private long lastAppended;                 // guarded by appendLock
+    private final List<MappedByteBuffer> unflushedSegments = new ArrayList<>();
+
+    private volatile long lastDurable;
+    private final ConcurrentSkipListMap<Long, CompletableFuture<Long>> waiters = new ConcurrentSkipListMap<>();
+
+    private final Thread flusher;
+    private volatile boolean running = true;
+    private volatile RuntimeException failure;   // set once if a flush fails; the journal is then read-only
+
+    public LedgerJournal(Path directory, int recordsPerSegment, long flushIntervalMicros, long lastSequence) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.recordsPerSegment = recordsPerSegment;
+        this.flushIntervalNanos = flushIntervalMicros * 1000L;
+        this.lastAppended = lastSequence;
+        this.lastDurable = lastSequence;
+        openSegmentFor(lastSequence + 1);
+
+        this.flusher = new Thread(this::flushLoop, "ledger-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Appends one movement and returns its sequence number. The caller must hold the account locks.
+    public long append(String debitAccount, String creditAccount, long amountMinor, long timestampMicros) {
+        appendLock.lock();
+        try {
+            if (failure != null) {
+                throw new IllegalStateException("Ledger journal stopped after a failed flush", failure);
+            }
+            long sequence = lastAppended + 1;
+            if (sequence - segmentFirstSequence >= recordsPerSegment) {
+                unflushedSegments.add(segment);
+                openSegmentFor(sequence);
+            }
+
+            int offset = (int) (sequence - segmentFirstSequence) * RECORD_SIZE;
+            segment.putLong(offset, sequence);
+            segment.putLong(offset + 8, timestampMicros);
+            segment.putLong(offset + 16, amountMinor);
+            putAccount(offset + 24, debitAccount);
+            putAccount(offset + 40, creditAccount);
+            segment.putInt(offset + 56, 0);
+
+            crc.reset();
+            for (int i = 0; i < 60; i++) {
+                crc.update(segment.get(offset + i));
+            }
+            segment.putInt(offset + 60, (int) crc.getValue());
+
+            lastAppended = sequence;
+            return sequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Completes once every record up to and including this sequence is on disk
+    public CompletableFuture<Long> awaitDurable(long sequence) {
+        if (sequence <= lastDurable) {
+            return CompletableFuture.completedFuture(sequence);
+        }
+        CompletableFuture<Long> future = waiters.computeIfAbsent(sequence, s -> new CompletableFuture<>());
+        // The flusher may have advanced, or died, between the check and the registration
+        if (sequence <= lastDurable) {
+            waiters.remove(sequence);
+            future.complete(sequence);
+        } else if (failure != null) {
+            waiters.remove(sequence);
+            future.completeExceptionally(failure);
+        }
+        return future;
+    }
+
+    public long lastDurableSequence() {
+        return lastDurable;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            LockSupport.parkNanos(flushIntervalNanos);
+            try {
+                flushOnce();
+            } catch (RuntimeException e) {
+                // A failed fsync means we can no longer promise durability: refuse new appends first,
+                // then fail every waiter, including one that registers while we drain
+                failure = e;
+                running = false;
+                CompletableFuture<Long> waiter;
+                while ((waiter = pollWaiter()) != null) {
+                    waiter.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<Long> pollWaiter() {
+        Map.Entry<Long, CompletableFuture<Long>> first = waiters.pollFirstEntry();
+        return first != null ? first.getValue() : null;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    private void flushOnce() {
+        List<MappedByteBuffer> toForce;
+        MappedByteBuffer current;
+        long upTo;
+
+        appendLock.lock();
+        try {
+            upTo = lastAppended;
+            if (upTo == lastDurable) {
+                return;
+            }
+            toForce = new ArrayList<>(unflushedSegments);
+            unflushedSegments.clear();
+            current = segment;
+        } finally {
+            appendLock.unlock();
+        }
+
+        // One force() covers every record appended since the previous flush: this is the group commit
+        for (MappedByteBuffer full : toForce) {
+            full.force();
+        }
+        current.force();
+
+        lastDurable = upTo;
+        while (!waiters.isEmpty() && waiters.firstKey() <= upTo) {
+            waiters.pollFirstEntry().getValue().complete(upTo);
+        }
+    }
+
+    private void openSegmentFor(long firstSequence) {
+        long segmentIndex = (firstSequence - 1) / recordsPerSegment;
+        segmentFirstSequence = segmentIndex * recordsPerSegment + 1;
+        Path file = directory.resolve(String.format("ledger-%012d.seg", segmentIndex));
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open ledger segment " + file, e);
+        }
+    }
+
+    private void putAccount(int offset, String account) {
+        byte[] bytes = account.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > ACCOUNT_FIELD) {
+            throw new IllegalArgumentException("Account number too long for the ledger: " + account);
+        }
+        for (int i = 0; i < ACCOUNT_FIELD; i++) {
+            segment.put(offset + i, i < bytes.length ? bytes[i] : 0);
+        }
+    }
+
+    // Reads every valid record with sequence > afterSequence, in order, stopping at the first invalid one
+    public static long replay(Path directory, int recordsPerSegment, long afterSequence, RecordVisitor visitor) throws IOException {
+        return replay(directory, recordsPerSegment, afterSequence, Long.MAX_VALUE, visitor);
+    }
+
+    // Same, but stops after upToSequence. Opens only the segments from the one holding afterSequence + 1.
+    public static long replay(Path directory, int recordsPerSegment, long afterSequence, long upToSequence,
+                              RecordVisitor visitor) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return afterSequence;
+        }
+        long firstSegment = afterSequence / recordsPerSegment;   // segment of sequence afterSequence + 1
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(p -> p.getFileName().toString().endsWith(".seg"))
+                    .filter(p -> segmentIndex(p) >= firstSegment)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        long expected = afterSequence + 1;
+        CRC32C check = new CRC32C();
+        for (Path file : segments) {
+            long segmentFirstSequence = segmentIndex(file) * recordsPerSegment + 1;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                // Seek straight to the next expected record instead of scanning the checkpointed ones
+                long skip = Math.max(0, expected - segmentFirstSequence);
+                for (long offset = skip * RECORD_SIZE; offset + RECORD_SIZE <= buffer.capacity(); offset += RECORD_SIZE) {
+                    int at = (int) offset;
+                    long sequence = buffer.getLong(at);
+                    if (sequence == 0 || expected > upToSequence) {
+                        return expected - 1;
+                    }
+                    check.reset();
+                    for (int i = 0; i < 60; i++) {
+                        check.update(buffer.get(at + i));
+                    }
+                    if ((int) check.getValue() != buffer.getInt(at + 60)) {
+                        return expected - 1;
+                    }
+                    if (sequence != expected) {
+                        return expected - 1;
+                    }
+                    visitor.visit(sequence, buffer.getLong(at + 8), buffer.getLong(at + 16),
+                            readAccount(buffer, at + 24), readAccount(buffer, at + 40));
+                    expected++;
+                }
+            }
+        }
+        return expected - 1;
+    }
+
+    private static long segmentIndex(Path file) {
+        String name = file.getFileName().toString();   // ledger-000000000042.seg
+        return Long.parseLong(name.substring("ledger-".length(), name.length() - ".seg".length()));
+    }
+
+    private static String readAccount(MappedByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[ACCOUNT_FIELD];
+        int length = 0;
+        while (length < ACCOUNT_FIELD && (bytes[length] = buffer.get(offset + length)) != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        flusher.join();
+        if (failure == null) {
+            flushOnce();
+        }
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(long sequence, long timestampMicros, long amountMinor, String debitAccount, String creditAccount);
+    }
+}
+
+Explanation:
+
+Records are written with absolute puts into the mapped buffer, which is a memory copy. Nothing is written to a file channel on the append path.
+
+Only the flusher thread calls force(). With a 1 ms interval, every transfer appended in that millisecond shares one fsync. Throughput then follows the append rate and not the number of fsyncs.
+
+Durability is a prefix: lastDurable only moves forward after every earlier record has been forced. A record that a caller has been told is committed can never depend on a record that was lost.
+
+A segment that fills up is forced by the flusher together with the current one, so a record is never reported durable while its segment is unflushed.
+
+If force() fails, the journal stops for good. The failure is recorded before the waiters are failed, so append() refuses new records from then on (and LedgerService refuses the transfer before it touches any balance), and a waiter that registers during the drain is failed by awaitDurable itself. The records that were waiting at that moment may or may not have reached the disk. Their callers get an error, and the in-memory balances of this node can no longer be trusted, so LedgerService stops serving reads too. The node has to be restarted, and on restart the balances are rebuilt from whatever prefix of the journal actually is durable.
+
+replay() works out which segment holds the first record it needs from the file name and the record offset from the sequence number, so reading the records after a checkpoint costs the same whatever the journal's total length.
+
+
+
+
+---
+
+Step 3: In-memory balances and the journal-backed transfer (LedgerService.java)
+
+package com.example.moneyflow.ledger;
+
+import com.example.moneyflow.service.AccountLockStripes;
+import com.example.moneyflow.service.TransferException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LedgerService {
+
+    private final LedgerJournal journal;
+    private final AccountLockStripes accountLocks;
+    private final ConcurrentHashMap<String, AtomicLong> balances;
+
+    public LedgerService(LedgerJournal journal, AccountLockStripes accountLocks, ConcurrentHashMap<String, AtomicLong> balances) {
+        this.journal = journal;
+        this.accountLocks = accountLocks;
+        this.balances = balances;
+    }
+
+    public long balanceOf(String accountNumber) {
+        if (journal.isFailed()) {
+            throw new IllegalStateException("Ledger journal failed; restart to recover the durable balances");
+        }
+        AtomicLong balance = balances.get(accountNumber);
+        if (balance == null) {
+            throw new TransferException("Account not found");
+        }
+        return balance.get();
+    }
+
+    // Returns the sequence number; the future completes when the movement is durable
+    public CompletableFuture<Long> transfer(String senderAccount, String receiverAccount, long amountMinor) {
+        // Same rules as TransferService.transfer: a negative amount would move money from the receiver to the caller
+        if (amountMinor <= 0L) {
+            throw new TransferException("Amount must be greater than zero");
+        }
+        if (senderAccount.equals(receiverAccount)) {
+            throw new TransferException("Sender and receiver must be different accounts");
+        }
+
+        long sequence;
+        try (AccountLockStripes.Held held = accountLocks.lock(senderAccount, receiverAccount)) {
+            AtomicLong sender = balances.get(senderAccount);
+            AtomicLong receiver = balances.get(receiverAccount);
+            if (sender == null || receiver == null) {
+                throw new TransferException("Sender or receiver not found!");
+            }
+            if (sender.get() < amountMinor) {
+                throw new TransferException("Insufficient balance!");
+            }
+
+            sequence = journal.append(senderAccount, receiverAccount, amountMinor, nowMicros());
+            sender.addAndGet(-amountMinor);
+            receiver.addAndGet(amountMinor);
+        }
+        // The locks are released before the fsync wait, so the next transfer on these accounts is not held up by it
+        return journal.awaitDurable(sequence);
+    }
+
+    public void openAccount(String accountNumber, long openingBalanceMinor) {
+        balances.putIfAbsent(accountNumber, new AtomicLong(openingBalanceMinor));
+    }
+
+    private static long nowMicros() {
+        java.time.Instant now = java.time.Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1000L;
+    }
+}
+
+The amount and the two accounts are validated here and not only in the controller, because this method is what actually moves the money. Money.parse accepts a sign, so without the check an amount of -100 would pass the balance test (the sender's balance is always at least -100) and credit the caller with 100 taken from the receiver.
+
+Releasing the stripe locks before awaiting durability is safe because durability is a prefix. A later transfer that sees the new balance gets a higher sequence number, so it can only become durable after this one.
+
+
+---
+
+Step 4: Checkpointing the journal into the database (LedgerCheckpointer.java)
+
+A scheduled job replays the journal from the last checkpoint into the database: one batched balance UPDATE per touched account, the debit/credit rows in transactions with their running balances, and the new checkpoint sequence, all in one transaction.
+
+CREATE TABLE ledger_checkpoint (
+    id            TINYINT PRIMARY KEY,
+    last_sequence BIGINT  NOT NULL
+);
+INSERT INTO ledger_checkpoint (id, last_sequence) VALUES (1, 0);
+
+package com.example.moneyflow.ledger;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class LedgerCheckpointer {
+
+    private static final int MAX_RECORDS_PER_CHECKPOINT = 50_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LedgerJournal journal;
+    private final Path directory;
+    private final int recordsPerSegment;
+
+    public LedgerCheckpointer(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                              LedgerJournal journal, Path directory, int recordsPerSegment) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.journal = journal;
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+    }
+
+    @Scheduled(fixedDelayString = "${moneyflow.ledger.checkpoint-interval-ms:1000}")
+    public void checkpoint() throws IOException {
+        long from = jdbcTemplate.queryForObject("SELECT last_sequence FROM ledger_checkpoint WHERE id = 1", Long.class);
+        long durable = journal.lastDurableSequence();
+        if (durable <= from) {
+            return;
+        }
+
+        // Only durable records, and a bounded batch per checkpoint
+        List<Movement> movements = new ArrayList<>();
+        TreeSet<String> accounts = new TreeSet<>();
+        long last = LedgerJournal.replay(directory, recordsPerSegment, from,
+                Math.min(durable, from + MAX_RECORDS_PER_CHECKPOINT),
+                (sequence, micros, amount, debit, credit) -> {
+                    movements.add(new Movement(sequence, micros, amount, debit, credit));
+                    accounts.add(debit);
+                    accounts.add(credit);
+                });
+        if (last == from) {
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!movements.isEmpty()) {
+                applyMovements(movements, accounts);
+            }
+            jdbcTemplate.update("UPDATE ledger_checkpoint SET last_sequence = ? WHERE id = 1", last);
+        });
+    }
+
+    private void applyMovements(List<Movement> movements, TreeSet<String> accounts) {
+        // The rows hold the balances as of `from`; running them forward gives each entry its balance after
+        Map<String, long[]> balances = new HashMap<>(accounts.size() * 2);
+        String placeholders = String.join(",", Collections.nCopies(accounts.size(), "?"));
+        jdbcTemplate.query("SELECT account_number, balance_minor FROM transfer WHERE account_number IN ("
+                        + placeholders + ") ORDER BY account_number FOR UPDATE",
+                rs -> {
+                    balances.put(rs.getString(1), new long[]{rs.getLong(2)});
+                },
+                accounts.toArray());
+
+        List<Object[]> entries = new ArrayList<>(movements.size() * 2);
+        for (Movement m : movements) {
+            long[] debit = balances.get(m.debit);
+            long[] credit = balances.get(m.credit);
+            debit[0] -= m.amount;
+            credit[0] += m.amount;
+            Timestamp at = Timestamp.from(Instant.ofEpochSecond(m.micros / 1_000_000L, (m.micros % 1_000_000L) * 1000L));
+            String transactionId = "L" + m.sequence;
+            entries.add(new Object[]{transactionId, m.debit, m.credit, -m.amount, debit[0], at});
+            entries.add(new Object[]{transactionId, m.credit, m.debit, m.amount, credit[0], at});
+        }
+
+        List<Object[]> updates = new ArrayList<>(balances.size());
+        balances.forEach((account, balance) -> updates.add(new Object[]{balance[0], account}));
+        jdbcTemplate.batchUpdate(
+                "UPDATE transfer SET balance_minor = ?, version = version + 1 WHERE account_number = ?", updates);
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO transactions (transaction_id, account_number, counterparty_account_number, amount_minor, "
+                        + "balance_after_transfer_minor, timestamp) VALUES (?, ?, ?, ?, ?, ?)", entries);
+    }
+
+    private static final class Movement {
+        final long sequence;
+        final long micros;
+        final long amount;
+        final String debit;
+        final String credit;
+
+        Movement(long sequence, long micros, long amount, String debit, String credit) {
+            this.sequence = sequence;
+            this.micros = micros;
+            this.amount = amount;
+            this.debit = debit;
+            this.credit = credit;
+        }
+    }
+}
+
+Explanation:
+
+The balance deltas and the checkpoint sequence commit together, so a crash mid-checkpoint can never apply a record twice or skip one.
+
+A busy account gets a single UPDATE per checkpoint, however many transfers it had in that interval. That turns many random row writes into a few batched ones, off the request path.
+
+The journal-fed rows carry balance_after_transfer_minor like every other transactions row, so history and the CSV export show the real balance after each entry. The checkpointer locks the touched balance rows, which hold the balances as of the previous checkpoint (nothing else writes balances in ledger mode), and runs them forward record by record in journal order. The final value of each running balance is then the value its UPDATE writes.
+
+The journal read starts at the checkpoint's own segment and offset, and stops at the batch limit. Each checkpoint costs the records it applies, not the length of the journal.
+
+Segment files older than the checkpoint can be archived or deleted. A later step uses them for fast restarts together with snapshots.
+
+
+
+
+---
+
+Step 5: Wiring and startup replay (LedgerConfig.java)
+
+package com.example.moneyflow.ledger;
+
+import com.example.moneyflow.service.AccountLockStripes;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "moneyflow.ledger.enabled", havingValue = "true")
+public class LedgerConfig {
+
+    @Value("${moneyflow.ledger.directory:./ledger}")
+    private String directory;
+
+    @Value("${moneyflow.ledger.records-per-segment:1048576}")   // 64 MiB segments
+    private int recordsPerSegment;
+
+    @Value("${moneyflow.ledger.flush-interval-micros:1000}")
+    private long flushIntervalMicros;
+
+    @Bean
+    public ConcurrentHashMap<String, AtomicLong> ledgerBalances() {
+        return new ConcurrentHashMap<>();
+    }
+
+    @Bean
+    public LedgerJournal ledgerJournal(JdbcTemplate jdbcTemplate, ConcurrentHashMap<String, AtomicLong> ledgerBalances) throws IOException {
+        Path dir = Paths.get(directory);
+
+        // 1. Balances as of the last checkpoint
+        jdbcTemplate.query("SELECT account_number, balance_minor FROM transfer",
+                rs -> { ledgerBalances.put(rs.getString(1), new AtomicLong(rs.getLong(2))); });
+        long checkpoint = jdbcTemplate.queryForObject("SELECT last_sequence FROM ledger_checkpoint WHERE id = 1", Long.class);
+
+        // 2. Re-apply every durable record after it
+        long last = LedgerJournal.replay(dir, recordsPerSegment, checkpoint, (sequence, micros, amount, debit, credit) -> {
+            ledgerBalances.get(debit).addAndGet(-amount);
+            ledgerBalances.get(credit).addAndGet(amount);
+        });
+
+        return new LedgerJournal(dir, recordsPerSegment, flushIntervalMicros, last);
+    }
+
+    @Bean
+    public LedgerService ledgerService(LedgerJournal ledgerJournal, AccountLockStripes accountLocks,
+                                       ConcurrentHashMap<String, AtomicLong> ledgerBalances) {
+        return new LedgerService(ledgerJournal, accountLocks, ledgerBalances);
+    }
+
+    @Bean
+    public LedgerCheckpointer ledgerCheckpointer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                                 LedgerJournal ledgerJournal) {
+        return new LedgerCheckpointer(jdbcTemplate, new TransactionTemplate(transactionManager),
+                ledgerJournal, Paths.get(directory), recordsPerSegment);
+    }
+}
+
+TransferController.java (ledger mode)
+
+    @Autowired(required = false)
+    private LedgerService ledgerService;
+
+    @PostMapping
+    public CompletableFuture<ResponseEntity<TransferResult>> transfer(@RequestBody TransferRequest request, Authentication authentication) {
+        long amount = request.getAmount().getMinor();
+        if (ledgerService == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok(transferService.transfer(
+                    authentication.getName(), request.getSenderId(), request.getReceiverId(), amount)));
+        }
+
+        transferService.checkOwnership(authentication.getName(), request.getSenderId());
+        return ledgerService.transfer(request.getSenderId(), request.getReceiverId(), amount)
+                .thenApply(sequence -> ResponseEntity.ok(new TransferResult("L" + sequence,
+                        Money.ofMinor(ledgerService.balanceOf(request.getSenderId())))));
+    }
+
+checkOwnership is the sender/userId check pulled out of TransferService.doTransfer. New registrations call ledgerService.openAccount(accountNumber, 0L) after their row is committed. BulkRegistrationService does the same for every row of a chunk once the chunk has committed. Its JDBC batch inserts bypass UserService, and an account missing from the ledger would fail every transfer with "Sender or receiver not found!" until the next restart.
+
+application.properties
+
+moneyflow.ledger.enabled=true
+moneyflow.ledger.directory=/var/lib/moneyflow/ledger
+moneyflow.ledger.flush-interval-micros=1000
+moneyflow.ledger.checkpoint-interval-ms=1000
+
+In ledger mode, only one application node may own the journal directory. The in-memory balances are authoritative, so running a second writer node would split the ledger. Use a single active writer with a standby that takes over the directory.
+
+
+---
+
+Step 6: Tests (LedgerServiceTest.java)
+
+The journal is mocked, so the test checks only what LedgerService decides before anything is appended.
+
+package com.example.moneyflow.ledger;
+
+import com.example.moneyflow.service.AccountLockStripes;
+import com.example.moneyflow.service.TransferException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LedgerServiceTest {
+
+    private LedgerJournal journal;
+    private ConcurrentHashMap<String, AtomicLong> balances;
+    private LedgerService ledgerService;
+
+    @BeforeEach
+    void setUp() {
+        journal = mock(LedgerJournal.class);
+        when(journal.append(anyString(), anyString(), anyLong(), anyLong())).thenReturn(1L);
+        when(journal.awaitDurable(1L)).thenReturn(CompletableFuture.completedFuture(1L));
+
+        balances = new ConcurrentHashMap<>();
+        ledgerService = new LedgerService(journal, new AccountLockStripes(16), balances);
+        ledgerService.openAccount("A", 10_000);
+        ledgerService.openAccount("B", 10_000);
+    }
+
+    @Test
+    void negativeAmountIsRejectedBeforeAnythingMoves() {
+        assertThatThrownBy(() -> ledgerService.transfer("A", "B", -100))
+                .isInstanceOf(TransferException.class)
+                .hasMessage("Amount must be greater than zero");
+
+        verify(journal, never()).append(anyString(), anyString(), anyLong(), anyLong());
+        assertThat(balances.get("A").get()).isEqualTo(10_000);
+        assertThat(balances.get("B").get()).isEqualTo(10_000);
+    }
+
+    @Test
+    void zeroAmountAndSelfTransferAreRejected() {
+        assertThatThrownBy(() -> ledgerService.transfer("A", "B", 0))
+                .isInstanceOf(TransferException.class)
+                .hasMessage("Amount must be greater than zero");
+        assertThatThrownBy(() -> ledgerService.transfer("A", "A", 100))
+                .isInstanceOf(TransferException.class)
+                .hasMessage("Sender and receiver must be different accounts");
+
+        verify(journal, never()).append(anyString(), anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void validTransferMovesTheAmount() {
+        assertThat(ledgerService.transfer("A", "B", 2_500)).isCompletedWithValue(1L);
+
+        verify(journal).append(eq("A"), eq("B"), eq(2_500L), anyLong());
+        assertThat(balances.get("A").get()).isEqualTo(7_500);
+        assertThat(balances.get("B").get()).isEqualTo(12_500);
+    }
+}
+
+
+---
+
+Conclusion
+
+With moneyflow.ledger.enabled=true, a transfer is a balance check in memory, one 64-byte sequential append to a memory-mapped segment, and a wait for the next group fsync.
+
+The journal is the durable, ordered record of every debit and credit. Database balances and history are batched checkpoints of it.
+
+On restart, balances come from the last checkpoint plus a replay of the journal records written after it.
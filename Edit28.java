@@ -0,0 +1,444 @@
+With the ledger from the previous step, live balances are held in memory. Today the startup path rebuilds them by scanning the whole transfer table (SELECT account_number, balance_minor FROM transfer) and then replaying the journal. With tens of millions of accounts that scan dominates boot time, even if only a few thousand transfers happened since the last restart.
+
+Here's how to make boot time depend on recent activity instead of total accounts:
+
+1. A scheduled job writes a compact binary snapshot of the checkpointed balances, keyed by account number, together with the watermark it is consistent with: the ledger sequence that the database state was checkpointed up to.
+
+
+2. On boot, the snapshot is read sequentially from local disk (hundreds of MB/s, with no SQL parsing or entity mapping). Then only the journal records after the watermark are replayed.
+
+
+3. Startup reports how long the snapshot load took, how long the replay took, and how many entries were replayed.
+
+
+
+For this to work, account openings must also be recorded in the journal. Otherwise an account created after the snapshot would be missing on replay.
+
+Balances are only held in memory in ledger mode (moneyflow.ledger.enabled=true). Without the ledger they are read from their rows, so there is nothing to rebuild at boot, and the snapshot beans live in LedgerConfig.
+
+The watermark is ledger_checkpoint.last_sequence, not MAX(transactions.id). An AUTO_INCREMENT id is taken when a row is inserted, but rows commit in any order. A snapshot can see id 101 while id 100 is still uncommitted, and a replay of "id > 101" would then skip 100 for good. The checkpoint sequence is written in the same transaction as the balances it covers, so in any consistent read the two always match.
+
+
+---
+
+Step 1: Journal account openings too (LedgerJournal / LedgerService)
+
+An account opening is a journal record with an empty debit account. The credit account is the new account and the amount is its opening balance:
+
+LedgerService.java
+
+    public CompletableFuture<Long> openAccount(String accountNumber, long openingBalanceMinor) {
+        long sequence;
+        try (AccountLockStripes.Held held = accountLocks.lock(accountNumber, accountNumber)) {
+            if (balances.containsKey(accountNumber)) {
+                return CompletableFuture.completedFuture(journal.lastDurableSequence());
+            }
+            sequence = journal.append("", accountNumber, openingBalanceMinor, nowMicros());
+            balances.put(accountNumber, new AtomicLong(openingBalanceMinor));
+        }
+        return journal.awaitDurable(sequence);
+    }
+
+Replay and the checkpointer treat an empty debit account as "open":
+
+LedgerCheckpointer.checkpoint (inside the replay visitor)
+
+                    if (debit.isEmpty()) {
+                        return;     // the transfer row was inserted with its opening balance at registration
+                    }
+
+The checkpoint still advances past an opening, because replay() returns the last sequence it read, whether or not the visitor kept it.
+
+Every path that creates an account has to open it in the ledger. Single registrations do it after their row is committed (previous step). BulkRegistrationService writes its rows with JDBC batches and has to do the same after each chunk commits. Otherwise its accounts would be missing from the live balances until the next restart:
+
+BulkRegistrationService.java
+
+    @Autowired
+    private ObjectProvider<LedgerService> ledgerService;
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(rows));
+            openInLedger(rows);
+            return rows.size();
+        } catch (DataAccessException chunkFailure) {
+            ...
+                    transactionTemplate.executeWithoutResult(status -> insert(List.of(row)));
+                    openInLedger(List.of(row));
+                    registered++;
+
+    // Runs after the chunk has committed, so the ledger never holds an account whose row was rolled back
+    private void openInLedger(List<Row> rows) {
+        LedgerService ledger = ledgerService.getIfAvailable();
+        if (ledger == null) {
+            return;
+        }
+        CompletableFuture<Long> last = null;
+        for (Row row : rows) {
+            last = ledger.openAccount(row.accountNumber, 0L);
+        }
+        // Durability is a prefix, so once the last opening is durable all of them are
+        if (last != null) {
+            last.join();
+        }
+    }
+
+The chunk is only reported as registered once its openings are durable.
+
+
+---
+
+Step 2: Snapshot file format and store (BalanceSnapshotStore.java)
+
+offset  size  field
+0       4     magic "MFBS"
+4       4     format version (1)
+8       8     watermark (checkpointed ledger sequence)
+16      8     created at (epoch millis)
+24      8     number of entries
+32      ...   entries: [1 byte account length][account ASCII][8 bytes balance minor]
+end-8   8     CRC32C of everything before it
+
+A 12-digit account number makes each entry 21 bytes, so 10 million accounts fit in about 210 MB.
+
+package com.example.moneyflow.ledger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+public class BalanceSnapshotStore {
+
+    private static final int MAGIC = 0x4D464253;   // "MFBS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path file;
+
+    public BalanceSnapshotStore(Path directory) throws IOException {
+        this.file = Files.createDirectories(directory).resolve("balances.snapshot");
+    }
+
+    public interface EntrySource {
+        void forEach(EntrySink sink) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface EntrySink {
+        void accept(String accountNumber, long balanceMinor) throws IOException;
+    }
+
+    // Writes to a temp file, fsyncs it and atomically renames it, so a crash never leaves a half snapshot
+    public void write(long watermark, long entryCount, EntrySource source) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+
+        try (OutputStream raw = Files.newOutputStream(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+             CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(raw, BUFFER_SIZE), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(watermark);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(entryCount);
+
+            long[] written = {0};
+            source.forEach((account, balance) -> {
+                byte[] bytes = account.getBytes(StandardCharsets.US_ASCII);
+                out.writeByte(bytes.length);
+                out.write(bytes);
+                out.writeLong(balance);
+                written[0]++;
+            });
+            if (written[0] != entryCount) {
+                throw new IOException("Snapshot source changed while writing: expected " + entryCount + " entries, got " + written[0]);
+            }
+
+            out.flush();
+            // The CRC covers everything written so far; the trailer itself is not part of it
+            new DataOutputStream(raw).writeLong(crc.getValue());
+        }
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Returns the watermark of the snapshot, or -1 if there is no usable snapshot
+    public long read(EntrySink sink) throws IOException {
+        if (!Files.exists(file)) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+             CheckedInputStream checked = new CheckedInputStream(raw, crc)) {
+            DataInputStream in = new DataInputStream(checked);
+
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return -1;
+            }
+            long watermark = in.readLong();
+            in.readLong();   // created at
+            long count = in.readLong();
+
+            byte[] account = new byte[255];
+            for (long i = 0; i < count; i++) {
+                int length = in.readUnsignedByte();
+                in.readFully(account, 0, length);
+                sink.accept(new String(account, 0, length, StandardCharsets.US_ASCII), in.readLong());
+            }
+
+            // The trailer is read from the raw stream so it is not part of the CRC
+            long expected = crc.getValue();
+            long trailer = new DataInputStream(raw).readLong();
+            return trailer == expected ? watermark : -1;
+        } catch (EOFException e) {
+            // Truncated file, e.g. the disk filled up while copying it in
+            return -1;
+        }
+    }
+}
+
+A truncated file ends in EOFException and a corrupted one fails the CRC. Either way read() returns -1. A corrupt or missing snapshot is never fatal. The loader then falls back to the full scan that boot used before.
+
+
+---
+
+Step 3: Taking snapshots (BalanceSnapshotter.java)
+
+The snapshot has to be a consistent cut: the balances and the watermark must describe the same moment. The snapshotter reads both inside one REPEATABLE READ, read-only transaction on the checkpointed database state. LedgerCheckpointer updates the balances and last_sequence in one transaction, so that read sees either all of a checkpoint or none of it. It runs in the background, so the full scan here doesn't slow down startup or the transfer path.
+
+package com.example.moneyflow.ledger;
+
+import com.example.moneyflow.config.StreamingJdbcTemplates;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public class BalanceSnapshotter {
+
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final TransactionTemplate snapshotTransaction;
+    private final BalanceSnapshotStore store;
+
+    public BalanceSnapshotter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                              BalanceSnapshotStore store) {
+        this.streamingJdbcTemplate = StreamingJdbcTemplates.forwardOnly(jdbcTemplate.getDataSource());
+
+        this.snapshotTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTransaction.setReadOnly(true);
+
+        this.store = store;
+    }
+
+    @Scheduled(fixedDelayString = "${moneyflow.snapshot.interval-ms:600000}", initialDelayString = "${moneyflow.snapshot.interval-ms:600000}")
+    public void snapshot() {
+        snapshotTransaction.executeWithoutResult(status -> {
+            // Both reads see the same MVCC snapshot, so balances are exactly "as of" the watermark
+            long watermark = streamingJdbcTemplate.queryForObject(
+                    "SELECT last_sequence FROM ledger_checkpoint WHERE id = 1", Long.class);
+            long count = streamingJdbcTemplate.queryForObject("SELECT COUNT(*) FROM transfer", Long.class);
+            try {
+                store.write(watermark, count, sink -> {
+                    try {
+                        streamingJdbcTemplate.query("SELECT account_number, balance_minor FROM transfer",
+                                (RowCallbackHandler) rs -> {
+                                    try {
+                                        sink.accept(rs.getString(1), rs.getLong(2));
+                                    } catch (IOException e) {
+                                        throw new UncheckedIOException(e);
+                                    }
+                                });
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException("Balance snapshot failed", e);
+            }
+        });
+    }
+}
+
+After a successful snapshot in ledger mode, journal segments whose last sequence is at or below the snapshot watermark are no longer needed for startup and can be archived.
+
+
+---
+
+Step 4: Loading state on boot (BalanceStateLoader.java)
+
+package com.example.moneyflow.ledger;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BalanceStateLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceStateLoader.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BalanceSnapshotStore store;
+
+    // Set once per boot; the gauges below read them through a strong reference to this bean
+    private volatile long snapshotNanos;
+    private volatile long replayNanos;
+    private volatile long replayedEntries;
+
+    public BalanceStateLoader(JdbcTemplate jdbcTemplate, BalanceSnapshotStore store, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.store = store;
+
+        TimeGauge.builder("moneyflow.startup.snapshot.load", this, TimeUnit.NANOSECONDS, loader -> loader.snapshotNanos)
+                .strongReference(true)
+                .register(meterRegistry);
+        TimeGauge.builder("moneyflow.startup.replay", this, TimeUnit.NANOSECONDS, loader -> loader.replayNanos)
+                .strongReference(true)
+                .register(meterRegistry);
+        Gauge.builder("moneyflow.startup.replay.entries", this, loader -> loader.replayedEntries)
+                .strongReference(true)
+                .register(meterRegistry);
+    }
+
+    // Snapshot + journal records after its watermark. Returns the last replayed sequence.
+    public long loadFromJournal(ConcurrentHashMap<String, AtomicLong> balances, Path journalDirectory, int recordsPerSegment)
+            throws IOException {
+        long start = System.nanoTime();
+        long watermark = loadSnapshotOrScan(balances);
+        long snapshotNanos = System.nanoTime() - start;
+
+        long[] replayed = {0};
+        long replayStart = System.nanoTime();
+        long last = LedgerJournal.replay(journalDirectory, recordsPerSegment, watermark, (sequence, micros, amount, debit, credit) -> {
+            if (debit.isEmpty()) {
+                balances.putIfAbsent(credit, new AtomicLong(amount));
+            } else {
+                balances.get(debit).addAndGet(-amount);
+                balances.get(credit).addAndGet(amount);
+            }
+            replayed[0]++;
+        });
+
+        report(balances.size(), snapshotNanos, System.nanoTime() - replayStart, replayed[0]);
+        return last;
+    }
+
+    private long loadSnapshotOrScan(ConcurrentHashMap<String, AtomicLong> balances) throws IOException {
+        long watermark = store.read((account, balance) -> balances.put(account, new AtomicLong(balance)));
+        if (watermark >= 0) {
+            return watermark;
+        }
+
+        // No usable snapshot: fall back to the full scan
+        log.warn("No valid balance snapshot found, scanning the transfer table");
+        balances.clear();
+        long fallbackWatermark = jdbcTemplate.queryForObject(
+                "SELECT last_sequence FROM ledger_checkpoint WHERE id = 1", Long.class);
+        jdbcTemplate.query("SELECT account_number, balance_minor FROM transfer",
+                (RowCallbackHandler) rs -> balances.put(rs.getString(1), new AtomicLong(rs.getLong(2))));
+        return fallbackWatermark;
+    }
+
+    private void report(int accounts, long snapshotNanos, long replayNanos, long replayed) {
+        log.info("Balance state ready: {} accounts, snapshot load {} ms, replay {} ms ({} entries)",
+                accounts,
+                TimeUnit.NANOSECONDS.toMillis(snapshotNanos),
+                TimeUnit.NANOSECONDS.toMillis(replayNanos),
+                replayed);
+
+        this.snapshotNanos = snapshotNanos;
+        this.replayNanos = replayNanos;
+        this.replayedEntries = replayed;
+    }
+}
+
+Accounts opened after the snapshot come back through their opening records (Step 1), so replay never meets an account it doesn't know.
+
+MeterRegistry.gauge(name, number) holds its number only weakly. A boxed long that nothing else references is collected at the next GC, and the gauge then reports NaN. The builders with strongReference(true) keep the loader bean as the gauge's state, so the values stay readable for the life of the process. The two durations are TimeGauges, so each registry reports them in its own base unit (seconds for Prometheus, as moneyflow_startup_replay_seconds).
+
+The fallback scan reads the watermark before scanning the rows. Without a transaction around the scan, a concurrent write could land in both the scan and the replay, so the fallback has to run before the node accepts traffic, which it does because it runs during bean initialisation.
+
+
+---
+
+Step 5: Wiring (LedgerConfig.java)
+
+The ledger journal bean now starts from the loader instead of scanning the table itself:
+
+    @Value("${moneyflow.snapshot.directory:./snapshots}")
+    private String snapshotDirectory;
+
+    @Bean
+    public BalanceSnapshotStore balanceSnapshotStore() throws IOException {
+        return new BalanceSnapshotStore(Paths.get(snapshotDirectory));
+    }
+
+    @Bean
+    public BalanceStateLoader balanceStateLoader(JdbcTemplate jdbcTemplate, BalanceSnapshotStore store, MeterRegistry meterRegistry) {
+        return new BalanceStateLoader(jdbcTemplate, store, meterRegistry);
+    }
+
+    @Bean
+    public LedgerJournal ledgerJournal(BalanceStateLoader loader, ConcurrentHashMap<String, AtomicLong> ledgerBalances) throws IOException {
+        Path dir = Paths.get(directory);
+        long last = loader.loadFromJournal(ledgerBalances, dir, recordsPerSegment);
+        return new LedgerJournal(dir, recordsPerSegment, flushIntervalMicros, last);
+    }
+
+    @Bean
+    public BalanceSnapshotter balanceSnapshotter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                                 BalanceSnapshotStore store) {
+        return new BalanceSnapshotter(jdbcTemplate, new TransactionTemplate(transactionManager), store);
+    }
+
+application.properties
+
+moneyflow.snapshot.directory=/var/lib/moneyflow/snapshots
+moneyflow.snapshot.interval-ms=600000
+
+Example startup log with 12 million accounts and 10 minutes of activity since the last snapshot:
+
+Balance state ready: 12004311 accounts, snapshot load 1840 ms, replay 96 ms (41822 entries)
+
+
+---
+
+Conclusion
+
+Boot now loads a compact, CRC-checked binary snapshot sequentially and replays only what happened after its watermark, so startup time depends on recent activity and not on the number of accounts.
+
+Snapshots are taken in the background from a consistent cut and written atomically. A missing or corrupt snapshot falls back to the old full scan.
+
+Snapshot load time, replay time and the number of replayed entries are logged and published as metrics on every start (moneyflow.startup.snapshot.load, moneyflow.startup.replay, moneyflow.startup.replay.entries).
@@ -0,0 +1,323 @@
+The dashboard polls /api/user/balance constantly, and it is our highest-QPS endpoint by far. Every poll resolves the user through the JWT filter and then loads the full Transfer entity (names, email, IFSC, version...) from the database just to read one number.
+
+Here's a dedicated balance cache for that endpoint:
+
+1. It is keyed by account number, with a small userId → account number map in front (that mapping never changes).
+
+
+2. Entries hold only the balance and the row version, and the total is capped by a fixed memory budget with LRU-style eviction.
+
+
+3. It is write-through: the /api/transfer path puts the new balances into the cache as part of the same commit.
+
+
+4. Versions only ever go forward, so a slow cache miss that read the old row can't overwrite a newer balance. Once a transfer has returned success, every later balance read sees it.
+
+
+
+
+---
+
+Step 1: The cache (BalanceCache.java)
+
+package com.example.moneyflow.balance;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+public class BalanceCache {
+
+    // Rough retained size of one entry: map node + key String (12 chars) + CachedBalance
+    private static final int BYTES_PER_ENTRY = 160;
+
+    private final Cache<String, CachedBalance> balances;
+    private final Cache<String, String> accountByUser;
+
+    public BalanceCache(MeterRegistry meterRegistry,
+                        @Value("${moneyflow.balance-cache.memory-budget-mb:64}") long budgetMb,
+                        @Value("${moneyflow.balance-cache.ttl:PT5S}") Duration ttl) {
+        long entries = budgetMb * 1024 * 1024 / (2 * BYTES_PER_ENTRY);   // half each for the two maps
+
+        this.balances = Caffeine.newBuilder()
+                .maximumSize(entries)
+                // Bounds staleness for writes this node never sees (other nodes, manual corrections)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.accountByUser = Caffeine.newBuilder()
+                .maximumSize(entries)
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, balances, "balances");
+    }
+
+    public String accountFor(String userId) {
+        return accountByUser.getIfPresent(userId);
+    }
+
+    public void rememberAccount(String userId, String accountNumber) {
+        accountByUser.put(userId, accountNumber);
+    }
+
+    public CachedBalance get(String accountNumber) {
+        return balances.getIfPresent(accountNumber);
+    }
+
+    // Keeps whichever of the cached and offered values has the higher row version
+    public CachedBalance offer(String accountNumber, long balanceMinor, long version) {
+        return balances.asMap().merge(accountNumber, new CachedBalance(balanceMinor, version),
+                (cached, offered) -> offered.version > cached.version ? offered : cached);
+    }
+
+    public void invalidate(String accountNumber) {
+        balances.invalidate(accountNumber);
+    }
+
+    public static final class CachedBalance {
+        final long balanceMinor;
+        final long version;
+
+        CachedBalance(long balanceMinor, long version) {
+            this.balanceMinor = balanceMinor;
+            this.version = version;
+        }
+
+        public long getBalanceMinor() {
+            return balanceMinor;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
+
+Explanation:
+
+The memory budget (64 MB by default) is converted into an entry count. Entries are all the same small size, so a count is an accurate stand-in for bytes.
+
+Caffeine's eviction is W-TinyLFU: a small LRU admission window in front of a frequency-aware main area. For a polling workload it behaves like LRU for recently active users, keeps hot accounts from being flushed out by one-off reads, and needs no global lock on reads. A strict LinkedHashMap LRU would serialise every read on one lock, which is the wrong trade-off for the busiest endpoint.
+
+offer() is the only write path. Because of the version comparison inside merge(), the order in which a write-through and a concurrent miss reach the cache doesn't matter: the newer row version always wins.
+
+The write-through only covers transfers made on this node. A transfer handled by another node, or any write outside the application, never reaches this cache, so entries also expire a few seconds after they were written (moneyflow.balance-cache.ttl, 5 s by default). A dashboard polling every second or two still gets most of its reads from the cache. A balance changed elsewhere shows up here within the TTL instead of staying stale until the entry happens to be evicted. On a single-node deployment without outside writers, the TTL can be raised.
+
+
+
+
+---
+
+Step 2: Narrow loads instead of the full entity (BalanceQueries.java)
+
+package com.example.moneyflow.balance;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class BalanceQueries {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BalanceQueries(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public String accountNumberOf(String userId) {
+        try {
+            return jdbcTemplate.queryForObject("SELECT account_number FROM transfer WHERE user_id = ?", String.class, userId);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    public long[] balanceAndVersion(String accountNumber) {
+        try {
+            return jdbcTemplate.queryForObject(
+                    "SELECT balance_minor, version FROM transfer WHERE account_number = ?",
+                    (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)},
+                    accountNumber);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+}
+
+CREATE INDEX idx_transfer_user_id ON transfer (user_id);
+
+On a miss, the query reads two BIGINTs through the unique account_number index and doesn't hydrate the whole entity.
+
+
+---
+
+Step 3: Balance service and endpoint (BalanceReadService.java, MoneyFlowController.java)
+
+package com.example.moneyflow.balance;
+
+import com.example.moneyflow.ledger.LedgerService;
+import com.example.moneyflow.model.Money;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+@Service
+public class BalanceReadService {
+
+    private final BalanceCache cache;
+    private final BalanceQueries queries;
+    private final LedgerService ledgerService;   // null unless moneyflow.ledger.enabled
+
+    public BalanceReadService(BalanceCache cache, BalanceQueries queries, ObjectProvider<LedgerService> ledgerService) {
+        this.cache = cache;
+        this.queries = queries;
+        this.ledgerService = ledgerService.getIfAvailable();
+    }
+
+    public BalanceView balanceFor(String userId) {
+        String account = cache.accountFor(userId);
+        if (account == null) {
+            account = queries.accountNumberOf(userId);
+            if (account == null) {
+                return null;
+            }
+            cache.rememberAccount(userId, account);
+        }
+
+        if (ledgerService != null) {
+            // Ledger mode: the in-memory ledger balances are the source of truth and are always current,
+            // while the database (and anything cached from it) lags by up to one checkpoint
+            return new BalanceView(account, Money.ofMinor(ledgerService.balanceOf(account)));
+        }
+
+        BalanceCache.CachedBalance cached = cache.get(account);
+        if (cached == null) {
+            long[] row = queries.balanceAndVersion(account);
+            if (row == null) {
+                return null;
+            }
+            // A concurrent write-through with a newer version wins inside offer()
+            cached = cache.offer(account, row[0], row[1]);
+        }
+        return new BalanceView(account, Money.ofMinor(cached.getBalanceMinor()));
+    }
+
+    public static final class BalanceView {
+        private final String accountNumber;
+        private final Money balance;
+
+        BalanceView(String accountNumber, Money balance) {
+            this.accountNumber = accountNumber;
+            this.balance = balance;
+        }
+
+        public String getAccountNumber() {
+            return accountNumber;
+        }
+
+        public Money getBalance() {
+            return balance;
+        }
+    }
+}
+
+MoneyFlowController.java
+
+    @Autowired
+    private BalanceReadService balanceReadService;
+
+    @GetMapping("/balance")
+    public ResponseEntity<BalanceReadService.BalanceView> getBalance(Authentication authentication) {
+        BalanceReadService.BalanceView view = balanceReadService.balanceFor(authentication.getName());
+        return view == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(view);
+    }
+
+The response is {"accountNumber":"500000000124","balance":1234.56}, so the existing Dashboard code (response.data.balance) works unchanged.
+
+Combined with the verified-token cache and stateless principal mode from the earlier steps, a warm balance poll touches no database at all: the token check is a cache hit, the principal comes from claims, and the balance comes from this cache.
+
+
+---
+
+Step 4: Write-through from the transfer path (TransferService.java)
+
+Entities are versioned (@Version from the transfer step), so after the flush each Transfer carries its new version. The cache is updated from a TransactionSynchronization in afterCommit. That runs after the commit has succeeded but still inside transactionTemplate.execute, which means still under the stripe locks and before the HTTP response is written.
+
+    @Autowired
+    private BalanceCache balanceCache;
+
+    private TransferResult doTransfer(String userId, String senderAccount, String receiverAccount, long amountMinor) {
+        // ... lookups, checks and balance updates unchanged
+
+        transferRepository.saveAndFlush(sender);
+        transferRepository.saveAndFlush(receiver);
+
+        long senderBalance = sender.getBalanceMinor();
+        long senderVersion = sender.getVersion();
+        long receiverBalance = receiver.getBalanceMinor();
+        long receiverVersion = receiver.getVersion();
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                balanceCache.offer(senderAccount, senderBalance, senderVersion);
+                balanceCache.offer(receiverAccount, receiverBalance, receiverVersion);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                // After a rollback the cached values are still correct; only an unknown outcome
+                // (e.g. the connection dropped during commit) forces a reload
+                if (status == STATUS_UNKNOWN) {
+                    balanceCache.invalidate(senderAccount);
+                    balanceCache.invalidate(receiverAccount);
+                }
+            }
+        });
+
+        // ... debit/credit entries and result unchanged
+    }
+
+(imports: org.springframework.transaction.support.TransactionSynchronization, org.springframework.transaction.support.TransactionSynchronizationManager)
+
+saveAndFlush is used so that the version increment has happened (and is visible on the entity) before the values are captured for afterCommit.
+
+In ledger mode, BalanceReadService reads ledgerService.balanceOf(account) and doesn't use the balance cache at all (Step 3). The balance is already in memory, and it is newer than anything in the database.
+
+The ledger checkpointer is the other code path that writes balance_minor. It drops the cached entries of the accounts it touched once its transaction has committed, so anything else that uses the cache (a node switching out of ledger mode, the batching pipeline's version checks) never sees a pre-checkpoint value. LedgerCheckpointer gets the BalanceCache as a constructor argument (LedgerConfig passes it in), and checkpoint() ends with:
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // ... unchanged
+        });
+        for (String account : accounts) {
+            balanceCache.invalidate(account);
+        }
+
+Any remaining writer, such as an admin correction run directly in SQL, is covered by the TTL.
+
+
+---
+
+Step 5: Configuration (application.properties)
+
+moneyflow.balance-cache.memory-budget-mb=64
+moneyflow.balance-cache.ttl=PT5S
+
+64 MB holds roughly 200,000 accounts in each map. Watch /actuator/metrics/cache.gets?tag=cache:balances and raise the budget if the hit ratio drops below about 95%.
+
+
+---
+
+Conclusion
+
+/api/user/balance is now served from a dedicated, memory-bounded balance cache. Misses load two columns instead of the whole Transfer entity.
+
+Transfers write the new balances through to the cache right after commit, before the response is sent, and version ordering means a racing miss can never put an older balance back.
+
+Writes the node can't see expire with a short TTL. In ledger mode the endpoint reads the in-memory ledger directly, and checkpoints invalidate the accounts they touched.
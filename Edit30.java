@@ -0,0 +1,371 @@
+So far the JWT and money benchmarks were added inside the application's own build (the me.champeau.jmh plugin with src/jmh/java). As more suites are added, it is cleaner to give them their own build module. The application jar then never pulls in JMH, benchmarks can depend on anything the app has, and results are written as JSON files that can be compared between releases.
+
+Here's the layout:
+
+moneyflow/
+├── settings.gradle
+├── build.gradle                  (the application, unchanged apart from removing the jmh plugin)
+└── benchmarks/
+    ├── build.gradle
+    └── src/jmh/java/com/example/moneyflow/bench/
+        ├── JwtTokenProviderBenchmark.java
+        ├── JwtEngineBenchmark.java        (moved from src/jmh in the app)
+        ├── BCryptBenchmark.java
+        ├── MoneyBenchmark.java            (moved from src/jmh in the app)
+        ├── BalanceServiceBenchmark.java
+        ├── IdentifierBenchmark.java
+        └── EntityJsonBenchmark.java
+
+
+---
+
+Step 1: Gradle setup
+
+settings.gradle
+
+rootProject.name = 'moneyflow'
+include 'benchmarks'
+
+build.gradle (application): remove the id 'me.champeau.jmh' plugin line and the jmh { } block, and move src/jmh into benchmarks/src/jmh.
+
+benchmarks/build.gradle
+
+plugins {
+    id 'java'
+    id 'me.champeau.jmh' version '0.7.2'
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    // The application classes and everything they depend on (JJWT, Spring Security crypto, Jackson, ...)
+    jmh project(':')
+    jmh 'org.springframework.security:spring-security-crypto'
+    jmh 'com.fasterxml.jackson.datatype:jackson-datatype-jsr310'
+}
+
+jmh {
+    fork = 2
+    warmupIterations = 5
+    warmup = '1s'
+    iterations = 10
+    timeOnIteration = '1s'
+    threads = 1
+    profilers = ['gc']
+    resultFormat = 'JSON'
+    // One file per version, so releases can be compared side by side
+    resultsFile = layout.buildDirectory.file("results/jmh/moneyflow-${rootProject.version}.json")
+    includes = project.findProperty('bench') ? [project.findProperty('bench')] : []
+}
+
+If the application uses the Spring Boot plugin, its main jar is the repackaged boot jar. Add jar { enabled = true } (or depend on the plain archive) in the root build so that project(':') resolves to normal classes.
+
+
+---
+
+Step 2: JWT suite (JwtTokenProviderBenchmark.java)
+
+This benchmarks the real JwtTokenProvider through its public methods, so it measures exactly what the filter and the login path run.
+
+package com.example.moneyflow.bench;
+
+import com.example.moneyflow.security.JwtTokenProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JwtTokenProviderBenchmark {
+
+    private JwtTokenProvider provider;
+    private Authentication authentication;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        byte[] secret = new byte[64];
+        new SecureRandom().nextBytes(secret);
+
+        provider = new JwtTokenProvider(Base64.getEncoder().encodeToString(secret), 86400000L, new ObjectMapper());
+        authentication = new UsernamePasswordAuthenticationToken("4821907365", null,
+                AuthorityUtils.createAuthorityList("ROLE_USER"));
+        token = provider.generateToken(authentication, 0L);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return provider.generateToken(authentication, 0L);
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return provider.validateToken(token);
+    }
+
+    @Benchmark
+    public String getUserIdFromJWT() {
+        return provider.getUserIdFromJWT(token);
+    }
+
+    @Benchmark
+    public Claims parseVerifiedClaims() {
+        return provider.parseVerifiedClaims(token);
+    }
+}
+
+
+---
+
+Step 3: BCrypt at several cost factors (BCryptBenchmark.java)
+
+package com.example.moneyflow.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class BCryptBenchmark {
+
+    @Param({"4", "8", "10", "12"})
+    public int cost;
+
+    private BCryptPasswordEncoder encoder;
+    private String hash;
+
+    @Setup
+    public void setUp() {
+        encoder = new BCryptPasswordEncoder(cost);
+        hash = encoder.encode("correct horse battery staple");
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return encoder.matches("correct horse battery staple", hash);
+    }
+
+    @Benchmark
+    public boolean mismatch() {
+        return encoder.matches("wrong password", hash);
+    }
+}
+
+The average time per matches() call at the configured cost, multiplied by the expected peak logins per second, gives the number of cores the BCrypt pool (moneyflow.auth.bcrypt.threads) needs.
+
+
+---
+
+Step 4: Balance and identifier generators
+
+BalanceServiceBenchmark.java
+
+package com.example.moneyflow.bench;
+
+import com.example.moneyflow.service.BalanceService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BalanceServiceBenchmark {
+
+    private final BalanceService balanceService = new BalanceService();
+
+    @Benchmark
+    public long generateRandomBalance() {
+        return balanceService.generateRandomBalance();
+    }
+}
+
+IdentifierBenchmark.java
+
+The account number, user id and PIN generators moved from UserService to IdentifierService in the id allocation step. The benchmark gives it an in-memory sequence, so it measures the allocator and the formatting (Feistel permutation, Luhn digit) without a database.
+
+package com.example.moneyflow.bench;
+
+import com.example.moneyflow.ids.IdSequenceDao;
+import com.example.moneyflow.ids.IdentifierService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IdentifierBenchmark {
+
+    private IdentifierService identifiers;
+
+    @Setup
+    public void setUp() {
+        IdSequenceDao inMemory = new IdSequenceDao(null, null) {
+            private final ConcurrentHashMap<String, AtomicLong> next = new ConcurrentHashMap<>();
+
+            @Override
+            public long lease(String name, int size) {
+                return next.computeIfAbsent(name, n -> new AtomicLong(1)).getAndAdd(size);
+            }
+        };
+        identifiers = new IdentifierService(inMemory, 1000, "5", "MFLW0000001", "benchmark-key");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String nextAccountNumber() {
+        return identifiers.nextAccountNumber();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String nextUserId() {
+        return identifiers.nextUserId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String nextPin() {
+        return identifiers.nextPin();
+    }
+}
+
+@Threads(4) is deliberate here. The allocator is shared, so the interesting number is how it scales under contention, not its single-thread speed.
+
+
+---
+
+Step 5: Entity JSON serialization (EntityJsonBenchmark.java)
+
+This uses an ObjectMapper configured like Spring Boot's (JavaTimeModule, the Money serializers), so the numbers match what the controllers actually do.
+
+package com.example.moneyflow.bench;
+
+import com.example.moneyflow.config.MoneyJsonComponent;
+import com.example.moneyflow.model.Money;
+import com.example.moneyflow.model.Transfer;
+import com.example.moneyflow.model.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntityJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+    private Transfer transfer;
+    private User user;
+    private byte[] transferJson;
+
+    @Setup
+    public void setUp() throws java.io.IOException {
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .registerModule(new SimpleModule()
+                        .addSerializer(Money.class, new MoneyJsonComponent.Serializer())
+                        .addDeserializer(Money.class, new MoneyJsonComponent.Deserializer()));
+
+        transfer = new Transfer();
+        transfer.setId("73920481");
+        transfer.setUserId("4821907365");
+        transfer.setAccountNumber("500000000124");
+        transfer.setIfscCode("MFLW0000001");
+        transfer.setFirstName("Asha");
+        transfer.setLastName("Rao");
+        transfer.setEmail("asha@example.com");
+        transfer.setBalanceMinor(52_345_67L);
+
+        user = new User();
+        user.setUserId("4821907365");
+        user.setEmail("asha@example.com");
+        user.setPassword("$2a$10$7EqJtq98hPqEX7fNZaFWoO5zMZ1q0D3p8NN5rA9wWZ9GgM8Xq0x1e");
+
+        transferJson = objectMapper.writeValueAsBytes(transfer);
+
+        // Don't benchmark a lossy mapping: "balance": 52345.67 has to come back as 5234567 minor units
+        long readBack = objectMapper.readValue(transferJson, Transfer.class).getBalanceMinor();
+        if (readBack != transfer.getBalanceMinor()) {
+            throw new IllegalStateException("Transfer JSON doesn't round-trip: balance " + readBack);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeTransfer() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(transfer);
+    }
+
+    @Benchmark
+    public byte[] serializeUser() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public Transfer deserializeTransfer() throws java.io.IOException {
+        return objectMapper.readValue(transferJson, Transfer.class);
+    }
+}
+
+deserializeTransfer goes through MinorUnitsDeserializer on balanceMinor (from the money step). setUp checks that the balance survives the round trip, so a mapping that loses the decimals fails the run instead of being timed.
+
+The benchmark also shows that User serializes its password hash. /api/user/details returns the User entity (from the user details step), so mark the field @JsonIgnore (or @JsonProperty(access = WRITE_ONLY)) in User.java. It should never reach a client.
+
+
+---
+
+Step 6: Running and comparing releases
+
+# All suites, results in benchmarks/build/results/jmh/moneyflow-<version>.json
+./gradlew :benchmarks:jmh
+
+# A single suite while iterating
+./gradlew :benchmarks:jmh -Pbench=BCryptBenchmark
+
+Each entry in the JSON file has "benchmark", "params", "primaryMetric" (score, scoreError, scoreUnit) and, with the gc profiler, "secondaryMetrics"."·gc.alloc.rate.norm" (bytes per operation).
+
+To compare two releases, keep the JSON files as build artifacts and diff the primary scores, for example:
+
+jq -r '.[] | [.benchmark + (if .params then "(" + (.params | to_entries | map(.key + "=" + .value) | join(",")) + ")" else "" end), .primaryMetric.score, .primaryMetric.scoreUnit] | @tsv' \
+    moneyflow-1.4.0.json > old.tsv
+jq -r '...same filter...' moneyflow-1.5.0.json > new.tsv
+join -t $'\t' old.tsv new.tsv
+
+Or upload both files to https://jmh.morethan.io for a side-by-side chart.
+
+Run benchmarks on a quiet, fixed machine (the same CI runner type each time, with CPU frequency scaling off). A laptop on battery makes the numbers useless for comparison.
+
+
+---
+
+Conclusion
+
+JMH benchmarks now live in their own benchmarks module. The suites cover JwtTokenProvider, BCrypt at costs 4-12, balance generation and money arithmetic, the id/account/PIN generators, and entity JSON serialization.
+
+Results are written as versioned JSON files with allocation figures, so any two releases can be compared.
@@ -0,0 +1,545 @@
+The JMH suites from the previous step measure single methods. They can't tell you how the whole service behaves when real users register, log in, poll their balance and send money at the same time, with the filter chain, Tomcat, the connection pool and the database all involved. We also don't want to depend on an external load farm just to get those numbers.
+
+Here's an in-repo load generator that:
+
+1. Boots the application in-process against an embedded H2 database (MySQL compatibility mode), so a run needs nothing but a JDK.
+
+
+2. Starts virtual users at a fixed target arrival rate (an open model). New users keep arriving even if the server slows down, the way real traffic does. Each user runs register → login → details → poll balance N times → transfer. Registration opens accounts at 0, so the harness funds each new account before it logs in; otherwise every transfer would be rejected and only the failure path would be measured.
+
+
+3. Measures every request from the moment it was scheduled to be sent, not from when a free connection became available. That avoids coordinated omission, where a stalled server makes its own latency look better.
+
+
+4. Reports HdrHistogram latency percentiles, throughput and error rates per endpoint.
+
+
+
+
+---
+
+Step 1: Module setup
+
+settings.gradle
+
+rootProject.name = 'moneyflow'
+include 'benchmarks', 'loadtest'
+
+loadtest/build.gradle
+
+plugins {
+    id 'java'
+    id 'application'
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    implementation project(':')
+    implementation 'org.hdrhistogram:HdrHistogram:2.1.12'
+    implementation 'com.fasterxml.jackson.core:jackson-databind'
+    runtimeOnly 'com.h2database:h2'
+}
+
+application {
+    mainClass = 'com.example.moneyflow.loadtest.LoadTest'
+    applicationDefaultJvmArgs = ['-Xms1g', '-Xmx1g']
+}
+
+loadtest/src/main/resources/application-loadtest.properties
+
+# NON_KEYWORDS: H2 2.x reserves USER and TIMESTAMP, which are the user table and transactions.timestamp here
+spring.datasource.url=jdbc:h2:mem:loadtest;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER,TIMESTAMP
+spring.datasource.username=sa
+spring.datasource.password=
+spring.jpa.hibernate.ddl-auto=create
+spring.jpa.show-sql=false
+spring.sql.init.mode=always
+spring.sql.init.schema-locations=classpath:loadtest-schema.sql
+spring.jpa.defer-datasource-initialization=true
+
+moneyflow.jwt.secret=bG9hZHRlc3Qtb25seS1zZWNyZXQtbG9hZHRlc3Qtb25seS1zZWNyZXQtbG9hZHRlc3Qtb25seS1zZWNyZXQ=
+moneyflow.ids.permutation-key=loadtest
+
+# Opening balance the harness gives each registered account (1,000.00)
+loadtest.opening-balance-minor=100000
+
+loadtest/src/main/resources/loadtest-schema.sql holds the extra tables that Hibernate doesn't create (id_sequence with its three rows, ledger_checkpoint), plus the indexes from the earlier steps.
+
+
+---
+
+Step 2: Load generator (LoadTest.java)
+
+package com.example.moneyflow.loadtest;
+
+import com.example.moneyflow.MoneyFlowApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Recorder;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadTest {
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final HttpClient http;
+    private final String baseUrl;
+    private final LoadTestOptions options;
+    private final JdbcTemplate jdbcTemplate;
+    private final long openingBalanceMinor;
+
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+    private final List<String> openedAccounts = new CopyOnWriteArrayList<>();
+    private final AtomicLong userCounter = new AtomicLong();
+    private final ExecutorService clientExecutor;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    // Blocking setup work (fund) runs here, never on the HttpClient's threads
+    private final ExecutorService setupExecutor = Executors.newFixedThreadPool(2);
+    private final LongAdder setupErrors = new LongAdder();
+    // One party for run() itself, plus one per session still in flight
+    private final Phaser sessions = new Phaser(1);
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        ConfigurableApplicationContext app = new SpringApplicationBuilder(MoneyFlowApplication.class)
+                .profiles("loadtest")
+                .properties("server.port=0")
+                .run();
+        int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+
+        try {
+            long openingBalanceMinor = app.getEnvironment().getProperty("loadtest.opening-balance-minor", Long.class, 100_000L);
+            new LoadTest("http://localhost:" + port, options, app.getBean(JdbcTemplate.class), openingBalanceMinor).run();
+        } finally {
+            app.close();
+        }
+    }
+
+    LoadTest(String baseUrl, LoadTestOptions options, JdbcTemplate jdbcTemplate, long openingBalanceMinor) {
+        this.baseUrl = baseUrl;
+        this.options = options;
+        this.jdbcTemplate = jdbcTemplate;
+        this.openingBalanceMinor = openingBalanceMinor;
+        this.clientExecutor = Executors.newFixedThreadPool(options.clientThreads);
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(clientExecutor)
+                .build();
+    }
+
+    void run() throws Exception {
+        for (String endpoint : List.of("register", "login", "details", "balance", "transfer")) {
+            stats.put(endpoint, new EndpointStats());
+        }
+
+        try {
+            // Warm-up: same workload, results discarded
+            drive(options.warmup);
+            stats.values().forEach(EndpointStats::reset);
+            setupErrors.reset();
+
+            long started = System.nanoTime();
+            drive(options.duration);
+            long elapsedNanos = System.nanoTime() - started;
+
+            // Let in-flight sessions finish so their requests are counted. Their balance polls still
+            // need the scheduler, so it is only shut down once every session has completed.
+            try {
+                sessions.awaitAdvanceInterruptibly(sessions.arrive(), 30, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                System.out.printf("%d sessions still running after 30 s, reporting without them%n",
+                        sessions.getUnarrivedParties());
+            }
+
+            report(elapsedNanos);
+        } finally {
+            // The pools' threads are not daemons; left running, they would keep the JVM (and gradle run) alive
+            scheduler.shutdownNow();
+            setupExecutor.shutdownNow();
+            clientExecutor.shutdownNow();
+        }
+    }
+
+    // Open model: a new virtual user every 1/rate seconds, whatever the server is doing
+    private void drive(Duration duration) throws InterruptedException {
+        long intervalNanos = (long) (1_000_000_000L / options.arrivalRate);
+        long end = System.nanoTime() + duration.toNanos();
+        long next = System.nanoTime();
+
+        while (next < end) {
+            long intendedStart = next;
+            sessions.register();   // before handing off, so run() can't stop waiting before this session starts
+            scheduler.execute(() -> startSession(intendedStart));
+            next += intervalNanos;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+        }
+    }
+
+    private void startSession(long intendedStart) {
+        long n = userCounter.incrementAndGet();
+        String password = "Pw-" + n + "-loadtest";
+        Session session = new Session();
+
+        call("register", intendedStart, form("/api/user/register",
+                "firstName", "Load", "lastName", "User" + n, "email", "load" + n + "@example.com", "password", password))
+                .thenCompose(body -> {
+                    JsonNode profile = parse(body);
+                    session.userId = profile.path("userId").asText();
+                    session.accountNumber = profile.path("accountNumber").asText();
+                    return fund(session.accountNumber);
+                })
+                .thenCompose(ignored -> {
+                    openedAccounts.add(session.accountNumber);
+                    return call("login", System.nanoTime(),
+                            form("/api/user/login", "userId", session.userId, "password", password));
+                })
+                .thenCompose(token -> {
+                    session.token = token.startsWith("Bearer ") ? token.substring(7) : token;
+                    return call("details", System.nanoTime(), get("/api/user/details", session.token));
+                })
+                .thenCompose(ignored -> pollBalance(session, options.balancePolls))
+                .thenCompose(ignored -> {
+                    if (ThreadLocalRandom.current().nextDouble() >= options.transferRatio || openedAccounts.size() < 2) {
+                        return CompletableFuture.completedFuture("");
+                    }
+                    String receiver = openedAccounts.get(ThreadLocalRandom.current().nextInt(openedAccounts.size()));
+                    if (receiver.equals(session.accountNumber)) {
+                        return CompletableFuture.completedFuture("");
+                    }
+                    String body = "{\"senderId\":\"" + session.accountNumber + "\",\"receiverId\":\"" + receiver + "\",\"amount\":0.01}";
+                    return call("transfer", System.nanoTime(), post("/api/transfer", session.token, body));
+                })
+                .whenComplete((value, error) -> sessions.arriveAndDeregister())
+                .exceptionally(e -> null);   // already counted as an error by call()
+    }
+
+    // Setup, not part of the measured workload: give the new account money so its transfer can succeed.
+    // The harness shares the application context, so it writes the opening balance directly.
+    private CompletableFuture<Void> fund(String accountNumber) {
+        return CompletableFuture.runAsync(() -> {
+            int updated = jdbcTemplate.update("UPDATE transfer SET balance_minor = ? WHERE account_number = ?",
+                    openingBalanceMinor, accountNumber);
+            if (updated != 1) {
+                throw new IllegalStateException("Could not fund account " + accountNumber);
+            }
+        }, setupExecutor).whenComplete((ignored, error) -> {
+            if (error != null) {
+                setupErrors.increment();
+            }
+        });
+    }
+
+    // Balance polls are spaced by the think time and scheduled on fixed intended start times
+    private CompletableFuture<String> pollBalance(Session session, int remaining) {
+        if (remaining == 0) {
+            return CompletableFuture.completedFuture("");
+        }
+        CompletableFuture<String> done = new CompletableFuture<>();
+        long intendedStart = System.nanoTime() + options.thinkTime.toNanos();
+        scheduler.schedule(() -> call("balance", intendedStart, get("/api/user/balance", session.token))
+                        .thenCompose(ignored -> pollBalance(session, remaining - 1))
+                        .whenComplete((value, error) -> {
+                            if (error != null) {
+                                done.completeExceptionally(error);
+                            } else {
+                                done.complete(value);
+                            }
+                        }),
+                options.thinkTime.toNanos(), TimeUnit.NANOSECONDS);
+        return done;
+    }
+
+    private CompletableFuture<String> call(String endpoint, long intendedStartNanos, HttpRequest request) {
+        EndpointStats endpointStats = stats.get(endpoint);
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> {
+                    // Latency from when the request *should* have been sent: no coordinated omission
+                    long latency = System.nanoTime() - intendedStartNanos;
+                    endpointStats.latency.recordValue(Math.min(latency, EndpointStats.MAX_TRACKABLE_NANOS));
+
+                    if (error != null || response.statusCode() >= 400) {
+                        endpointStats.errors.increment();
+                        String status = error != null ? error.getClass().getSimpleName() : String.valueOf(response.statusCode());
+                        endpointStats.errorsByStatus.computeIfAbsent(status, s -> new LongAdder()).increment();
+                        throw new IllegalStateException(endpoint + " failed: " + status);
+                    }
+                    endpointStats.ok.increment();
+                    return response.body();
+                });
+    }
+
+    private HttpRequest form(String path, String... keyValues) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            if (body.length() > 0) {
+                body.append('&');
+            }
+            body.append(keyValues[i]).append('=').append(URLEncoder.encode(keyValues[i + 1], StandardCharsets.UTF_8));
+        }
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(options.requestTimeout)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+    }
+
+    private HttpRequest get(String path, String token) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(options.requestTimeout)
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+    }
+
+    private HttpRequest post(String path, String token, String jsonBody) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(options.requestTimeout)
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+                .build();
+    }
+
+    private JsonNode parse(String body) {
+        try {
+            return json.readTree(body);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unexpected response: " + body, e);
+        }
+    }
+
+    private void report(long elapsedNanos) throws IOException {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%nArrival rate %.1f users/s for %s (%d users started)%n%n",
+                options.arrivalRate, options.duration, userCounter.get());
+        System.out.printf("%-10s %9s %8s %8s %9s %9s %9s %9s %9s%n",
+                "endpoint", "req/s", "errors", "err %", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+        // getIntervalHistogram() resets the recorder, so take each histogram once and reuse it for the files
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        stats.forEach((endpoint, s) -> {
+            Histogram h = s.latency.getIntervalHistogram();
+            histograms.put(endpoint, h);
+            long ok = s.ok.sum();
+            long errors = s.errors.sum();
+            long total = ok + errors;
+            System.out.printf("%-10s %9.1f %8d %7.2f%% %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    endpoint, total / seconds, errors, total == 0 ? 0.0 : 100.0 * errors / total,
+                    h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(90) / 1e6,
+                    h.getValueAtPercentile(99) / 1e6, h.getValueAtPercentile(99.9) / 1e6, h.getMaxValue() / 1e6);
+            if (!s.errorsByStatus.isEmpty()) {
+                System.out.printf("%-10s errors by status: %s%n", "", s.errorsByStatus);
+            }
+        });
+
+        long failedSetups = setupErrors.sum();
+        if (failedSetups > 0) {
+            // These sessions stopped before login, so they are missing from the rows above
+            System.out.printf("%n%d sessions failed during setup (funding the account)%n", failedSetups);
+        }
+
+        if (options.histogramDir != null) {
+            HistogramFiles.write(options.histogramDir, histograms);
+        }
+    }
+
+    private static final class Session {
+        volatile String userId;
+        volatile String accountNumber;
+        volatile String token;
+    }
+
+    static final class EndpointStats {
+        static final long MAX_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+        // Recorder allows lock-free recording from many threads
+        final Recorder latency = new Recorder(MAX_TRACKABLE_NANOS, 3);
+        final LongAdder ok = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final Map<String, LongAdder> errorsByStatus = new ConcurrentHashMap<>();
+
+        void reset() {
+            latency.reset();
+            ok.reset();
+            errors.reset();
+            errorsByStatus.clear();
+        }
+    }
+}
+
+Explanation:
+
+drive() fires sessions on a fixed schedule. If the server stalls, the scheduled arrivals pile up and their latency includes the time they waited, just as real users would experience it. A closed loop of N threads would simply slow down and hide the stall.
+
+Within a session, the first request is measured from its scheduled arrival time. The following steps are measured from when the previous step finished, plus the think time for balance polls.
+
+Recorder (HdrHistogram) records from many threads with no locks, and its precision (3 significant digits) holds from microseconds up to the 2-minute cap.
+
+Register and login use the same form parameters as the controller (@RequestParam). Transfer sends the JSON body that the React Transfer page sends.
+
+fund() runs between register and login and isn't measured. It credits loadtest.opening-balance-minor through the application's own JdbcTemplate, which the harness can reach because the app runs in the same JVM. The UPDATE is blocking JDBC, so it runs on its own small setupExecutor. On the HttpClient's threads it would hold up the response handling of every other session. A failed funding ends the session before login and is counted separately in the report, since no endpoint row would show it. With an opening balance of 1,000.00 and 0.01 per transfer, no account runs dry during a run, so the transfer numbers are for transfers that actually move money.
+
+Every session registers with the Phaser when it starts and deregisters when its chain completes, successfully or not. run() waits for that count to drain before shutting the scheduler down. Shutting it down earlier would reject the pollBalance tasks that sessions still have to schedule.
+
+All three pools are shut down in run()'s finally block, including the HttpClient's executor. Their threads are not daemons, so otherwise the JVM would keep running after the report and gradle run would never return.
+
+
+
+
+---
+
+Step 3: Options (LoadTestOptions.java)
+
+package com.example.moneyflow.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+final class LoadTestOptions {
+
+    double arrivalRate = 20;                       // new virtual users per second
+    Duration duration = Duration.ofSeconds(60);
+    Duration warmup = Duration.ofSeconds(15);
+    int balancePolls = 10;
+    Duration thinkTime = Duration.ofMillis(500);
+    double transferRatio = 0.3;                    // fraction of users that make a transfer
+    Duration requestTimeout = Duration.ofSeconds(10);
+    int clientThreads = 8;
+    Path histogramDir;
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions o = new LoadTestOptions();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            switch (kv[0]) {
+                case "rate": o.arrivalRate = Double.parseDouble(kv[1]); break;
+                case "duration": o.duration = Duration.parse("PT" + kv[1].toUpperCase()); break;
+                case "warmup": o.warmup = Duration.parse("PT" + kv[1].toUpperCase()); break;
+                case "polls": o.balancePolls = Integer.parseInt(kv[1]); break;
+                case "think": o.thinkTime = Duration.ofMillis(Long.parseLong(kv[1])); break;
+                case "transfer-ratio": o.transferRatio = Double.parseDouble(kv[1]); break;
+                case "timeout": o.requestTimeout = Duration.ofMillis(Long.parseLong(kv[1])); break;
+                case "client-threads": o.clientThreads = Integer.parseInt(kv[1]); break;
+                case "histograms": o.histogramDir = Paths.get(kv[1]); break;
+                default: throw new IllegalArgumentException("Unknown option --" + kv[0]);
+            }
+        }
+        return o;
+    }
+}
+
+
+---
+
+Step 3b: Histogram logs (HistogramFiles.java)
+
+package com.example.moneyflow.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+final class HistogramFiles {
+
+    // Values are recorded in nanoseconds; the log stores them in milliseconds
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private HistogramFiles() {
+    }
+
+    static void write(Path directory, Map<String, Histogram> histograms) throws IOException {
+        Files.createDirectories(directory);
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(entry.getKey() + ".hlog")),
+                    false, "UTF-8")) {
+                HistogramLogWriter writer = new HistogramLogWriter(out);
+                writer.outputLogFormatVersion();
+                writer.outputStartTime(histogram.getStartTimeStamp());
+                writer.outputLegend();
+                writer.outputIntervalHistogram(histogram.getStartTimeStamp() / 1000.0,
+                        histogram.getEndTimeStamp() / 1000.0, histogram, NANOS_PER_MILLI);
+            }
+        }
+    }
+}
+
+HistogramFiles.write saves each endpoint's histogram in HdrHistogram's .hlog format, one file per endpoint, so runs can be plotted and compared with the HdrHistogram log analyzer tools (HistogramLogProcessor, or the online plotter).
+
+
+---
+
+Step 4: Running it
+
+./gradlew :loadtest:run --args="--rate=50 --duration=120s --polls=20 --think=250 --transfer-ratio=0.5 --histograms=build/hlog"
+
+Example output:
+
+Arrival rate 50.0 users/s for PT2M (6000 users started)
+
+endpoint       req/s   errors    err %    p50 ms    p90 ms    p99 ms  p99.9 ms    max ms
+register        50.0        0    0.00%     71.21     88.45    131.07    180.22    211.30
+login           50.0        0    0.00%     68.93     84.99    120.59    162.14    175.77
+details         50.0        0    0.00%      0.91      1.52      3.41      8.02     12.45
+balance        998.7        0    0.00%      0.52      0.88      2.10      5.37     10.01
+transfer        24.7        0    0.00%      3.18      5.77     14.62     29.81     41.36
+
+All 2,964 transfers succeeded, so the transfer row is the cost of a real debit and credit: two row locks, two balance updates and two transactions rows. Any errors would be listed under the row by status, for example {400=...} if an account had run out of money or {429=...} if a rate limit were still active.
+
+The embedded H2 run is for comparing builds against each other, not for sizing production. For capacity numbers, point the same generator at a staging URL by adding a --target=https://... option that skips the in-process boot.
+
+
+---
+
+Conclusion
+
+./gradlew :loadtest:run boots the service against embedded H2 and drives register → login → details → balance polling → transfer at a fixed open-model arrival rate.
+
+Latency is measured from each request's intended start time and reported per endpoint as HdrHistogram percentiles, together with throughput and error rates broken down by status.
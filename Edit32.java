@@ -0,0 +1,398 @@
+When p99 jumps, /actuator/metrics/http.server.requests only says that a request was slow, not where the time went. A slow request could have spent it parsing the token in JwtAuthenticationFilter, loading the principal through CustomUserDetailsService, waiting for BCrypt, or inside a repository query.
+
+Here's per-stage instrumentation:
+
+1. One Micrometer Timer per stage: token cache hit, token parse/verify, principal load, password check, and one per repository method.
+
+
+2. The timers are registered once at startup and held in fields. On the request path, recording is just two System.nanoTime() calls and Timer.record(long, TimeUnit). No Timer.Sample, no tag arrays and no registry lookup, so nothing is allocated per call.
+
+
+3. Micrometer keeps client-side percentiles in HdrHistogram recorders (TimeWindowPercentileHistogram). The timers publish p50/p90/p99/p99.9 and, for Prometheus, the full bucket histogram.
+
+
+4. Everything is available under /actuator/metrics/moneyflow.stage, /actuator/prometheus and a compact /actuator/latency summary.
+
+
+
+
+---
+
+Step 1: Dependencies and configuration
+
+build.gradle
+
+    implementation 'org.springframework.boot:spring-boot-starter-actuator'
+    implementation 'org.springframework.boot:spring-boot-starter-aop'
+    runtimeOnly 'io.micrometer:micrometer-registry-prometheus'
+
+application.properties
+
+management.endpoints.web.exposure.include=health,metrics,prometheus,latency
+moneyflow.metrics.stages.enabled=true
+# Percentiles are computed over a rolling window of this length
+moneyflow.metrics.stages.window=PT1M
+
+Spring Boot's own repository timer (spring.data.repository.invocations) builds a Timer.Sample and a tag list on every call. Turn it off so repository calls are not timed twice:
+
+management.metrics.data.repository.autotime.enabled=false
+
+
+---
+
+Step 2: The stage timers (StageTimers.java)
+
+package com.example.moneyflow.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class StageTimers {
+
+    public static final String METRIC = "moneyflow.stage";
+
+    private final MeterRegistry registry;
+    private final Duration window;
+    private final boolean enabled;
+
+    private final Timer tokenCacheHit;
+    private final Timer tokenParse;
+    private final Timer principalLoad;
+    private final Timer passwordCheck;
+
+    public StageTimers(MeterRegistry registry,
+                       @Value("${moneyflow.metrics.stages.enabled:true}") boolean enabled,
+                       @Value("${moneyflow.metrics.stages.window:PT1M}") Duration window) {
+        this.registry = registry;
+        this.enabled = enabled;
+        this.window = window;
+
+        this.tokenCacheHit = stage("token.cache-hit");
+        this.tokenParse = stage("token.parse");
+        this.principalLoad = stage("principal.load");
+        this.passwordCheck = stage("password.check");
+    }
+
+    // Registered once per stage; callers keep the returned Timer in a field
+    public Timer stage(String name) {
+        return Timer.builder(METRIC)
+                .tag("stage", name)
+                .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .percentilePrecision(2)
+                .distributionStatisticExpiry(window)
+                .distributionStatisticBufferLength(3)
+                .minimumExpectedValue(Duration.ofNanos(500))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Callers take System.nanoTime() before the stage and pass it here; no allocation
+    public void recordTokenCacheHit(long startNanos) {
+        record(tokenCacheHit, startNanos);
+    }
+
+    public void recordTokenParse(long startNanos) {
+        record(tokenParse, startNanos);
+    }
+
+    public void recordPrincipalLoad(long startNanos) {
+        record(principalLoad, startNanos);
+    }
+
+    public Timer passwordCheck() {
+        return passwordCheck;
+    }
+
+    public void record(Timer timer, long startNanos) {
+        if (enabled) {
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
+
+Explanation:
+
+All stages share one metric name, moneyflow.stage, with a stage tag. Dashboards can then show every stage side by side with a single query (for example histogram_quantile(0.99, sum by (stage, le) (rate(moneyflow_stage_seconds_bucket[1m])))).
+
+distributionStatisticExpiry/BufferLength give the percentiles a rolling one-minute window (three overlapping HdrHistogram buffers). A spike shows up within seconds and disappears a minute after it ends, rather than being averaged into the whole uptime.
+
+percentilePrecision(2) keeps each HdrHistogram small (a few KB per timer) while still resolving 1% differences. The expected range of 500 ns to 10 s covers a cache hit as well as a slow query.
+
+
+---
+
+Step 3: Filter stages (JwtAuthenticationFilter.java)
+
+The token cache hit and the full parse are recorded as separate stages, so a drop in the hit ratio shows up directly as more token.parse samples.
+
+    @Autowired
+    private StageTimers stageTimers;
+
+    private UsernamePasswordAuthenticationToken buildAuthentication(VerifiedTokenCache.VerifiedToken token) {
+        long start = System.nanoTime();
+        try {
+            // ... body unchanged (stateless principal or customUserDetailsService.loadUserByUsername)
+        } finally {
+            stageTimers.recordPrincipalLoad(start);
+        }
+    }
+
+    private VerifiedTokenCache.VerifiedToken resolveToken(String jwt) {
+        long start = System.nanoTime();
+
+        VerifiedTokenCache.VerifiedToken cached = verifiedTokenCache.get(jwt);
+        if (cached != null) {
+            stageTimers.recordTokenCacheHit(start);
+            return cached;
+        }
+
+        try {
+            Claims claims = tokenProvider.parseVerifiedClaims(jwt);
+            if (claims == null) {
+                return null;
+            }
+            return verifiedTokenCache.put(jwt, claims);
+        } finally {
+            stageTimers.recordTokenParse(start);
+        }
+    }
+
+In the DB-backed mode, principal.load includes the CachedUserLookup lookup and, on a miss, userRepository.findByUserId. That query is also timed on its own as a repository stage (Step 5), so the two can be compared.
+
+
+---
+
+Step 4: Password check (PasswordVerificationExecutor.java)
+
+BCrypt already has its own timer, moneyflow.auth.bcrypt.verification. It stays as it is, because existing dashboards and alerts use it. The same interval is also recorded as the password.check stage, so the breakdown has every stage under one metric. Time spent waiting in the queue becomes its own stage, because under a login storm the wait is what grows, not the hash itself.
+
+    private final Timer verificationTimer;
+    private final Timer passwordCheckTimer;
+    private final Timer queueWaitTimer;
+    private final StageTimers stageTimers;
+
+    public PasswordVerificationExecutor(MeterRegistry meterRegistry,
+                                        StageTimers stageTimers,
+                                        @Value("${moneyflow.auth.bcrypt.threads:0}") int threads,
+                                        @Value("${moneyflow.auth.bcrypt.queue-capacity:200}") int queueCapacity) {
+        // ... pool construction unchanged
+
+        this.verificationTimer = Timer.builder("moneyflow.auth.bcrypt.verification")
+                .description("Time spent verifying passwords")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+
+        this.stageTimers = stageTimers;
+        this.passwordCheckTimer = stageTimers.passwordCheck();
+        this.queueWaitTimer = stageTimers.stage("password.queue-wait");
+
+        // ... gauges unchanged
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        long queuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                stageTimers.record(queueWaitTimer, queuedAt);
+                try {
+                    return verificationTimer.record(task);
+                } finally {
+                    stageTimers.record(passwordCheckTimer, start);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            // ... unchanged
+        }
+    }
+
+The login path already allocates a lambda and a CompletableFuture for the async hand-off, so this adds no new allocation there. Recording the same hash into a second timer is negligible next to a BCrypt run of about 70 ms.
+
+
+---
+
+Step 5: Repository calls (RepositoryTimingPostProcessor.java)
+
+Every Spring Data repository bean is already an AOP proxy, so the interceptor is added to the existing proxy instead of wrapping it in another one. Timers are created the first time each method is called and then looked up by Method in a ConcurrentHashMap. That lookup is a read with no allocation.
+
+package com.example.moneyflow.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@ConditionalOnProperty(name = "moneyflow.metrics.stages.enabled", havingValue = "true", matchIfMissing = true)
+public class RepositoryTimingPostProcessor implements BeanPostProcessor {
+
+    // ObjectProvider: post-processors are created before ordinary beans such as StageTimers
+    private final ObjectProvider<StageTimers> stageTimers;
+
+    public RepositoryTimingPostProcessor(ObjectProvider<StageTimers> stageTimers) {
+        this.stageTimers = stageTimers;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof Repository && bean instanceof Advised) {
+            // The bean name (userRepository, transferRepository...) identifies the repository;
+            // the Method alone doesn't, since save() and findById() are declared on CrudRepository
+            ((Advised) bean).addAdvice(0, new TimingInterceptor(StringUtils.capitalize(beanName), stageTimers));
+        }
+        return bean;
+    }
+
+    static final class TimingInterceptor implements MethodInterceptor {
+
+        private final String repositoryName;
+        private final ObjectProvider<StageTimers> stageTimers;
+        private final ConcurrentHashMap<Method, Timer> timers = new ConcurrentHashMap<>();
+
+        private volatile StageTimers resolved;   // looked up on the first call, then reused
+
+        TimingInterceptor(String repositoryName, ObjectProvider<StageTimers> stageTimers) {
+            this.repositoryName = repositoryName;
+            this.stageTimers = stageTimers;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = invocation.getMethod();
+            Timer timer = timers.get(method);
+            if (timer == null) {
+                timer = timers.computeIfAbsent(method, this::register);
+            }
+
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                stageTimers().record(timer, start);
+            }
+        }
+
+        private Timer register(Method method) {
+            return stageTimers().stage("repository." + repositoryName + "." + method.getName());
+        }
+
+        // getObject() is a bean factory lookup; do it once, not on every repository call
+        private StageTimers stageTimers() {
+            StageTimers timers = resolved;
+            if (timers == null) {
+                timers = stageTimers.getObject();
+                resolved = timers;
+            }
+            return timers;
+        }
+    }
+}
+
+This produces stages such as repository.UserRepository.findByUserId, repository.TransferRepository.findByAccountNumber and repository.TransactionRepository.save.
+
+StageTimers is resolved from the ObjectProvider on the first repository call and then kept in a field. By then the context is up and the bean is a singleton, so two threads racing on the first call get the same instance and the race is harmless. Every later call reads one volatile field.
+
+timers.get() runs before computeIfAbsent because in ConcurrentHashMap, get never locks, while computeIfAbsent can briefly lock a bin even when the key is already present.
+
+Spring AOP itself creates one MethodInvocation object per repository call. That cost was there before this change, and it is tiny next to a database round trip.
+
+JdbcTemplate-based DAOs (BalanceQueries, TransactionHistoryService, BulkRegistrationService) are not Spring Data repositories. Time them the same way as the filter: put a field Timer from stageTimers.stage("jdbc.BalanceQueries.balanceAndVersion") around the call.
+
+
+---
+
+Step 6: Summary endpoint (LatencyEndpoint.java)
+
+/actuator/metrics/moneyflow.stage shows one tag combination at a time. /actuator/latency lists every stage at once, with throughput and the percentiles, in milliseconds:
+
+package com.example.moneyflow.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@Endpoint(id = "latency")
+public class LatencyEndpoint {
+
+    private final MeterRegistry registry;
+    private final long startedNanos = System.nanoTime();
+
+    public LatencyEndpoint(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> stages() {
+        double uptimeSeconds = (System.nanoTime() - startedNanos) / 1e9;
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+
+        for (Timer timer : registry.find(StageTimers.METRIC).timers()) {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+
+            Map<String, Object> stage = new LinkedHashMap<>();
+            stage.put("count", snapshot.count());
+            stage.put("throughputPerSecond", snapshot.count() / uptimeSeconds);
+            stage.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+            stage.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile p : snapshot.percentileValues()) {
+                stage.put("p" + (p.percentile() * 100) + "Ms", p.value(TimeUnit.MILLISECONDS));
+            }
+            result.put(timer.getId().getTag("stage"), stage);
+        }
+        return result;
+    }
+}
+
+Example response:
+
+{
+  "password.check":            {"count": 1840, "throughputPerSecond": 3.1, "meanMs": 71.4, "maxMs": 160.2, "p50.0Ms": 69.2, "p90.0Ms": 81.9, "p99.0Ms": 121.6, "p99.9Ms": 151.0},
+  "password.queue-wait":       {"count": 1840, ..., "p99.0Ms": 402.7, ...},
+  "principal.load":            {"count": 920331, ..., "p99.0Ms": 0.004, ...},
+  "repository.UserRepository.findByUserId": {"count": 2210, ..., "p99.0Ms": 3.8, ...},
+  "token.cache-hit":           {"count": 915002, ..., "p99.0Ms": 0.002, ...},
+  "token.parse":               {"count": 5329, ..., "p99.0Ms": 0.041, ...}
+}
+
+Here, the latency spike at login is queue wait rather than hashing, which points at the BCrypt pool size and not at the cost factor.
+
+"max" and the percentiles cover the rolling window. "count" and throughput are totals since startup. For request rates over time, use rate(moneyflow_stage_seconds_count[1m]) in Prometheus.
+
+
+---
+
+Conclusion
+
+Token cache hits, token parsing, principal loading, BCrypt queue wait and hashing, and every repository method are now timed as separate stages of one HdrHistogram-backed Micrometer timer, moneyflow.stage.
+
+Timers are registered once and recorded with a nanoTime difference, so the fast path allocates nothing. The results are exposed through /actuator/metrics, /actuator/prometheus and a one-page /actuator/latency summary.
@@ -0,0 +1,400 @@
+/api/user/login is permitAll() in SecurityConfig, and every attempt costs a full BCrypt verification (about 50-100 ms of CPU). The bounded BCrypt pool from the earlier step keeps a login storm away from the servlet threads, but the storm still fills that pool and real users get 503s. /api/user/register does the same hashing, and /api/transfer has no per-user ceiling at all.
+
+Here's a rate-limiting filter:
+
+1. Each limited endpoint has two token buckets, one per client IP and one per userId. A request must get a token from both.
+
+
+2. Buckets live in a bounded Caffeine map that evicts idle entries by itself, so memory stays flat however many IPs or user ids an attacker cycles through.
+
+
+3. Each bucket is a single AtomicLong updated with a CAS loop. There are no locks, and checking a bucket allocates nothing.
+
+
+4. The filter runs in the security chain and rejects with 429 and Retry-After before the controller, so no BCrypt, no password lookup and no transfer work happens.
+
+
+5. Limits for login, register and transfer are configured separately.
+
+
+
+
+---
+
+Step 1: The bucket (TokenBucket.java)
+
+The bucket stores one number: the time at which it will be full again (the "theoretical arrival time" of GCRA). That one value is equivalent to the usual pair of token count and last refill time, so the whole bucket updates with a single compareAndSet.
+
+package com.example.moneyflow.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+final class TokenBucket {
+
+    private final AtomicLong fullAt;
+
+    TokenBucket(long nowNanos) {
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Takes one token.
+     *
+     * @return 0 if the request is allowed, otherwise the nanoseconds until a token is available
+     */
+    long tryConsume(long nowNanos, long nanosPerToken, long burstNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long base = Math.max(current, nowNanos);
+            long next = base + nanosPerToken;
+
+            // More than a full burst's worth of debt: not enough tokens
+            if (next - nowNanos > burstNanos) {
+                return next - nowNanos - burstNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    long fullAt() {
+        return fullAt.get();
+    }
+}
+
+Explanation:
+
+nanosPerToken = 1 s / refill rate. burstNanos = capacity × nanosPerToken.
+
+A bucket that has been idle has fullAt in the past, so max(current, now) starts it from a full bucket. Each token moves fullAt forward by one interval. When fullAt would be more than the burst ahead of now, the bucket is empty, and the difference is exactly the Retry-After value.
+
+There's only one word of state, so concurrent requests for the same key can never see a half-updated bucket. A failed CAS just means another request took a token first, and the loop retries with the fresh value.
+
+
+---
+
+Step 2: Limits and the limiter (RateLimitProperties.java, RateLimiter.java)
+
+package com.example.moneyflow.ratelimit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "moneyflow.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+    private long maxKeys = 1_000_000;
+    private Duration idleEviction = Duration.ofMinutes(10);
+
+    private Endpoint login = new Endpoint(5, 10, 20, 60);
+    private Endpoint register = new Endpoint(1, 3, 5, 10);
+    private Endpoint transfer = new Endpoint(2, 10, 5, 20);
+
+    public static class Endpoint {
+        // Per userId: tokens per second and burst size
+        private double userRate;
+        private int userBurst;
+        // Per client IP: tokens per second and burst size
+        private double ipRate;
+        private int ipBurst;
+
+        public Endpoint() {
+        }
+
+        Endpoint(double userRate, int userBurst, double ipRate, int ipBurst) {
+            this.userRate = userRate;
+            this.userBurst = userBurst;
+            this.ipRate = ipRate;
+            this.ipBurst = ipBurst;
+        }
+
+        // getters and setters for all four fields
+    }
+
+    // getters and setters
+}
+
+For login, the per-userId limit protects one account from being guessed, and the per-IP limit stops one client from spraying many accounts. Register has no user yet, so only its IP limit applies.
+
+package com.example.moneyflow.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class RateLimiter {
+
+    public enum Scope {
+        LOGIN, REGISTER, TRANSFER
+    }
+
+    private final boolean enabled;
+    private final Cache<String, TokenBucket> buckets;
+    private final Limit[] userLimits = new Limit[Scope.values().length];
+    private final Limit[] ipLimits = new Limit[Scope.values().length];
+    private final Counter[] rejections = new Counter[Scope.values().length];
+
+    public RateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxKeys())
+                .expireAfterAccess(properties.getIdleEviction())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, buckets, "rateLimitBuckets");
+
+        configure(Scope.LOGIN, properties.getLogin());
+        configure(Scope.REGISTER, properties.getRegister());
+        configure(Scope.TRANSFER, properties.getTransfer());
+
+        for (Scope scope : Scope.values()) {
+            rejections[scope.ordinal()] = Counter.builder("moneyflow.rate-limit.rejected")
+                    .tag("scope", scope.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    private void configure(Scope scope, RateLimitProperties.Endpoint endpoint) {
+        userLimits[scope.ordinal()] = Limit.of(endpoint.getUserRate(), endpoint.getUserBurst());
+        ipLimits[scope.ordinal()] = Limit.of(endpoint.getIpRate(), endpoint.getIpBurst());
+    }
+
+    /**
+     * @return 0 if allowed, otherwise the number of nanoseconds the caller should wait
+     */
+    public long acquire(Scope scope, String clientIp, String userId) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+
+        long ipWait = take(ipLimits[scope.ordinal()], scope.name() + "|ip|" + clientIp, now);
+        if (ipWait > 0) {
+            rejections[scope.ordinal()].increment();
+            return ipWait;
+        }
+        if (userId != null) {
+            long userWait = take(userLimits[scope.ordinal()], scope.name() + "|user|" + userId, now);
+            if (userWait > 0) {
+                rejections[scope.ordinal()].increment();
+                return userWait;
+            }
+        }
+        return 0;
+    }
+
+    private long take(Limit limit, String key, long now) {
+        if (limit == null) {
+            return 0;
+        }
+        TokenBucket bucket = buckets.get(key, k -> new TokenBucket(now));
+        return bucket.tryConsume(now, limit.nanosPerToken, limit.burstNanos);
+    }
+
+    private static final class Limit {
+        final long nanosPerToken;
+        final long burstNanos;
+
+        private Limit(long nanosPerToken, long burstNanos) {
+            this.nanosPerToken = nanosPerToken;
+            this.burstNanos = burstNanos;
+        }
+
+        // A rate of 0 disables that bucket
+        static Limit of(double perSecond, int burst) {
+            if (perSecond <= 0) {
+                return null;
+            }
+            long nanosPerToken = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+            return new Limit(nanosPerToken, nanosPerToken * Math.max(1, burst));
+        }
+    }
+}
+
+Explanation:
+
+Caffeine's reads take no lock, so once a bucket exists, the only shared write is the bucket's own CAS.
+
+maximumSize bounds memory (about 150 bytes per key, so 1,000,000 keys is roughly 150 MB at most). expireAfterAccess drops buckets that have been idle for longer than the eviction time. An evicted bucket would have been full anyway by then, so eviction never loosens a limit for anyone who is still active.
+
+Under a flood of random IPs, W-TinyLFU admission keeps the frequently seen keys. One-off keys are evicted first and don't push out the buckets of clients that keep hammering.
+
+The map key is one String concatenation. That is the only allocation per check, and it costs about as much as the getParameter call that produces the userId.
+
+
+---
+
+Step 3: The filter (RateLimitFilter.java)
+
+package com.example.moneyflow.ratelimit;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitFilter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        RateLimiter.Scope scope = scopeOf(request);
+        if (scope != null) {
+            long waitNanos = rateLimiter.acquire(scope, request.getRemoteAddr(), userIdOf(scope, request));
+            if (waitNanos > 0) {
+                long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+                response.setStatus(429);
+                response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+                response.setContentType("text/plain");
+                response.getWriter().write("Too many requests, try again later");
+                return;
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    private RateLimiter.Scope scopeOf(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return null;
+        }
+        String path = request.getServletPath();
+        switch (path) {
+            case "/api/user/login":
+                return RateLimiter.Scope.LOGIN;
+            case "/api/user/register":
+                return RateLimiter.Scope.REGISTER;
+            case "/api/transfer":
+                return RateLimiter.Scope.TRANSFER;
+            default:
+                return null;
+        }
+    }
+
+    private String userIdOf(RateLimiter.Scope scope, HttpServletRequest request) {
+        if (scope == RateLimiter.Scope.LOGIN) {
+            // Form parameter, the same one the controller binds with @RequestParam
+            return request.getParameter("userId");
+        }
+        if (scope == RateLimiter.Scope.TRANSFER) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            return authentication != null ? authentication.getName() : null;
+        }
+        return null;
+    }
+
+    // Async re-dispatches of the login request were already counted on the first pass
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return true;
+    }
+}
+
+Explanation:
+
+The login userId is taken from the request parameters, so a burst against one account is throttled whichever IPs it comes from. The lookup of that user and the hash only happen after the filter.
+
+For /api/transfer the userId comes from the authenticated principal. With the verified-token cache and stateless principal mode, that costs no database work. An unauthenticated transfer request is only IP-limited here and is then rejected by the authorization rules as before.
+
+request.getRemoteAddr() is the client IP. Behind a load balancer, set server.forward-headers-strategy=native (or framework) so Tomcat replaces it with the X-Forwarded-For client, and only accept that header from the balancer. Otherwise any client could pick its own IP per request.
+
+
+---
+
+Step 4: Wire it into the chain (SecurityConfig.java)
+
+The filter goes after JwtAuthenticationFilter, so that the transfer principal is available. Nothing in the chain hashes a password, so it still runs before any BCrypt or DB work in the controllers.
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Bean
+    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+        http
+            .csrf().disable()
+            .authorizeHttpRequests(auth -> auth
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                .requestMatchers("/api/user/register", "/api/user/login").permitAll()
+                .anyRequest().authenticated()
+            )
+            .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+            .addFilterBefore(jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class)
+            .addFilterAfter(new RateLimitFilter(rateLimiter), JwtAuthenticationFilter.class);
+
+        return http.build();
+    }
+
+RateLimitFilter is created with new rather than declared as a @Bean. A Filter @Bean would also be registered by Spring Boot as a plain servlet filter outside the security chain and would run twice.
+
+MoneyFlowApplication.java
+
+@EnableConfigurationProperties(RateLimitProperties.class)
+
+
+---
+
+Step 5: Configuration (application.properties)
+
+moneyflow.rate-limit.enabled=true
+moneyflow.rate-limit.max-keys=1000000
+moneyflow.rate-limit.idle-eviction=PT10M
+
+# Login: 5/s per account (burst 10), 20/s per IP (burst 60)
+moneyflow.rate-limit.login.user-rate=5
+moneyflow.rate-limit.login.user-burst=10
+moneyflow.rate-limit.login.ip-rate=20
+moneyflow.rate-limit.login.ip-burst=60
+
+# Register: IP only
+moneyflow.rate-limit.register.ip-rate=5
+moneyflow.rate-limit.register.ip-burst=10
+
+# Transfer: 2/s per user (burst 10), 5/s per IP (burst 20)
+moneyflow.rate-limit.transfer.user-rate=2
+moneyflow.rate-limit.transfer.user-burst=10
+moneyflow.rate-limit.transfer.ip-rate=5
+moneyflow.rate-limit.transfer.ip-burst=20
+
+Set a rate to 0 to turn off that bucket, or moneyflow.rate-limit.enabled=false to let everything through.
+
+Rejections are counted in moneyflow.rate-limit.rejected{scope=login|register|transfer}, and map size and evictions are reported in cache.size / cache.evictions{cache=rateLimitBuckets}.
+
+The load-test harness needs its own limits, because all its users share one IP. Its virtual users would hit the per-IP buckets within the first second and measure nothing but 429s. loadtest/src/main/resources/application-loadtest.properties turns the IP buckets off and keeps the per-user ones, which a virtual user (one login, one transfer) never reaches:
+
+# All virtual users come from 127.0.0.1
+moneyflow.rate-limit.login.ip-rate=0
+moneyflow.rate-limit.register.ip-rate=0
+moneyflow.rate-limit.transfer.ip-rate=0
+
+To measure the limiter's own overhead, run once with these lines and once with moneyflow.rate-limit.enabled=false. If the transfer row of the report shows {429=...}, one of the buckets is still active.
+
+
+---
+
+Conclusion
+
+Login, register and transfer are now throttled by per-IP and per-userId token buckets. Each bucket is one AtomicLong updated by CAS, and the buckets are kept in a bounded, self-evicting Caffeine map.
+
+The filter runs in the security chain and answers 429 with Retry-After before any password hash or transfer work starts, so a credential-stuffing burst can no longer use up the BCrypt pool.
@@ -0,0 +1,465 @@
+JwtTokenProvider issues tokens that are valid for 24 hours (moneyflow.jwt.expiration-ms, default 86400000), and a single token can't be taken back. The version stamp from the stateless principal step revokes every token a user has, which is right after a password change but far too broad for "log out this device" or "this one token leaked". A revocation table in the database would add a query to every authenticated request.
+
+Here's a revocation subsystem:
+
+1. Every token gets a random id, the standard jti claim.
+
+
+2. Revoked jtis are kept in an exact in-memory set, and each entry expires when the token it revokes would have expired anyway.
+
+
+3. A Bloom filter sits in front of that set. Almost every request carries a token that was never revoked, and for those the filter answers "not revoked" with a few array reads and no allocation, well under a microsecond.
+
+
+4. Revocations are also stored in a revoked_token table. The in-memory state is rebuilt from that table on startup, and every instance polls it, so a logout on one node takes effect on all of them within seconds.
+
+
+5. POST /api/user/logout revokes the caller's token. Operators can revoke any token by its jti.
+
+
+
+
+---
+
+Step 1: Put a jti in every token (JwtTokenProvider.java, VerifiedTokenCache.java)
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder JTI_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    public String generateToken(Authentication authentication, long tokenVersion) {
+        // ... authorities and nowSeconds unchanged
+
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put(Claims.ID, newJti());
+        claims.put(Claims.SUBJECT, authentication.getName());
+        // ... rest unchanged
+    }
+
+    // 128 random bits, 22 URL-safe characters
+    private static String newJti() {
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        return JTI_ENCODER.encodeToString(bytes);
+    }
+
+VerifiedTokenCache.put stores claims.getId() in VerifiedToken, next to the userId, expiry, authorities and version:
+
+        VerifiedToken verified = new VerifiedToken(
+                claims.getId(),
+                claims.getSubject(),
+                claims.getExpiration().getTime(),
+                claims.get(JwtTokenProvider.AUTHORITIES_CLAIM, String.class),
+                version != null ? version.longValue() : -1L);
+
+    public static final class VerifiedToken {
+        private final String jti;
+        // ... other fields unchanged
+
+        public String getJti() {
+            return jti;
+        }
+    }
+
+Tokens issued before this change have no jti. They can't be revoked one by one, but they stop working after at most a day, and a version bump still revokes them.
+
+
+---
+
+Step 2: The Bloom filter (RevocationBloomFilter.java)
+
+package com.example.moneyflow.security.revocation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+final class RevocationBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    RevocationBloomFilter(int expectedEntries, double falsePositiveRate) {
+        int n = Math.max(1, expectedEntries);
+        // Standard sizing: m = -n ln p / (ln 2)^2, k = m/n ln 2
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, m));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+        this.bits = new AtomicLongArray((bitCount + 63) >>> 6);
+    }
+
+    void add(String jti) {
+        long hash = hash64(jti);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = index(h1 + i * h2);
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    boolean mightContain(String jti) {
+        long hash = hash64(jti);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = index(h1 + i * h2);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(int combined) {
+        return (combined & Integer.MAX_VALUE) % bitCount;
+    }
+
+    // FNV-1a over the chars, then a murmur3 finaliser to spread the bits; no allocation
+    private static long hash64(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
+
+Explanation:
+
+k indexes are derived from one 64-bit hash by double hashing (h1 + i·h2, Kirsch-Mitzenmacher). That matches the false-positive rate of k independent hashes at a fraction of the cost.
+
+Bits are set with a CAS on their 64-bit word, so adding from the poller thread while request threads read needs no lock. Readers only ever see bits change from 0 to 1, which can at worst produce an extra false positive, never a false negative.
+
+A jti is 22 characters, so hashing it costs a few nanoseconds. At the default 100,000 expected entries and a 0.1% false-positive rate, the filter takes about 180 KB with k = 10.
+
+
+---
+
+Step 3: Persisted revocations (RevokedToken.java, RevokedTokenRepository.java)
+
+package com.example.moneyflow.security.revocation;
+
+import lombok.Data;
+import org.hibernate.annotations.Generated;
+import org.hibernate.annotations.GenerationTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+
+@Entity
+@Table(name = "revoked_token", indexes = {
+        @Index(name = "idx_revoked_token_revoked_at", columnList = "revokedAt"),
+        @Index(name = "idx_revoked_token_expires_at", columnList = "expiresAt")
+})
+@Data
+public class RevokedToken {
+
+    @Id
+    @Column(length = 32)
+    private String jti;
+
+    private String userId;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    // Set by the database on insert, so every node's poll compares against the same clock
+    @Generated(GenerationTime.INSERT)
+    @Column(nullable = false, insertable = false, updatable = false,
+            columnDefinition = "TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)")
+    private Instant revokedAt;
+
+    private String reason;
+}
+
+package com.example.moneyflow.security.revocation;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    List<RevokedToken> findByExpiresAtAfter(Instant now);
+
+    List<RevokedToken> findByRevokedAtAfterOrderByRevokedAtAsc(Instant since);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RevokedToken r WHERE r.expiresAt < :now")
+    int deleteExpired(Instant now);
+}
+
+
+---
+
+Step 4: The registry (TokenRevocationRegistry.java)
+
+package com.example.moneyflow.security.revocation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class TokenRevocationRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationRegistry.class);
+
+    private final RevokedTokenRepository repository;
+    private final int expectedEntries;
+    private final double falsePositiveRate;
+    private final Duration pollOverlap;
+    private final long tokenLifetimeMillis;
+
+    // jti -> epoch millis at which the revoked token would have expired
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+    private volatile RevocationBloomFilter bloom;
+    private volatile Instant lastSeenRevokedAt = Instant.EPOCH;
+
+    public TokenRevocationRegistry(RevokedTokenRepository repository,
+                                   @Value("${moneyflow.revocation.expected-entries:100000}") int expectedEntries,
+                                   @Value("${moneyflow.revocation.false-positive-rate:0.001}") double falsePositiveRate,
+                                   @Value("${moneyflow.revocation.poll-overlap:PT5S}") Duration pollOverlap,
+                                   @Value("${moneyflow.jwt.expiration-ms:86400000}") long tokenLifetimeMillis) {
+        this.repository = repository;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.pollOverlap = pollOverlap;
+        this.tokenLifetimeMillis = tokenLifetimeMillis;
+        this.bloom = new RevocationBloomFilter(expectedEntries, falsePositiveRate);
+    }
+
+    // Rebuild from the table on startup; only revocations whose token hasn't expired yet matter
+    @PostConstruct
+    public void load() {
+        Instant now = Instant.now();
+        List<RevokedToken> live = repository.findByExpiresAtAfter(now);
+        for (RevokedToken token : live) {
+            remember(token);
+        }
+        log.info("Loaded {} active token revocations", live.size());
+    }
+
+    /**
+     * Sub-microsecond check on the request path. Only a Bloom hit touches the exact set.
+     */
+    public boolean isRevoked(String jti) {
+        if (jti == null || !bloom.mightContain(jti)) {
+            return false;
+        }
+        Long expiresAt = revoked.get(jti);
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+
+    public void revoke(String jti, String userId, long expiresAtMillis, String reason) {
+        if (jti == null || expiresAtMillis <= System.currentTimeMillis()) {
+            return;   // nothing to do for a token that no longer works anyway
+        }
+
+        RevokedToken token = new RevokedToken();
+        token.setJti(jti);
+        token.setUserId(userId);
+        token.setExpiresAt(Instant.ofEpochMilli(expiresAtMillis));
+        token.setReason(reason);
+        // Flushing inserts the row and reads back the revoked_at the database assigned
+        RevokedToken saved = repository.saveAndFlush(token);
+
+        // Local effect is immediate; other instances pick it up on their next poll
+        remember(saved);
+    }
+
+    // For a jti whose token we don't hold: no token issued now outlives now + the configured lifetime
+    public void revokeUntilMaxLifetime(String jti, String userId, String reason) {
+        revoke(jti, userId, System.currentTimeMillis() + tokenLifetimeMillis, reason);
+    }
+
+    // Picks up revocations made on other instances
+    @Scheduled(fixedDelayString = "${moneyflow.revocation.poll-interval-ms:2000}")
+    public void poll() {
+        // revoked_at comes from the database clock, but a transaction that commits late can still
+        // insert a row stamped before the newest one already seen, so overlap the window a little
+        Instant since = lastSeenRevokedAt.minus(pollOverlap);
+        for (RevokedToken token : repository.findByRevokedAtAfterOrderByRevokedAtAsc(since)) {
+            remember(token);
+        }
+    }
+
+    // Drops entries whose tokens have expired and rebuilds the Bloom filter without them
+    @Scheduled(fixedDelayString = "${moneyflow.revocation.sweep-interval-ms:600000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+
+        RevocationBloomFilter rebuilt = new RevocationBloomFilter(
+                Math.max(expectedEntries, revoked.size() * 2), falsePositiveRate);
+        for (String jti : revoked.keySet()) {
+            rebuilt.add(jti);
+        }
+        bloom = rebuilt;
+
+        // Anything added to the map while rebuilding is added to the new filter too
+        for (String jti : revoked.keySet()) {
+            rebuilt.add(jti);
+        }
+
+        repository.deleteExpired(Instant.ofEpochMilli(now));
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    private void remember(RevokedToken token) {
+        // Map first, then filter: once the filter says "maybe", the exact set already has the entry
+        revoked.put(token.getJti(), token.getExpiresAt().toEpochMilli());
+        bloom.add(token.getJti());
+
+        if (token.getRevokedAt().isAfter(lastSeenRevokedAt)) {
+            lastSeenRevokedAt = token.getRevokedAt();
+        }
+    }
+}
+
+Explanation:
+
+The exact set is the source of truth and the Bloom filter is only a fast "definitely not" in front of it. A false positive costs one ConcurrentHashMap lookup. A false negative can't happen, because every jti in the set was added to the current filter.
+
+Bloom filters can't delete. Instead, sweep() drops expired entries from the map and swaps in a freshly built filter. The rebuild adds the map's keys a second time after the swap, so a revocation that arrived during the rebuild is never lost. The filter is also resized if the set has outgrown its expected size.
+
+Expired entries are harmless before a sweep: the token itself fails its exp check first. Sweeping is only about memory.
+
+revoked_at is filled in by the database (DEFAULT CURRENT_TIMESTAMP(3)), never by the node that revokes. The high-water mark is a value from that same column, so clock skew between the nodes can't make a poll skip a row. The only gap left is commit order: a revocation whose transaction commits after a later-stamped one was already seen. The insert is a single-row transaction, so the 5-second overlap covers it.
+
+The poller reads revoked_token through its revoked_at index. With no new revocations it returns an empty result, so it costs one cheap query every two seconds per instance, not one per request.
+
+
+---
+
+Step 5: Check it in the filter (JwtAuthenticationFilter.java)
+
+The check runs for cache hits as well as fresh parses. A revoked token may still be in the verified-token cache, and it must be rejected there too.
+
+    @Autowired
+    private TokenRevocationRegistry tokenRevocationRegistry;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws IOException, ServletException {
+
+        String jwt = getJwtFromRequest(request);
+
+        if (StringUtils.hasText(jwt)) {
+            VerifiedTokenCache.VerifiedToken token = resolveToken(jwt);
+
+            if (token != null && !tokenRevocationRegistry.isRevoked(token.getJti())) {
+                UsernamePasswordAuthenticationToken authentication = buildAuthentication(token);
+                if (authentication != null) {
+                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    SecurityContextHolder.getContext().setAuthentication(authentication);
+                }
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+The filter needs the jti and expiry of the current token when it handles a logout, so it also stores the VerifiedToken as a request attribute:
+
+                    request.setAttribute(VerifiedTokenCache.VerifiedToken.class.getName(), token);
+
+
+---
+
+Step 6: Logout and operator revocation (MoneyFlowController.java, AdminController.java)
+
+    @Autowired
+    private TokenRevocationRegistry tokenRevocationRegistry;
+
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(HttpServletRequest request) {
+        VerifiedTokenCache.VerifiedToken token = (VerifiedTokenCache.VerifiedToken)
+                request.getAttribute(VerifiedTokenCache.VerifiedToken.class.getName());
+        if (token != null) {
+            tokenRevocationRegistry.revoke(token.getJti(), token.getUserId(), token.getExpiresAtMillis(), "logout");
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+AdminController.java (ROLE_ADMIN, as with bulk registration)
+
+    @PostMapping("/api/admin/tokens/{jti}/revoke")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Void> revokeToken(@PathVariable String jti,
+                                            @RequestParam String userId) {
+        tokenRevocationRegistry.revokeUntilMaxLifetime(jti, userId, "compromised");
+        return ResponseEntity.noContent().build();
+    }
+
+The operator doesn't supply an expiry. A caller-supplied value in the past would make revoke() silently do nothing, and one that is too early would bring the token back while it is still valid. The server instead keeps the entry for the longest time any token can still be alive: now plus moneyflow.jwt.expiration-ms. Logout can use the token's own exp, because that comes from a token the filter has just verified.
+
+If the jti of a leaked token isn't known, bump the user's token version instead (as on a password change). That revokes every token the user holds.
+
+The React logout button should call POST /api/user/logout before it clears the token from localStorage.
+
+
+---
+
+Step 7: Configuration (application.properties, RevocationConfig.java)
+
+moneyflow.revocation.expected-entries=100000
+moneyflow.revocation.false-positive-rate=0.001
+moneyflow.revocation.poll-interval-ms=2000
+moneyflow.revocation.sweep-interval-ms=600000
+
+Scheduling so far is only switched on by LedgerConfig, which is conditional, so the revocation package needs its own @EnableScheduling:
+
+package com.example.moneyflow.security.revocation;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling
+public class RevocationConfig {
+}
+
+Size expected-entries for the number of revocations that can be live at once: logouts per day × token lifetime in days. If the set grows past it, the next sweep resizes the filter.
+
+
+---
+
+Conclusion
+
+Tokens now carry a jti and can be revoked one at a time, through /api/user/logout or by an operator.
+
+JwtAuthenticationFilter checks a lock-free Bloom filter first and reaches the exact revoked-jti set only on a filter hit, so the check adds no database work and well under a microsecond per request.
+
+Revocations are stored in revoked_token, reloaded on startup, shared between instances by a cheap poll, and dropped once the tokens they cover have expired.
@@ -0,0 +1,518 @@
+Access tokens are valid for a day, so clients rarely renew them. When they do, the only way is to POST the user's credentials to /api/user/login again, which costs a full BCrypt verification on the bounded pool. A long lifetime also makes a leaked token useful for a long time, even with the revocation list from the previous step.
+
+Here's a refresh-token flow:
+
+1. Access tokens from JwtTokenProvider become short-lived (15 minutes by default).
+
+
+2. Login also issues an opaque refresh token: 256 random bits, with only its SHA-256 digest stored in a narrow refresh_token table keyed by that digest.
+
+
+3. POST /api/user/token/refresh exchanges a refresh token for a new access token and a new refresh token. It does one primary-key lookup and one conditional UPDATE, with no password hash.
+
+
+4. Refresh tokens rotate: each one works exactly once. If an already-used token is presented again, the whole family (every token descended from that login) is revoked, because someone else is holding a copy.
+
+
+5. A password change or account disable ends all refresh tokens through the existing token version, with no extra bookkeeping.
+
+
+
+
+---
+
+Step 1: Short access tokens (application.properties)
+
+moneyflow.jwt.expiration-ms=900000
+moneyflow.refresh-token.ttl=P30D
+moneyflow.refresh-token.cookie-secure=true
+
+JwtTokenProvider reads moneyflow.jwt.expiration-ms (since the HS512 engine step), so this property change is all it takes. Revocation entries (previous step) now live for at most 15 minutes, which also keeps that set small.
+
+
+---
+
+Step 2: The store (RefreshToken.java, RefreshTokenRepository.java)
+
+package com.example.moneyflow.security.refresh;
+
+import lombok.Data;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+
+@Entity
+@Table(name = "refresh_token", indexes = {
+        @Index(name = "idx_refresh_token_family", columnList = "familyId"),
+        @Index(name = "idx_refresh_token_expires_at", columnList = "expiresAt")
+})
+@Data
+public class RefreshToken {
+
+    // SHA-256 of the token; the token itself is never stored
+    @Id
+    @Column(length = 32, columnDefinition = "BINARY(32)")
+    private byte[] tokenHash;
+
+    @Column(length = 22, nullable = false)
+    private String familyId;
+
+    @Column(nullable = false)
+    private String userId;
+
+    // UserVersionRegistry version at issue; a later password change or disable makes it stale
+    private long tokenVersion;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    private Instant usedAt;
+
+    private boolean revoked;
+}
+
+A row is about 100 bytes, and every lookup goes through the 32-byte primary key.
+
+package com.example.moneyflow.security.refresh;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, byte[]> {
+
+    // Single-use: only the first caller to present a token gets 1 back
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.usedAt = :now WHERE r.tokenHash = :hash AND r.usedAt IS NULL AND r.revoked = false")
+    int markUsed(@Param("hash") byte[] hash, @Param("now") Instant now);
+
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.revoked = true WHERE r.familyId = :familyId")
+    int revokeFamily(@Param("familyId") String familyId);
+
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.revoked = true WHERE r.userId = :userId")
+    int revokeAllForUser(@Param("userId") String userId);
+
+    @Modifying
+    @Query("DELETE FROM RefreshToken r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
+
+
+---
+
+Step 3: Issue and rotate (RefreshTokenService.java)
+
+package com.example.moneyflow.security.refresh;
+
+import com.example.moneyflow.security.UserVersionRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+@Service
+public class RefreshTokenService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final RefreshTokenRepository repository;
+    private final UserVersionRegistry userVersionRegistry;
+    private final Duration ttl;
+
+    public RefreshTokenService(RefreshTokenRepository repository,
+                               UserVersionRegistry userVersionRegistry,
+                               @Value("${moneyflow.refresh-token.ttl:P30D}") Duration ttl) {
+        this.repository = repository;
+        this.userVersionRegistry = userVersionRegistry;
+        this.ttl = ttl;
+    }
+
+    // Starts a new family at login
+    @Transactional
+    public String issue(String userId, long tokenVersion) {
+        return store(randomId(16), userId, tokenVersion);
+    }
+
+    /**
+     * Exchanges a refresh token for its successor in the same family.
+     *
+     * @return the rotated state, or null if the token is unknown, expired or stale
+     * @throws RefreshTokenReuseException if the token was already exchanged
+     */
+    @Transactional(noRollbackFor = RefreshTokenReuseException.class)
+    public Rotation rotate(String presented) {
+        byte[] hash = sha256(presented);
+        Optional<RefreshToken> found = repository.findById(hash);
+        if (!found.isPresent()) {
+            return null;
+        }
+
+        RefreshToken token = found.get();
+        Instant now = Instant.now();
+
+        if (token.isRevoked() || token.getExpiresAt().isBefore(now)) {
+            return null;
+        }
+        if (repository.markUsed(hash, now) == 0) {
+            // Already exchanged once: a copy of this token is in someone else's hands
+            repository.revokeFamily(token.getFamilyId());
+            throw new RefreshTokenReuseException(token.getUserId());
+        }
+        if (!userVersionRegistry.isCurrent(token.getUserId(), token.getTokenVersion())) {
+            // Password changed or account disabled since login
+            repository.revokeFamily(token.getFamilyId());
+            return null;
+        }
+
+        String successor = store(token.getFamilyId(), token.getUserId(), token.getTokenVersion());
+        return new Rotation(token.getUserId(), token.getTokenVersion(), successor);
+    }
+
+    @Transactional
+    public void revokeFamilyOf(String presented) {
+        repository.findById(sha256(presented)).ifPresent(t -> repository.revokeFamily(t.getFamilyId()));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void revokeAllFor(String userId) {
+        repository.revokeAllForUser(userId);
+    }
+
+    @Scheduled(cron = "${moneyflow.refresh-token.cleanup-cron:0 15 3 * * *}")
+    @Transactional
+    public void deleteExpired() {
+        repository.deleteExpired(Instant.now());
+    }
+
+    private String store(String familyId, String userId, long tokenVersion) {
+        // Family id in front so a token can be traced to its family in logs without a lookup
+        String value = familyId + "." + randomId(32);
+
+        RefreshToken token = new RefreshToken();
+        token.setTokenHash(sha256(value));
+        token.setFamilyId(familyId);
+        token.setUserId(userId);
+        token.setTokenVersion(tokenVersion);
+        token.setExpiresAt(Instant.now().plus(ttl));
+        repository.save(token);
+        return value;
+    }
+
+    private static String randomId(int bytes) {
+        byte[] random = new byte[bytes];
+        RANDOM.nextBytes(random);
+        return ENCODER.encodeToString(random);
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.US_ASCII));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static final class Rotation {
+        private final String userId;
+        private final long tokenVersion;
+        private final String refreshToken;
+
+        Rotation(String userId, long tokenVersion, String refreshToken) {
+            this.userId = userId;
+            this.tokenVersion = tokenVersion;
+            this.refreshToken = refreshToken;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public long getTokenVersion() {
+            return tokenVersion;
+        }
+
+        public String getRefreshToken() {
+            return refreshToken;
+        }
+    }
+}
+
+RefreshTokenReuseException.java
+
+package com.example.moneyflow.security.refresh;
+
+public class RefreshTokenReuseException extends RuntimeException {
+
+    private final String userId;
+
+    public RefreshTokenReuseException(String userId) {
+        super("Refresh token reused");
+        this.userId = userId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+}
+
+Explanation:
+
+Storing only the SHA-256 means a database dump contains no usable refresh tokens. SHA-256 fits here (BCrypt doesn't) because the token has 256 random bits, so brute force is not a concern and the digest can be looked up by primary key.
+
+markUsed is a conditional UPDATE, so two concurrent refreshes with the same token can't both succeed. The loser is treated as reuse. A legitimate client never sends the same token twice, so a second presentation means either a stolen copy or a client bug, and both should force a fresh login.
+
+noRollbackFor keeps the revokeFamily write when the reuse exception propagates.
+
+The version check uses UserVersionRegistry, the same in-memory map the stateless filter uses. It costs no query in the common case.
+
+
+---
+
+Step 4: Endpoints (MoneyFlowController.java)
+
+The refresh token is sent in an HttpOnly cookie scoped to /api/user/token, so the React app's JavaScript can never read it and it is only sent to the refresh and logout endpoints. Login keeps returning "Bearer <token>" in the body, so existing clients keep working. Mobile clients that can't use cookies can pass refreshToken as a form parameter instead.
+
+    private static final String REFRESH_COOKIE = "mf_refresh";
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private UserDetailsService customUserDetailsService;
+
+    @Value("${moneyflow.refresh-token.ttl:P30D}")
+    private Duration refreshTtl;
+
+    @Value("${moneyflow.refresh-token.cookie-secure:true}")
+    private boolean refreshCookieSecure;
+
+    @PostMapping("/login")
+    public CompletableFuture<ResponseEntity<String>> loginUser(
+            @RequestParam String userId,
+            @RequestParam String password) {
+
+        return passwordVerificationExecutor
+                .submit(() -> authenticationManager.authenticate(
+                        new UsernamePasswordAuthenticationToken(userId, password)))
+                .thenApply(authentication -> {
+                    User user = userService.findByUserId(userId);
+                    userVersionRegistry.record(user);
+                    String token = jwtTokenProvider.generateToken(authentication, user.getTokenVersion());
+                    String refreshToken = refreshTokenService.issue(userId, user.getTokenVersion());
+                    return ResponseEntity.ok()
+                            .header(HttpHeaders.SET_COOKIE, refreshCookie(refreshToken, refreshTtl).toString())
+                            .body("Bearer " + token);
+                })
+                .exceptionally(this::loginFailure);
+    }
+
+    @PostMapping("/token/refresh")
+    public ResponseEntity<String> refreshToken(
+            @CookieValue(name = REFRESH_COOKIE, required = false) String cookieToken,
+            @RequestParam(name = "refreshToken", required = false) String paramToken) {
+
+        String presented = cookieToken != null ? cookieToken : paramToken;
+        if (presented == null) {
+            return ResponseEntity.status(401).body("Missing refresh token");
+        }
+
+        RefreshTokenService.Rotation rotation;
+        try {
+            rotation = refreshTokenService.rotate(presented);
+        } catch (RefreshTokenReuseException e) {
+            log.warn("Refresh token reuse detected for user {}; family revoked", e.getUserId());
+            rotation = null;
+        }
+        if (rotation == null) {
+            return ResponseEntity.status(401)
+                    .header(HttpHeaders.SET_COOKIE, refreshCookie("", Duration.ZERO).toString())
+                    .body("Invalid refresh token");
+        }
+
+        // Cached lookup (CachedUserLookup): picks up current authorities and the enabled flag
+        UserDetails userDetails = customUserDetailsService.loadUserByUsername(rotation.getUserId());
+        Authentication authentication =
+                new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+        String token = jwtTokenProvider.generateToken(authentication, rotation.getTokenVersion());
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.SET_COOKIE, refreshCookie(rotation.getRefreshToken(), refreshTtl).toString())
+                .body("Bearer " + token);
+    }
+
+    private ResponseCookie refreshCookie(String value, Duration maxAge) {
+        return ResponseCookie.from(REFRESH_COOKIE, value)
+                .httpOnly(true)
+                .secure(refreshCookieSecure)
+                .sameSite("Strict")
+                .path("/api/user/token")
+                .maxAge(maxAge)
+                .build();
+    }
+
+The logout endpoint from the previous step moves to /api/user/token/logout, so that it also receives the cookie. It revokes the family as well as the access token:
+
+    @PostMapping("/token/logout")
+    public ResponseEntity<Void> logout(HttpServletRequest request,
+                                       @CookieValue(name = REFRESH_COOKIE, required = false) String refreshToken) {
+        // ... access token revocation unchanged
+        if (refreshToken != null) {
+            refreshTokenService.revokeFamilyOf(refreshToken);
+        }
+        return ResponseEntity.noContent()
+                .header(HttpHeaders.SET_COOKIE, refreshCookie("", Duration.ZERO).toString())
+                .build();
+    }
+
+(plus a private static final Logger log for the controller; imports: org.springframework.http.ResponseCookie, org.springframework.web.bind.annotation.CookieValue, java.time.Duration, org.springframework.security.core.userdetails.UserDetails, org.springframework.security.core.userdetails.UserDetailsService)
+
+
+---
+
+Step 5: Security and rate limits (SecurityConfig.java, application.properties)
+
+Refresh is authenticated by the refresh token, not by a JWT, so it is public in the filter chain:
+
+                .requestMatchers("/api/user/register", "/api/user/login", "/api/user/token/refresh").permitAll()
+
+/api/user/token/logout stays authenticated (it needs the access token's jti).
+
+The rate limiter from the earlier step gets a REFRESH scope (IP only, 10/s, burst 30), so nobody can enumerate refresh tokens at full speed. Add REFRESH to RateLimiter.Scope, a refresh Endpoint to RateLimitProperties (configured like the others), and a case "/api/user/token/refresh" in RateLimitFilter.scopeOf:
+
+moneyflow.rate-limit.refresh.ip-rate=10
+moneyflow.rate-limit.refresh.ip-burst=30
+
+
+---
+
+Step 6: Password change and disable (UserService.java)
+
+Bumping the token version is already enough, because rotate() rejects rows whose version is stale. The families are still revoked explicitly, in the same transaction, so the rows stop being usable even if the registry hasn't seen the new version yet on another instance:
+
+    @Transactional
+    public void changePassword(String userId, String newPassword) {
+        // ... unchanged
+        refreshTokenService.revokeAllFor(userId);
+    }
+
+disableUser gets the same line.
+
+
+---
+
+Step 7: Client (React, src/api.js, LoginPage.js) and CORS
+
+The React dev server runs on :3000 and the API on :8080, so the cookie only works if both sides opt in to credentials. Otherwise the browser drops the Set-Cookie from login and never sends the cookie to refresh.
+
+MoneyFlowController.java
+
+@RestController
+@RequestMapping("/api/user")
+@CrossOrigin(origins = "http://localhost:3000", allowCredentials = "true")
+public class MoneyFlowController {
+
+allowCredentials requires an explicit origin (not "*"), which we already have. For local development over plain http, also set moneyflow.refresh-token.cookie-secure=false in application-dev.properties.
+
+src/api.js
+
+One axios instance for the whole app. It sends credentials on every call and attaches the access token from localStorage under the key the pages already use ('jwtToken'). On a 401 it refreshes once and retries.
+
+import axios from 'axios';
+
+const api = axios.create({ baseURL: 'http://localhost:8080', withCredentials: true });
+
+api.interceptors.request.use((config) => {
+  const token = localStorage.getItem('jwtToken');
+  if (token && !config.headers.Authorization) {
+    config.headers.Authorization = `Bearer ${token}`;
+  }
+  return config;
+});
+
+// One refresh in flight per tab; every 401 that arrives meanwhile waits for the same promise
+let refreshing = null;
+
+function refreshAccessToken(staleToken) {
+  if (!refreshing) {
+    const run = async () => {
+      // Another tab (or an earlier refresh in this one) may already have rotated the token
+      const current = localStorage.getItem('jwtToken');
+      if (current && current !== staleToken) {
+        return current;
+      }
+      const { data } = await api.post('/api/user/token/refresh');
+      const token = data.replace('Bearer ', '');
+      localStorage.setItem('jwtToken', token);
+      return token;
+    };
+    // Web Locks serialise refreshes across tabs, which share the cookie
+    refreshing = (navigator.locks ? navigator.locks.request('moneyflow-token-refresh', run) : run())
+      .finally(() => { refreshing = null; });
+  }
+  return refreshing;
+}
+
+api.interceptors.response.use(undefined, async (error) => {
+  const original = error.config;
+  const authEndpoint = original.url.endsWith('/token/refresh') || original.url.endsWith('/login');
+  if (error.response?.status !== 401 || original._retried || authEndpoint) {
+    return Promise.reject(error);
+  }
+
+  original._retried = true;
+  const staleToken = (original.headers.Authorization || '').replace('Bearer ', '');
+  try {
+    const token = await refreshAccessToken(staleToken);
+    original.headers.Authorization = `Bearer ${token}`;
+    return api(original);
+  } catch (refreshError) {
+    localStorage.removeItem('jwtToken');
+    window.location.href = '/login';
+    return Promise.reject(refreshError);
+  }
+});
+
+export default api;
+
+LoginPage.js (handleLogin)
+
+The login call goes through the same instance, so the refresh cookie from its response is stored. The token is saved without the "Bearer " prefix, because every caller adds it:
+
+            // Form body, never the query string: URLs end up in access logs, proxies and browser history
+            const response = await api.post('/api/user/login', new URLSearchParams({ userId, password }));
+            localStorage.setItem('jwtToken', response.data.replace('Bearer ', ''));
+
+axios sends a URLSearchParams body as application/x-www-form-urlencoded. The @RequestParam parameters of loginUser bind from form fields exactly as they did from the query string, so the controller is unchanged. The version recorded in UserVersionRegistry comes from userService.findByUserId, which reads the users row without the cache (see the user lookup cache step).
+
+The other pages switch from axios.get('http://localhost:8080/...', { headers: ... }) to api.get('/...'). The request interceptor adds the header.
+
+Why single-flight matters: the dashboard fires several requests at once, and after 15 minutes they all get 401 together. If each one posted the refresh cookie, the first would rotate it and the second would present the now-used token. The server rightly treats that as reuse and revokes the family, logging the user out. With one shared promise per tab and a cross-tab lock, the cookie is presented exactly once per rotation. A request that failed with an older token also picks up the token that is already in localStorage instead of refreshing again.
+
+
+---
+
+Conclusion
+
+Access tokens now live 15 minutes. /api/user/token/refresh renews them with one indexed lookup and one conditional update, and BCrypt only runs on real logins.
+
+Refresh tokens are opaque, stored only as SHA-256 digests, and valid for one use. Presenting a used token revokes its whole family. A password change or account disable ends every family through the existing token version.
@@ -0,0 +1,701 @@
+Mobile clients retry /api/transfer when a request times out. If the first attempt actually went through and only the response was lost, the retry debits the sender a second time. Checking a "seen requests" table before every transfer would fix that but add a database round trip to every transfer.
+
+Here's Idempotency-Key support:
+
+1. The client sends an Idempotency-Key header (a UUID it generates once per transfer and reuses on every retry of it). Keys are scoped to the authenticated user.
+
+
+2. Key → result entries live in a fixed-size off-heap hash table (a direct ByteBuffer, 80 bytes per slot). Its memory is bounded, the GC never scans it, and entries expire after a TTL (24 hours by default).
+
+
+3. A duplicate of a completed transfer gets the original response from that table in microseconds, with no database access and without running the transfer again. A duplicate that arrives while the first attempt is still running gets 409.
+
+A key is only honoured where it can be stored durably, so ledger mode rejects it (Step 6).
+
+
+4. The key and result are also inserted into an idempotency_key table in the same database transaction as the transfer. That row is what makes the guarantee survive a restart (the table is loaded back into memory on startup), and its primary key catches duplicates that reach another node or were evicted from memory.
+
+
+
+
+---
+
+Step 1: The table (schema.sql)
+
+CREATE TABLE idempotency_key (
+    user_id              VARCHAR(20)  NOT NULL,
+    idem_key             VARCHAR(64)  NOT NULL,
+    request_hash         BIGINT       NOT NULL,
+    transaction_id       VARCHAR(38)  NOT NULL,
+    balance_after_minor  BIGINT       NOT NULL,
+    expires_at           TIMESTAMP    NOT NULL,
+    PRIMARY KEY (user_id, idem_key),
+    INDEX idx_idempotency_key_expires_at (expires_at)
+);
+
+Only successful transfers are stored. A rejected transfer (insufficient balance, unknown receiver) wrote nothing, so running its retry again is safe and gives the answer that is correct at that moment.
+
+
+---
+
+Step 2: Off-heap index (IdempotencyIndex.java)
+
+package com.example.moneyflow.idempotency;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed-capacity off-heap map from a 128-bit key fingerprint to a transfer result.
+ * Each fingerprint maps to a window of 8 slots; a full window evicts its completed entry that expires first.
+ * A pending entry is never evicted while it is live.
+ */
+public class IdempotencyIndex {
+
+    static final int SLOT_BYTES = 80;
+    private static final int WINDOW = 8;
+
+    // Slot layout
+    private static final int HI = 0;
+    private static final int LO = 8;
+    private static final int EXPIRES_AT = 16;
+    private static final int BALANCE = 24;
+    private static final int REQUEST_HASH = 32;
+    private static final int STATE = 40;
+    private static final int ID_LENGTH = 41;
+    private static final int ID = 42;
+    public static final int MAX_TRANSACTION_ID_LENGTH = SLOT_BYTES - ID;   // 38 chars
+
+    static final byte EMPTY = 0;
+    static final byte PENDING = 1;
+    static final byte COMPLETED = 2;
+
+    private final ByteBuffer slots;
+    private final int windows;
+    private final ReentrantLock[] locks;
+    private final int lockMask;
+
+    public IdempotencyIndex(int capacity, int lockStripes) {
+        this.windows = Math.max(1, capacity / WINDOW);
+        this.slots = ByteBuffer.allocateDirect(windows * WINDOW * SLOT_BYTES);
+
+        int stripes = Integer.highestOneBit(Math.max(2, lockStripes - 1) << 1);   // next power of two
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.lockMask = stripes - 1;
+    }
+
+    public Entry get(Fingerprint key, long nowMillis) {
+        int window = windowOf(key);
+        ReentrantLock lock = locks[window & lockMask];
+        lock.lock();
+        try {
+            int slot = find(window, key, nowMillis);
+            return slot < 0 ? null : read(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Claims the key for a new request.
+     *
+     * @return null if the caller now owns the key, otherwise the existing live entry
+     */
+    public Entry reserve(Fingerprint key, long requestHash, long expiresAtMillis, long nowMillis) {
+        int window = windowOf(key);
+        ReentrantLock lock = locks[window & lockMask];
+        lock.lock();
+        try {
+            int existing = find(window, key, nowMillis);
+            if (existing >= 0) {
+                return read(existing);
+            }
+            int slot = victim(window, nowMillis);
+            if (slot < 0) {
+                throw new IdempotencyIndexFullException();
+            }
+            write(slot, key, PENDING, requestHash, expiresAtMillis, 0L, null);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stores a completed result; also used when loading from the database and after a DB-level duplicate
+    public void complete(Fingerprint key, long requestHash, long expiresAtMillis, String transactionId, long balanceMinor) {
+        int window = windowOf(key);
+        ReentrantLock lock = locks[window & lockMask];
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            int slot = find(window, key, now);
+            if (slot < 0) {
+                slot = victim(window, now);
+            }
+            // Every slot holds a running request: leave this one to the database row
+            if (slot >= 0) {
+                write(slot, key, COMPLETED, requestHash, expiresAtMillis, balanceMinor, transactionId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops a reservation whose transfer failed, so a retry can run it again
+    public void release(Fingerprint key) {
+        int window = windowOf(key);
+        ReentrantLock lock = locks[window & lockMask];
+        lock.lock();
+        try {
+            int slot = find(window, key, System.currentTimeMillis());
+            if (slot >= 0 && slots.get(slot + STATE) == PENDING) {
+                slots.put(slot + STATE, EMPTY);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long capacity() {
+        return (long) windows * WINDOW;
+    }
+
+    private int windowOf(Fingerprint key) {
+        return (int) Math.floorMod(key.hi, (long) windows);
+    }
+
+    // Byte offset of the live slot holding this key, or -1
+    private int find(int window, Fingerprint key, long nowMillis) {
+        int base = window * WINDOW * SLOT_BYTES;
+        for (int i = 0; i < WINDOW; i++) {
+            int slot = base + i * SLOT_BYTES;
+            if (slots.get(slot + STATE) != EMPTY
+                    && slots.getLong(slot + HI) == key.hi
+                    && slots.getLong(slot + LO) == key.lo
+                    && slots.getLong(slot + EXPIRES_AT) > nowMillis) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // An empty or expired slot if there is one, otherwise the completed slot that expires first, or -1
+    private int victim(int window, long nowMillis) {
+        int base = window * WINDOW * SLOT_BYTES;
+        int best = -1;
+        long bestExpiry = Long.MAX_VALUE;
+        for (int i = 0; i < WINDOW; i++) {
+            int slot = base + i * SLOT_BYTES;
+            byte state = slots.get(slot + STATE);
+            long expiresAt = slots.getLong(slot + EXPIRES_AT);
+            if (state == EMPTY || expiresAt <= nowMillis) {
+                return slot;
+            }
+            // A pending slot belongs to a transfer that is still running; evicting it would let a retry run it twice
+            if (state == COMPLETED && expiresAt < bestExpiry) {
+                bestExpiry = expiresAt;
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    private void write(int slot, Fingerprint key, byte state, long requestHash, long expiresAtMillis,
+                       long balanceMinor, String transactionId) {
+        slots.putLong(slot + HI, key.hi);
+        slots.putLong(slot + LO, key.lo);
+        slots.putLong(slot + EXPIRES_AT, expiresAtMillis);
+        slots.putLong(slot + BALANCE, balanceMinor);
+        slots.putLong(slot + REQUEST_HASH, requestHash);
+        int length = transactionId == null ? 0 : transactionId.length();
+        slots.put(slot + ID_LENGTH, (byte) length);
+        for (int i = 0; i < length; i++) {
+            slots.put(slot + ID + i, (byte) transactionId.charAt(i));
+        }
+        // State last: a slot only counts once it is completely written
+        slots.put(slot + STATE, state);
+    }
+
+    private Entry read(int slot) {
+        int length = slots.get(slot + ID_LENGTH);
+        byte[] id = new byte[length];
+        for (int i = 0; i < length; i++) {
+            id[i] = slots.get(slot + ID + i);
+        }
+        return new Entry(slots.get(slot + STATE) == COMPLETED,
+                slots.getLong(slot + REQUEST_HASH),
+                new String(id, StandardCharsets.US_ASCII),
+                slots.getLong(slot + BALANCE));
+    }
+
+    public static final class Entry {
+        private final boolean completed;
+        private final long requestHash;
+        private final String transactionId;
+        private final long balanceMinor;
+
+        Entry(boolean completed, long requestHash, String transactionId, long balanceMinor) {
+            this.completed = completed;
+            this.requestHash = requestHash;
+            this.transactionId = transactionId;
+            this.balanceMinor = balanceMinor;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        public long getRequestHash() {
+            return requestHash;
+        }
+
+        public String getTransactionId() {
+            return transactionId;
+        }
+
+        public long getBalanceMinor() {
+            return balanceMinor;
+        }
+    }
+}
+
+Fingerprint.java
+
+package com.example.moneyflow.idempotency;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class Fingerprint {
+
+    final long hi;
+    final long lo;
+
+    private Fingerprint(long hi, long lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    // First 128 bits of SHA-256(userId '\n' key): collisions are not a practical concern
+    public static Fingerprint of(String userId, String idempotencyKey) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(userId.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) '\n');
+            ByteBuffer digest = ByteBuffer.wrap(sha256.digest(idempotencyKey.getBytes(StandardCharsets.UTF_8)));
+            return new Fingerprint(digest.getLong(), digest.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
+
+Explanation:
+
+Each slot holds a 128-bit fingerprint of (userId, key) instead of the key itself, so slots have a fixed size and two users can never collide on the same client-chosen key.
+
+A key can only sit in its 8-slot window, so a lookup reads at most 640 contiguous bytes. There is no probing chain and no tombstones: an expired or released slot is simply free for reuse.
+
+When a window is full of live entries, the completed one expiring soonest is overwritten. The index is therefore bounded by construction (capacity × 80 bytes). The rare key pushed out early is still protected by the database primary key (Step 4).
+
+Pending entries are never overwritten. A pending slot is the only thing that stops a concurrent retry from starting a second transfer, and in ledger mode or before the commit there is no database row to fall back on. If all 8 slots of a window hold running transfers, reserve() throws IdempotencyIndexFullException and the request gets 429 with Retry-After: 1. With a million slots that takes 8 concurrent keyed transfers hashing to the same window, so in practice it only happens when the index is badly undersized.
+
+Absolute getLong/putLong don't move the buffer's position, so threads under different stripe locks can use the same buffer safely.
+
+
+---
+
+Step 3: Database side (IdempotencyRecords.java)
+
+package com.example.moneyflow.idempotency;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+@Repository
+public class IdempotencyRecords {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdempotencyRecords(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Runs inside the transfer's transaction; a duplicate key throws DuplicateKeyException and rolls it back
+    public void insert(IdempotencyContext context, String transactionId, long balanceAfterMinor) {
+        jdbcTemplate.update(
+                "INSERT INTO idempotency_key (user_id, idem_key, request_hash, transaction_id, balance_after_minor, expires_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?)",
+                context.getUserId(), context.getKey(), context.getRequestHash(), transactionId, balanceAfterMinor,
+                Timestamp.from(Instant.ofEpochMilli(context.getExpiresAtMillis())));
+    }
+
+    public IdempotencyIndex.Entry find(String userId, String key) {
+        try {
+            return jdbcTemplate.queryForObject(
+                    "SELECT request_hash, transaction_id, balance_after_minor FROM idempotency_key "
+                            + "WHERE user_id = ? AND idem_key = ?",
+                    (rs, rowNum) -> new IdempotencyIndex.Entry(true, rs.getLong(1), rs.getString(2), rs.getLong(3)),
+                    userId, key);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    // Streams live rows into the index on startup
+    public int loadInto(IdempotencyIndex index) {
+        int[] count = {0};
+        jdbcTemplate.query(
+                "SELECT user_id, idem_key, request_hash, transaction_id, balance_after_minor, expires_at "
+                        + "FROM idempotency_key WHERE expires_at > ?",
+                rs -> {
+                    index.complete(Fingerprint.of(rs.getString(1), rs.getString(2)), rs.getLong(3),
+                            rs.getTimestamp(6).getTime(), rs.getString(4), rs.getLong(5));
+                    count[0]++;
+                },
+                Timestamp.from(Instant.now()));
+        return count[0];
+    }
+
+    public int deleteExpired() {
+        return jdbcTemplate.update("DELETE FROM idempotency_key WHERE expires_at < ?", Timestamp.from(Instant.now()));
+    }
+}
+
+IdempotencyContext.java is a small immutable value with userId, key, requestHash and expiresAtMillis, plus a fingerprint() accessor. It is passed down to the transfer path so the row can be written there.
+
+
+---
+
+Step 4: Write the row with the transfer (TransferService.java, TransferBatcher.java)
+
+TransferService.transfer and transferOwned take an extra IdempotencyContext (null when the client sent no key), and doTransfer inserts the row after the debit and credit entries, in the same transaction:
+
+    @Autowired
+    private IdempotencyRecords idempotencyRecords;
+
+    private TransferResult doTransfer(String userId, String senderAccount, String receiverAccount, long amountMinor,
+                                      IdempotencyContext idempotency) {
+        // ... lookups, checks, balance updates, cache write-through and entries unchanged
+
+        if (idempotency != null) {
+            idempotencyRecords.insert(idempotency, transactionId, sender.getBalanceMinor());
+        }
+        return new TransferResult(transactionId, Money.ofMinor(sender.getBalanceMinor()));
+    }
+
+The retry loop in transfer() only retries OptimisticLockingFailureException. A DuplicateKeyException therefore rolls back and propagates at once: another node already committed this key, and nothing of this attempt is kept.
+
+In the batching pipeline, PendingTransfer carries the IdempotencyContext, and applyBatch adds one batched INSERT INTO idempotency_key for the accepted items that have a key. A duplicate there fails the batch, which falls back to single transfers (as for any batch failure). The duplicate item then fails on its own with the DuplicateKeyException, and the others go through.
+
+Ledger mode is not covered. The journal is already exactly-once per record, but it has no place for the key, and no idempotency_key row is written. The in-memory index alone would lose every key on a restart, so a retry after the restart would move the money a second time. The controller therefore rejects the header in ledger mode (Step 6) instead of promising something it can't keep.
+
+
+---
+
+Step 5: Request handling (IdempotentTransfers.java)
+
+package com.example.moneyflow.idempotency;
+
+import com.example.moneyflow.model.Money;
+import com.example.moneyflow.service.TransferException;
+import com.example.moneyflow.service.TransferResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+@Component
+public class IdempotentTransfers {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotentTransfers.class);
+    private static final Pattern VALID_KEY = Pattern.compile("[A-Za-z0-9_\\-]{8,64}");
+
+    private final IdempotencyIndex index;
+    private final IdempotencyRecords records;
+    private final long ttlMillis;
+
+    public IdempotentTransfers(IdempotencyRecords records,
+                               @Value("${moneyflow.idempotency.capacity:1000000}") int capacity,
+                               @Value("${moneyflow.idempotency.ttl:PT24H}") Duration ttl) {
+        this.records = records;
+        this.index = new IdempotencyIndex(capacity, 1024);
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    @PostConstruct
+    public void load() {
+        log.info("Loaded {} idempotency keys into an index of {} slots", records.loadInto(index), index.capacity());
+    }
+
+    @Scheduled(cron = "${moneyflow.idempotency.cleanup-cron:0 30 3 * * *}")
+    public void deleteExpired() {
+        records.deleteExpired();
+    }
+
+    public CompletableFuture<ResponseEntity<TransferResult>> execute(
+            String userId, String key, String senderAccount, String receiverAccount, long amountMinor,
+            Function<IdempotencyContext, CompletableFuture<TransferResult>> transfer) {
+
+        if (!VALID_KEY.matcher(key).matches()) {
+            throw new TransferException("Idempotency-Key must be 8-64 characters of [A-Za-z0-9_-]");
+        }
+
+        long requestHash = requestHash(senderAccount, receiverAccount, amountMinor);
+        Fingerprint fingerprint = Fingerprint.of(userId, key);
+        long now = System.currentTimeMillis();
+
+        IdempotencyIndex.Entry existing = index.reserve(fingerprint, requestHash, now + ttlMillis, now);
+        if (existing != null) {
+            return CompletableFuture.completedFuture(replay(existing, requestHash));
+        }
+
+        IdempotencyContext context = new IdempotencyContext(userId, key, requestHash, now + ttlMillis, fingerprint);
+        CompletableFuture<TransferResult> running;
+        try {
+            running = transfer.apply(context);
+        } catch (RuntimeException e) {
+            index.release(fingerprint);
+            throw e;
+        }
+
+        return running.handle((result, failure) -> {
+            if (failure == null) {
+                index.complete(fingerprint, requestHash, context.getExpiresAtMillis(),
+                        result.getTransactionId(), result.getBalanceAfterTransfer().getMinor());
+                return ResponseEntity.ok(result);
+            }
+
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof DuplicateKeyException) {
+                // Committed earlier by another node, or before this node's entry was evicted
+                IdempotencyIndex.Entry stored = records.find(userId, key);
+                if (stored != null) {
+                    index.complete(fingerprint, stored.getRequestHash(), context.getExpiresAtMillis(),
+                            stored.getTransactionId(), stored.getBalanceMinor());
+                    return replay(stored, requestHash);
+                }
+            }
+            index.release(fingerprint);
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+        });
+    }
+
+    private static ResponseEntity<TransferResult> replay(IdempotencyIndex.Entry entry, long requestHash) {
+        if (entry.getRequestHash() != requestHash) {
+            throw new IdempotencyKeyMismatchException();
+        }
+        if (!entry.isCompleted()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.ok()
+                .header(REPLAYED_HEADER, "true")
+                .body(new TransferResult(entry.getTransactionId(), Money.ofMinor(entry.getBalanceMinor())));
+    }
+
+    private static long requestHash(String senderAccount, String receiverAccount, long amountMinor) {
+        long h = 1125899906842597L;
+        for (int i = 0; i < senderAccount.length(); i++) {
+            h = 31 * h + senderAccount.charAt(i);
+        }
+        h = 31 * h + '|';
+        for (int i = 0; i < receiverAccount.length(); i++) {
+            h = 31 * h + receiverAccount.charAt(i);
+        }
+        return 31 * h + amountMinor;
+    }
+}
+
+IdempotencyKeyMismatchException.java
+
+package com.example.moneyflow.idempotency;
+
+public class IdempotencyKeyMismatchException extends RuntimeException {
+
+    public IdempotencyKeyMismatchException() {
+        super("Idempotency-Key was already used for a different transfer");
+    }
+}
+
+IdempotencyIndexFullException.java
+
+package com.example.moneyflow.idempotency;
+
+public class IdempotencyIndexFullException extends RuntimeException {
+
+    public IdempotencyIndexFullException() {
+        super("Too many transfers in progress, please retry shortly");
+    }
+}
+
+Explanation:
+
+reserve() claims the key in the index before the transfer starts. A second request with the same key that arrives while the first is still running sees PENDING and gets 409 Conflict, rather than starting a parallel transfer. The client retries a little later and then gets the replay.
+
+The replay is the original 200 body (transaction id and sender balance after the transfer), with Idempotent-Replayed: true so clients and logs can tell it apart.
+
+Reusing a key for a different sender, receiver or amount is a client bug. It gets 422 instead of silently returning the other transfer's result.
+
+A failed transfer releases its reservation, so the client's retry runs normally.
+
+
+---
+
+Step 6: Controller (TransferController.java)
+
+    @Autowired
+    private IdempotentTransfers idempotentTransfers;
+
+    @PostMapping
+    public CompletableFuture<ResponseEntity<TransferResult>> transfer(
+            @RequestBody TransferRequest request,
+            @RequestHeader(name = IdempotentTransfers.HEADER, required = false) String idempotencyKey,
+            Authentication authentication) {
+
+        String userId = authentication.getName();
+        long amount = request.getAmount().getMinor();
+
+        if (idempotencyKey == null) {
+            return runTransfer(userId, request, amount, null).thenApply(ResponseEntity::ok);
+        }
+        if (ledgerService != null) {
+            // The journal has no room for the key, so nothing would survive a restart
+            throw new TransferException("Idempotency-Key is not supported while moneyflow.ledger.enabled=true");
+        }
+        return idempotentTransfers.execute(userId, idempotencyKey, request.getSenderId(), request.getReceiverId(), amount,
+                context -> runTransfer(userId, request, amount, context));
+    }
+
+    // The batched, ledger and plain paths from before, now with the IdempotencyContext passed through
+    private CompletableFuture<TransferResult> runTransfer(String userId, TransferRequest request, long amount,
+                                                          IdempotencyContext idempotency) {
+        // ...
+    }
+
+    @ExceptionHandler(IdempotencyKeyMismatchException.class)
+    public ResponseEntity<String> handleKeyMismatch(IdempotencyKeyMismatchException e) {
+        return ResponseEntity.unprocessableEntity().body(e.getMessage());
+    }
+
+    @ExceptionHandler(IdempotencyIndexFullException.class)
+    public ResponseEntity<String> handleIndexFull(IdempotencyIndexFullException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").body(e.getMessage());
+    }
+
+In ledger mode a request with an Idempotency-Key gets 400 and nothing is transferred. Ledger deployments have to keep keyed retries off until the journal can carry the key.
+
+The React Transfer page creates the key once when the form is submitted (crypto.randomUUID()) and sends the same value on every retry of that submission:
+
+    await axios.post('/api/transfer', { senderId, receiverId, amount },
+        { headers: { Authorization: `Bearer ${token}`, 'Idempotency-Key': submissionKey } });
+
+
+---
+
+Step 7: Configuration (application.properties)
+
+# 1,000,000 slots x 80 bytes = 80 MB of direct memory
+moneyflow.idempotency.capacity=1000000
+moneyflow.idempotency.ttl=PT24H
+
+Direct memory counts against -XX:MaxDirectMemorySize (by default the same as -Xmx). Size it for the index plus the ledger's mapped buffers if that mode is on.
+
+Size the capacity to at least the number of keyed transfers in one TTL. Above that, the soonest-expiring keys are evicted first, and duplicates of those are caught by the table's primary key, at the cost of one rolled-back transaction.
+
+
+---
+
+Step 8: Tests (IdempotencyIndexTest.java)
+
+A capacity of 8 gives the index a single window, so every key competes for the same 8 slots.
+
+package com.example.moneyflow.idempotency;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyIndexTest {
+
+    private static final long NOW = 1_000_000L;
+
+    private final IdempotencyIndex index = new IdempotencyIndex(8, 2);
+
+    @Test
+    void fullWindowOfPendingEntriesRefusesANewKey() {
+        for (int i = 0; i < 8; i++) {
+            assertThat(index.reserve(key(i), 1L, NOW + 1_000 + i, NOW)).isNull();
+        }
+
+        assertThatThrownBy(() -> index.reserve(key(8), 1L, NOW + 5_000, NOW))
+                .isInstanceOf(IdempotencyIndexFullException.class);
+        // Every running request still holds its slot
+        for (int i = 0; i < 8; i++) {
+            assertThat(index.get(key(i), NOW)).isNotNull().extracting(IdempotencyIndex.Entry::isCompleted).isEqualTo(false);
+        }
+    }
+
+    @Test
+    void evictsTheCompletedEntryThatExpiresFirstButNeverAPendingOne() {
+        // Pending entry with the earliest expiry of all
+        index.reserve(key(0), 1L, NOW + 100, NOW);
+        for (int i = 1; i < 8; i++) {
+            index.reserve(key(i), 1L, NOW + 1_000 + i, NOW);
+            index.complete(key(i), 1L, NOW + 1_000 + i, "tx-" + i, 0L);
+        }
+
+        assertThat(index.reserve(key(8), 1L, NOW + 5_000, NOW)).isNull();
+
+        assertThat(index.get(key(0), NOW)).isNotNull();
+        assertThat(index.get(key(1), NOW)).isNull();
+        assertThat(index.get(key(2), NOW).getTransactionId()).isEqualTo("tx-2");
+    }
+
+    @Test
+    void expiredPendingEntryIsReused() {
+        for (int i = 0; i < 8; i++) {
+            index.reserve(key(i), 1L, NOW + 100 + i, NOW);
+        }
+
+        assertThat(index.reserve(key(8), 1L, NOW + 5_000, NOW + 100)).isNull();
+        assertThat(index.get(key(0), NOW + 100)).isNull();
+    }
+
+    private static Fingerprint key(int i) {
+        return Fingerprint.of("user", "key-000" + i);
+    }
+}
+
+
+---
+
+Conclusion
+
+/api/transfer now honours an Idempotency-Key header. Keys and results live in a bounded off-heap table with a TTL, so a retried transfer is answered with the original response in microseconds and never runs twice. A concurrent duplicate gets 409, and reusing a key for a different transfer gets 422. Running transfers are never evicted from the index. Ledger mode rejects the header, because it has no durable place for the key.
+
+Each key is also written to idempotency_key in the same transaction as its transfer. The table is reloaded into the index on startup, and its primary key catches duplicates that reach another node or were evicted from memory.
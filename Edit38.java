@@ -0,0 +1,439 @@
+The Transfer entity (table transfer) mixes two very different kinds of data. Profile columns (id, userId, firstName, lastName, email, ifscCode) are written once at registration and rarely read. balance_minor and version change on every transfer. An InnoDB row is stored as a whole, so each balance update rewrites a row of about 250 bytes, including names and e-mail, and the buffer pool has to keep that whole row cached just to serve one BIGINT. Going the other way, every profile read (ownership checks, details) pulls the balance and version along with it.
+
+Here's the split:
+
+1. A narrow account_balance table (account_number, balance_minor, version), about 40 bytes per row, mapped by a new AccountBalance entity. Every hot path reads and writes only this table.
+
+
+2. Transfer stays as the profile entity for the cold columns, without balance_minor and version.
+
+
+3. An online migration copies the existing balances while the application keeps running: triggers keep the new table in step, a chunked backfill copies the rest, the code switches over with a temporary write-back to the old column, and only then is that column dropped.
+
+
+
+
+---
+
+Step 1: The new entity (AccountBalance.java, AccountBalanceRepository.java)
+
+package com.example.moneyflow.model;
+
+import com.example.moneyflow.config.MoneyJsonComponent;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.Data;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+@Entity
+@Table(name = "account_balance")
+@Data
+public class AccountBalance {
+
+    @Id
+    @Column(length = 12)
+    private String accountNumber;
+
+    @Column(name = "balance_minor", nullable = false)
+    @JsonProperty("balance")
+    @JsonSerialize(using = MoneyJsonComponent.MinorUnitsSerializer.class)
+    @JsonDeserialize(using = MoneyJsonComponent.MinorUnitsDeserializer.class)
+    private long balanceMinor;
+
+    @Version
+    private long version;
+}
+
+package com.example.moneyflow.repos;
+
+import com.example.moneyflow.model.AccountBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface AccountBalanceRepository extends JpaRepository<AccountBalance, String> {
+}
+
+The account number is the primary key, so a balance lookup is a single clustered-index read. The row holds nothing else, and about 400 of them fit in a 16 KB page, against about 60 transfer rows.
+
+Transfer.java (profile only)
+
+@Entity
+@Data
+public class Transfer {
+    @Id
+    private String id;
+    private String userId;
+
+    @Column(unique = true, nullable = false)
+    private String accountNumber;
+
+    private String ifscCode;
+    private String firstName;
+    private String lastName;
+    private String email;
+}
+
+The @Version field moves to AccountBalance. Profile rows are not updated concurrently, so they don't need one.
+
+
+---
+
+Step 2: Online migration (db/migration)
+
+This is run as four steps, with deploys in step C. At no point is the transfer table locked for longer than a single chunk.
+
+A. Create the table and keep it in step with the old column (V23_1__account_balance.sql)
+
+CREATE TABLE account_balance (
+    account_number VARCHAR(12) NOT NULL PRIMARY KEY,
+    balance_minor  BIGINT      NOT NULL,
+    version        BIGINT      NOT NULL
+);
+
+CREATE TRIGGER transfer_balance_ai AFTER INSERT ON transfer FOR EACH ROW
+    REPLACE INTO account_balance (account_number, balance_minor, version)
+    VALUES (NEW.account_number, NEW.balance_minor, NEW.version);
+
+CREATE TRIGGER transfer_balance_au AFTER UPDATE ON transfer FOR EACH ROW
+    REPLACE INTO account_balance (account_number, balance_minor, version)
+    VALUES (NEW.account_number, NEW.balance_minor, NEW.version);
+
+ALTER TABLE transfer ALTER COLUMN balance_minor SET DEFAULT 0, ALTER COLUMN version SET DEFAULT 0;
+
+From now on every write through the old code also lands in account_balance, in the same transaction. The defaults (a metadata-only change) let the new code insert profile rows without those two columns while they still exist.
+
+B. Backfill in chunks (BalanceBackfill.java, run once as an admin task)
+
+package com.example.moneyflow.migration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class BalanceBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceBackfill.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BalanceBackfill(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public long run(int chunkSize) {
+        String from = "";
+        long copied = 0;
+        while (true) {
+            // Keyset over the unique account_number index: each chunk is a short range scan
+            String to = jdbcTemplate.query(
+                    "SELECT MAX(account_number) FROM (SELECT account_number FROM transfer "
+                            + "WHERE account_number > ? ORDER BY account_number LIMIT ?) chunk",
+                    rs -> rs.next() ? rs.getString(1) : null,
+                    from, chunkSize);
+            if (to == null) {
+                break;
+            }
+
+            // IGNORE: a row the trigger already wrote is newer than what we would copy
+            copied += jdbcTemplate.update(
+                    "INSERT IGNORE INTO account_balance (account_number, balance_minor, version) "
+                            + "SELECT account_number, balance_minor, version FROM transfer "
+                            + "WHERE account_number > ? AND account_number <= ?",
+                    from, to);
+            from = to;
+        }
+        log.info("Backfilled {} account balances", copied);
+        return copied;
+    }
+}
+
+Each chunk is its own short autocommit statement and locks only its range. A transfer that updates a row during the backfill fires the trigger, whose REPLACE always wins over the copy.
+
+Check before continuing (both queries must return the same values):
+
+SELECT COUNT(*), SUM(balance_minor) FROM transfer;
+SELECT COUNT(*), SUM(balance_minor) FROM account_balance;
+
+SELECT COUNT(*) FROM transfer t JOIN account_balance b USING (account_number)
+ WHERE t.balance_minor <> b.balance_minor OR t.version <> b.version;   -- expect 0
+
+C. Switch the code over in two releases
+
+Release 1 ships the code from Steps 3-4 with moneyflow.balance.mirror-to-transfer=true. It reads and writes account_balance, and in the same transaction also copies each new balance and version back into transfer:
+
+    @Value("${moneyflow.balance.mirror-to-transfer:false}")
+    private boolean mirrorToTransfer;
+
+        // in doTransfer, after the two saveAndFlush calls
+        if (mirrorToTransfer) {
+            jdbcTemplate.batchUpdate("UPDATE transfer SET balance_minor = ?, version = ? WHERE account_number = ?",
+                    Arrays.asList(
+                            new Object[]{sender.getBalanceMinor(), sender.getVersion(), senderAccount},
+                            new Object[]{receiver.getBalanceMinor(), receiver.getVersion(), receiverAccount}));
+        }
+
+This matters during the rolling deploy, when old and new nodes write balances at the same time. Old nodes still read and version-check transfer, so they must see the new nodes' writes (through the mirror). New nodes version-check account_balance, so they must see the old nodes' writes (through the trigger). The trigger also fires for the mirror's UPDATE, but it only writes back values equal to what is already in account_balance.
+
+Only doTransfer mirrors. The other two balance writers, the TransferBatcher's batched UPDATE and the LedgerCheckpointer, write account_balance alone (Step 4). While the mirror is needed they would leave transfer.balance_minor behind, and an old node would then version-check and overwrite a stale balance. So batching and the ledger must both stay off from step A until release 2. They are alternatives to the plain path anyway, and are switched back on once the mirror is gone. Release 1 checks this at startup and refuses to run with the mirror and either of them on:
+
+package com.example.moneyflow.migration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "moneyflow.balance.mirror-to-transfer", havingValue = "true")
+public class BalanceMirrorGuard {
+
+    public BalanceMirrorGuard(@Value("${moneyflow.transfer.batching.enabled:false}") boolean batchingEnabled,
+                              @Value("${moneyflow.ledger.enabled:false}") boolean ledgerEnabled) {
+        // Neither the batcher nor the checkpointer copies its writes back into transfer
+        if (batchingEnabled || ledgerEnabled) {
+            throw new IllegalStateException("moneyflow.balance.mirror-to-transfer=true requires "
+                    + "moneyflow.transfer.batching.enabled and moneyflow.ledger.enabled to be false");
+        }
+    }
+}
+
+BalanceMirrorGuardTest (in src/test, next to the other migration code) covers it with an ApplicationContextRunner:
+
+package com.example.moneyflow.migration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BalanceMirrorGuardTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(BalanceMirrorGuard.class);
+
+    @Test
+    void mirrorRefusesToStartWithBatchingOrTheLedger() {
+        for (String other : new String[]{"moneyflow.transfer.batching.enabled=true", "moneyflow.ledger.enabled=true"}) {
+            contextRunner
+                    .withPropertyValues("moneyflow.balance.mirror-to-transfer=true", other)
+                    .run(context -> assertThat(context.getStartupFailure())
+                            .hasRootCauseInstanceOf(IllegalStateException.class));
+        }
+    }
+
+    @Test
+    void mirrorAloneStarts() {
+        contextRunner
+                .withPropertyValues("moneyflow.balance.mirror-to-transfer=true")
+                .run(context -> assertThat(context).hasNotFailed().hasSingleBean(BalanceMirrorGuard.class));
+    }
+
+    @Test
+    void batchingWithoutTheMirrorIsNotChecked() {
+        contextRunner
+                .withPropertyValues("moneyflow.transfer.batching.enabled=true")
+                .run(context -> assertThat(context).hasNotFailed().doesNotHaveBean(BalanceMirrorGuard.class));
+    }
+}
+
+Turn batching and the ledger off on the old nodes before step A too. Their writes would still reach account_balance through the trigger, but release 1 would refuse to start on those nodes during the rolling deploy.
+
+The two paths lock the two tables in opposite order (old: transfer then account_balance; new: account_balance then transfer), so a deadlock is possible while both kinds of node are running. InnoDB resolves it by rolling one transaction back. To make the transfer retry loop handle that, it now catches ConcurrencyFailureException (the parent of both OptimisticLockingFailureException and the deadlock/lock-timeout exceptions) instead of only the optimistic one.
+
+Once every node runs release 1, drop the triggers (V23_2__drop_balance_triggers.sql):
+
+DROP TRIGGER transfer_balance_ai;
+DROP TRIGGER transfer_balance_au;
+
+Release 2 sets moneyflow.balance.mirror-to-transfer=false (the default). From then on, nothing reads transfer.balance_minor, and batching or the ledger can be turned back on.
+
+D. After a release cycle, drop the old columns (V23_3__drop_transfer_balance.sql)
+
+ALTER TABLE transfer DROP COLUMN balance_minor, DROP COLUMN version, ALGORITHM=INPLACE, LOCK=NONE;
+
+This rebuilds transfer without blocking reads or writes, and leaves the narrower profile rows.
+
+Rollback is possible up to step D: turn the mirror back on and redeploy the old code. transfer.balance_minor is current for as long as the mirror runs.
+
+
+---
+
+Step 3: Transfer path (TransferService.java)
+
+Only the balance rows are loaded for update. The profile is read only for the sender's ownership check, and the receiver's profile isn't read at all.
+
+    @Autowired
+    private AccountBalanceRepository accountBalanceRepository;
+
+    private TransferResult doTransfer(String userId, String senderAccount, String receiverAccount, long amountMinor,
+                                      IdempotencyContext idempotency) {
+        checkOwnership(userId, senderAccount);
+
+        AccountBalance sender = accountBalanceRepository.findById(senderAccount)
+                .orElseThrow(() -> new TransferException("Sender account not found"));
+        AccountBalance receiver = accountBalanceRepository.findById(receiverAccount)
+                .orElseThrow(() -> new TransferException("Receiver account not found"));
+
+        if (sender.getBalanceMinor() < amountMinor) {
+            throw new TransferException("Insufficient balance!");
+        }
+
+        sender.setBalanceMinor(sender.getBalanceMinor() - amountMinor);
+        receiver.setBalanceMinor(Math.addExact(receiver.getBalanceMinor(), amountMinor));
+
+        accountBalanceRepository.saveAndFlush(sender);
+        accountBalanceRepository.saveAndFlush(receiver);
+
+        // ... cache write-through (now from AccountBalance.getVersion()), entries and idempotency row unchanged
+    }
+
+    public void checkOwnership(String userId, String senderAccount) {
+        Transfer profile = transferRepository.findByAccountNumber(senderAccount)
+                .orElseThrow(() -> new TransferException("Sender account not found"));
+        if (!profile.getUserId().equals(userId)) {
+            throw new TransferException("Sender account does not belong to the authenticated user");
+        }
+    }
+
+The UPDATE Hibernate issues is now UPDATE account_balance SET balance_minor=?, version=? WHERE account_number=? AND version=?. It changes about 40 bytes and never touches the profile row. checkOwnership already existed (ledger step) and is reused here.
+
+transferOwned (batching fallback) looks up the owner the same way, from the profile.
+
+
+---
+
+Step 4: Other balance readers and writers
+
+Every place that used transfer.balance_minor switches to account_balance. Only the table name changes, because the columns keep their names:
+
+- BalanceQueries.balanceAndVersion (balance cache miss):
+  SELECT balance_minor, version FROM account_balance WHERE account_number = ?
+
+- TransferBatcher:
+  SELECT account_number, balance_minor, version FROM account_balance WHERE account_number IN (...) ORDER BY account_number FOR UPDATE
+  UPDATE account_balance SET balance_minor = ?, version = version + 1 WHERE account_number = ?
+
+- LedgerCheckpointer:
+  SELECT account_number, balance_minor FROM account_balance WHERE account_number IN (...) ORDER BY account_number FOR UPDATE
+  UPDATE account_balance SET balance_minor = ?, version = version + 1 WHERE account_number = ?
+
+- BalanceStateLoader and the ledger's full scan:
+  SELECT account_number, balance_minor FROM account_balance
+  The full scan now reads 40-byte rows instead of whole profile rows, which makes cold boots without a snapshot several times faster as well.
+
+- BalanceSnapshotter: the count and the scan both move, inside the same REPEATABLE READ transaction as the watermark:
+
+            long count = streamingJdbcTemplate.queryForObject("SELECT COUNT(*) FROM account_balance", Long.class);
+            ...
+                        streamingJdbcTemplate.query("SELECT account_number, balance_minor FROM account_balance",
+
+  This has to ship with release 1 (step C), not after it. Until step D the old column is still mirrored, so either table would give the same snapshot. After step D, a snapshotter still reading transfer.balance_minor would fail on every run, and boots would silently fall back to the full scan.
+
+- BulkRegistrationService: INSERT_TRANSFER loses the last two columns, and a second batched insert is added to the same chunk transaction:
+
+    private static final String INSERT_TRANSFER =
+            "INSERT INTO transfer (id, user_id, account_number, ifsc_code, first_name, last_name, email) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_BALANCE =
+            "INSERT IGNORE INTO account_balance (account_number, balance_minor, version) VALUES (?, 0, 0)";
+
+- UserService.registerUser: after saving the profile,
+
+        AccountBalance balance = new AccountBalance();
+        balance.setAccountNumber(transfer.getAccountNumber());
+        balance.setBalanceMinor(0L);
+        accountBalanceRepository.save(balance);
+
+  While the insert trigger still exists, it has already created the row (with the same zeros) by the time this runs. That's why the bulk insert uses INSERT IGNORE, and why save() works here: with an assigned id, Spring Data merges, so it updates the existing row instead of failing on the key.
+
+  The registration response (the Transfer profile) no longer contains "balance". The dashboard already reads the balance from /api/user/balance.
+
+- The statement export and transaction history only read the transactions table and are unaffected.
+
+
+Tests and benchmarks that build Transfer objects with a balance are updated too, since Transfer no longer has balanceMinor:
+
+- TransferServiceStressTest seeds one AccountBalance per account next to its profile, and sums the balances from the new repository:
+
+    @Autowired
+    private AccountBalanceRepository accountBalanceRepository;
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Transfer account = new Transfer();
+            account.setId("id-" + i);
+            account.setUserId("user-" + i);
+            account.setAccountNumber("ACC" + i);
+            transferRepository.save(account);
+
+            AccountBalance balance = new AccountBalance();
+            balance.setAccountNumber("ACC" + i);
+            balance.setBalanceMinor(OPENING_BALANCE_MINOR);
+            accountBalanceRepository.save(balance);
+        }
+        ...
+        List<AccountBalance> after = accountBalanceRepository.findAll();
+        long total = after.stream().mapToLong(AccountBalance::getBalanceMinor).sum();
+
+        assertThat(total).isEqualTo(ACCOUNTS * OPENING_BALANCE_MINOR);
+        assertThat(after).allSatisfy(account -> assertThat(account.getBalanceMinor()).isGreaterThanOrEqualTo(0L));
+
+- MoneyJsonComponentTest round-trips an AccountBalance instead of a Transfer. The JSON property is still "balance".
+
+- TransferBatcherTest creates account_balance (account_number, balance_minor, version) instead of the transfer table, and its balance() helper reads from it.
+
+- EntityJsonBenchmark drops transfer.setBalanceMinor(...), and the round-trip check in setUp reads back an AccountBalance instead of a Transfer. The balance gets its own fixture and benchmark, because it is now a separate entity that the API serializes on its own:
+
+    private AccountBalance accountBalance;
+
+        accountBalance = new AccountBalance();
+        accountBalance.setAccountNumber("500000000124");
+        accountBalance.setBalanceMinor(52_345_67L);
+
+    @Benchmark
+    public byte[] serializeAccountBalance() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(accountBalance);
+    }
+
+  serializeTransfer and deserializeTransfer now measure the profile alone, so their numbers drop compared with earlier runs. Don't read that drop as a serializer speed-up.
+
+
+---
+
+Step 5: Load test harness (loadtest-schema.sql)
+
+The harness's H2 schema is created by Hibernate from the entities, so account_balance appears automatically. Nothing besides the trigger-free schema is needed there.
+
+LoadTest.fund() writes the opening balance, so it moves to the new table:
+
+        int updated = jdbcTemplate.update("UPDATE account_balance SET balance_minor = ? WHERE account_number = ?",
+                openingBalanceMinor, accountNumber);
+
+
+---
+
+Expected effect
+
+Row size on the hot path: about 250 bytes → about 40 bytes.
+
+Buffer pool: the balances of all accounts take roughly a sixth of the pages they used to. A working set that spilled to disk before now often fits in memory, and balance cache misses hit cached pages.
+
+Update cost: each transfer rewrites two narrow rows instead of two wide ones, with less redo and undo per UPDATE.
+
+Profile reads (ownership check, details) no longer drag the frequently changing balance and version along. With the cold table rarely written, its pages stay clean in the buffer pool.
+
+To see the difference on a real table, compare SHOW TABLE STATUS LIKE 'transfer' with 'account_balance' (Avg_row_length), and run the load-test harness before and after the switch.
+
+
+---
+
+Conclusion
+
+Balances now live in a narrow account_balance(account_number, balance_minor, version) table with its own AccountBalance entity, and Transfer keeps only the profile.
+
+The data is moved online: triggers keep the new table current, a keyset-chunked backfill copies the existing rows, the code switches over in a rolling deploy that mirrors balances back to the old column until every node has moved, and the old columns are dropped afterwards with an in-place ALTER.
@@ -0,0 +1,754 @@
+Reads (/api/user/details, /api/user/balance, /api/transactions and the statement export) far outnumber writes, yet every query goes to the one primary database that also has to commit all transfers. The history endpoints are the heaviest of these: index range scans over the transactions table, paged or streamed.
+
+Here's read/write routing:
+
+1. There are two datasources, the primary and a read replica, behind one routing DataSource. Repositories, JdbcTemplate and JPA keep using "the" DataSource exactly as before.
+
+
+2. A transaction marked @Transactional(readOnly = true) goes to the replica. Everything else (all writes, and any read inside a write transaction) goes to the primary.
+
+
+3. Read-your-writes: after a user's transfer or registration commits, that user's reads stay on the primary for a short window that follows the measured replication lag. Other users keep reading from the replica.
+
+
+4. Replica lag is measured with a heartbeat row. If the replica falls too far behind or can't be reached, all reads go back to the primary until it recovers.
+
+
+5. Locally, both datasources are embedded H2 databases, with a small replicator that copies the tables with an adjustable delay. Routing and read-your-writes can therefore be tried out without a MySQL replica.
+
+
+
+
+---
+
+Step 1: Configuration (application.properties)
+
+moneyflow.datasource.primary.url=jdbc:mysql://db-primary:3306/moneyflow?rewriteBatchedStatements=true
+moneyflow.datasource.primary.username=moneyflow
+moneyflow.datasource.primary.password=${DB_PASSWORD}
+
+moneyflow.datasource.replica.url=jdbc:mysql://db-replica:3306/moneyflow
+moneyflow.datasource.replica.username=moneyflow_ro
+moneyflow.datasource.replica.password=${DB_REPLICA_PASSWORD}
+
+moneyflow.routing.enabled=true
+# Reads of a user who just wrote stay on the primary at least this long
+moneyflow.routing.sticky-min=PT1S
+# Beyond this lag the replica is not used at all
+moneyflow.routing.max-replica-lag=PT10S
+moneyflow.routing.heartbeat-interval-ms=500
+
+With moneyflow.routing.enabled=false (the default), nothing changes: the plain spring.datasource.* configuration is used as before.
+
+schema.sql (primary; it replicates like every other table. It isn't an entity, so Hibernate never creates it.)
+
+CREATE TABLE replication_heartbeat (
+    id      INT         NOT NULL PRIMARY KEY,
+    beat_at TIMESTAMP(3) NOT NULL
+);
+INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, CURRENT_TIMESTAMP(3));
+
+
+---
+
+Step 2: The routing DataSource (ReadWriteRoutingDataSource.java)
+
+package com.example.moneyflow.routing;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Target {
+        PRIMARY, REPLICA
+    }
+
+    private final ReplicaLagMonitor lagMonitor;
+
+    public ReadWriteRoutingDataSource(ReplicaLagMonitor lagMonitor) {
+        this.lagMonitor = lagMonitor;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return Target.PRIMARY;
+        }
+        if (ReadConsistency.isPrimaryRequired() || !lagMonitor.isReplicaUsable()) {
+            return Target.PRIMARY;
+        }
+        return Target.REPLICA;
+    }
+}
+
+ReadConsistency.java
+
+package com.example.moneyflow.routing;
+
+// Per-request override, set by ReadYourWritesInterceptor for users who have just written
+public final class ReadConsistency {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private ReadConsistency() {
+    }
+
+    static void requirePrimary() {
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+    }
+
+    static void clear() {
+        PRIMARY_REQUIRED.remove();
+    }
+
+    public static boolean isPrimaryRequired() {
+        return PRIMARY_REQUIRED.get() != null;
+    }
+}
+
+
+---
+
+Step 3: Wiring (RoutingDataSourceConfig.java)
+
+package com.example.moneyflow.routing;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(name = "moneyflow.routing.enabled", havingValue = "true")
+public class RoutingDataSourceConfig {
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("moneyflow.datasource.primary")
+    public DataSourceProperties primaryDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties("moneyflow.datasource.replica")
+    public DataSourceProperties replicaDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties("moneyflow.datasource.primary.hikari")
+    public DataSource primaryDataSource() {
+        return primaryDataSourceProperties().initializeDataSourceBuilder().build();
+    }
+
+    @Bean
+    @ConfigurationProperties("moneyflow.datasource.replica.hikari")
+    public DataSource replicaDataSource() {
+        return replicaDataSourceProperties().initializeDataSourceBuilder().build();
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("primaryDataSource") DataSource primary,
+                                               @Qualifier("replicaDataSource") DataSource replica,
+                                               RoutingProperties properties) {
+        return new ReplicaLagMonitor(new JdbcTemplate(primary), new JdbcTemplate(replica), properties);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica,
+                                 ReplicaLagMonitor lagMonitor) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(lagMonitor);
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReadWriteRoutingDataSource.Target.PRIMARY, primary);
+        targets.put(ReadWriteRoutingDataSource.Target.REPLICA, replica);
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+
+        // Defers the physical connection until the first statement, after the transaction's read-only flag is known
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
+
+Explanation:
+
+LazyConnectionDataSourceProxy is required here. JpaTransactionManager opens the transaction, and would fetch a connection, before TransactionSynchronizationManager knows the transaction is read-only. Without the proxy, every transaction would be routed to the primary. With it, the routing decision happens at the first real statement, when the flag is set.
+
+The DataSource bean is @Primary, so Spring Boot's JPA, JdbcTemplate and transaction manager auto-configuration use it unchanged. primaryDataSourceProperties is @Primary too, so IdSequenceConfig builds its id-sequence pool against the primary (leases are writes) without a qualifier. Flyway/schema initialisation should point at primaryDataSource only (spring.flyway.url or @FlywayDataSource).
+
+RoutingProperties is a @ConfigurationProperties("moneyflow.routing") class with stickyMin, maxReplicaLag and heartbeatIntervalMs.
+
+
+---
+
+Step 4: Replica lag (ReplicaLagMonitor.java)
+
+package com.example.moneyflow.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Timestamp;
+
+public class ReplicaLagMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final long maxLagMillis;
+    private final long stickyMinMillis;
+
+    private volatile long lagMillis = Long.MAX_VALUE;   // unknown until the first check
+
+    public ReplicaLagMonitor(JdbcTemplate primary, JdbcTemplate replica, RoutingProperties properties) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLagMillis = properties.getMaxReplicaLag().toMillis();
+        this.stickyMinMillis = properties.getStickyMin().toMillis();
+    }
+
+    @Scheduled(fixedDelayString = "${moneyflow.routing.heartbeat-interval-ms:500}")
+    public void beat() {
+        // Any node may write the heartbeat; the time always comes from the primary's clock
+        primary.update("UPDATE replication_heartbeat SET beat_at = CURRENT_TIMESTAMP(3) WHERE id = 1");
+    }
+
+    @Scheduled(fixedDelayString = "${moneyflow.routing.heartbeat-interval-ms:500}")
+    public void measure() {
+        try {
+            Timestamp beat = replica.queryForObject("SELECT beat_at FROM replication_heartbeat WHERE id = 1", Timestamp.class);
+            // Compared with the clock that wrote it, so a skewed node clock can't hide or invent lag
+            Timestamp now = primary.queryForObject("SELECT CURRENT_TIMESTAMP(3)", Timestamp.class);
+            long lag = Math.max(0, now.getTime() - beat.getTime());
+            if ((lag > maxLagMillis) != (lagMillis > maxLagMillis)) {
+                log.warn("Replica lag {} ms; replica reads {}", lag, lag > maxLagMillis ? "suspended" : "resumed");
+            }
+            lagMillis = lag;
+        } catch (RuntimeException e) {
+            if (lagMillis != Long.MAX_VALUE) {
+                log.warn("Replica unreachable; routing all reads to the primary", e);
+            }
+            lagMillis = Long.MAX_VALUE;
+        }
+    }
+
+    public boolean isReplicaUsable() {
+        return lagMillis <= maxLagMillis;
+    }
+
+    // How long a writer's reads must stay on the primary: current lag plus one heartbeat of margin
+    public long stickyWindowMillis() {
+        long lag = lagMillis == Long.MAX_VALUE ? maxLagMillis : lagMillis;
+        return Math.max(stickyMinMillis, lag * 2);
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+}
+
+Both ends of the measurement come from the primary's clock: beat_at is set with CURRENT_TIMESTAMP(3) on the primary, and the replicated value is compared with a fresh CURRENT_TIMESTAMP(3) from the primary. The nodes' own clocks never enter it. With node time on either side, a node running 2 seconds fast would see a caught-up replica as 2 seconds behind, and one running slow would keep reading from a replica that is really too far behind. The price is one trivial primary query per interval and node.
+
+The measured lag includes up to one heartbeat interval (500 ms) of sampling error, which is why the sticky window is twice the lag with a floor of one second. Register a Gauge on getLagMillis as moneyflow.replica.lag to graph it.
+
+
+---
+
+Step 5: Read-your-writes (RecentWriters.java, ReadYourWritesInterceptor.java)
+
+package com.example.moneyflow.routing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConditionalOnProperty(name = "moneyflow.routing.enabled", havingValue = "true")
+public class RecentWriters {
+
+    private final ReplicaLagMonitor lagMonitor;
+
+    // userId -> time (millis) until which that user's reads go to the primary
+    private final Cache<String, Long> primaryUntil;
+
+    public RecentWriters(ReplicaLagMonitor lagMonitor, RoutingProperties properties) {
+        this.lagMonitor = lagMonitor;
+        this.primaryUntil = Caffeine.newBuilder()
+                .maximumSize(1_000_000)
+                .expireAfterWrite(properties.getMaxReplicaLag().plus(Duration.ofSeconds(1)))
+                .build();
+    }
+
+    // Call after the write has committed
+    public void wrote(String userId) {
+        primaryUntil.put(userId, System.currentTimeMillis() + lagMonitor.stickyWindowMillis());
+    }
+
+    public boolean needsPrimary(String userId) {
+        Long until = primaryUntil.getIfPresent(userId);
+        return until != null && until > System.currentTimeMillis();
+    }
+}
+
+package com.example.moneyflow.routing;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.Callable;
+
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor, CallableProcessingInterceptor {
+
+    // Carries the decision from the request thread to the thread that runs an async handler's Callable
+    static final String PRIMARY_REQUIRED = ReadYourWritesInterceptor.class.getName() + ".PRIMARY_REQUIRED";
+
+    private final RecentWriters recentWriters;
+
+    public ReadYourWritesInterceptor(RecentWriters recentWriters) {
+        this.recentWriters = recentWriters;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && recentWriters.needsPrimary(authentication.getName())) {
+            request.setAttribute(PRIMARY_REQUIRED, Boolean.TRUE);
+            ReadConsistency.requirePrimary();
+        }
+        return true;
+    }
+
+    // The handler went async: afterCompletion won't run on this thread, and it goes back to Tomcat's pool now
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReadConsistency.clear();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReadConsistency.clear();
+    }
+
+    // Runs on the async executor thread, just before the Callable (history stream, statement export, bulk job)
+    @Override
+    public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+        if (request.getAttribute(PRIMARY_REQUIRED, RequestAttributes.SCOPE_REQUEST) != null) {
+            ReadConsistency.requirePrimary();
+        }
+    }
+
+    // Runs on the same thread after the Callable returns or throws
+    @Override
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+        ReadConsistency.clear();
+    }
+}
+
+RoutingWebConfig.java
+
+package com.example.moneyflow.routing;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@ConditionalOnProperty(name = "moneyflow.routing.enabled", havingValue = "true")
+public class RoutingWebConfig implements WebMvcConfigurer {
+
+    private final ReadYourWritesInterceptor readYourWrites;
+
+    public RoutingWebConfig(RecentWriters recentWriters) {
+        this.readYourWrites = new ReadYourWritesInterceptor(recentWriters);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(readYourWrites);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(readYourWrites);
+    }
+}
+
+The flag is a ThreadLocal, so it only applies on the thread that set it. The history stream, the statement export and the bulk job return a WebAsyncTask. Their queries run on an executor thread, after the request thread has already gone back to Tomcat. Two things follow from that:
+
+1. The executor thread needs the flag too. preHandle also stores it as a request attribute, and preProcess, which Spring MVC calls on the executor thread right before the Callable, sets it there. postProcess clears it again, whether the Callable returned or threw, so a pooled export thread never keeps it for the next export.
+
+
+2. For an async handler, Spring MVC calls afterConcurrentHandlingStarted on the request thread instead of afterCompletion. Without clearing the flag there, the Tomcat thread would keep it and pin some other user's next request to the primary. afterCompletion still runs at the end of the async dispatch, on whichever thread handles it, and clears the flag that the second preHandle set.
+
+The writers report their commits. In TransferService this goes into the afterCommit callback that already updates the balance cache:
+
+            @Override
+            public void afterCommit() {
+                balanceCache.offer(senderAccount, senderBalance, senderVersion);
+                balanceCache.offer(receiverAccount, receiverBalance, receiverVersion);
+                if (recentWriters != null) {
+                    recentWriters.wrote(userId);
+                }
+            }
+
+(@Autowired(required = false) private RecentWriters recentWriters;) TransferBatcher calls it for each accepted item after the batch commit, and UserService.registerUser for the new user.
+
+The stickiness is per user and not per session, so it also covers the user's other devices. It lives in the memory of one node. With several nodes behind a load balancer, either use sticky sessions on the user id or put the "primary until" stamp into a short-lived cookie so any node can honour it.
+
+The receiver of a transfer is a different user. They see the credit in their history once the replica has caught up (normally well under a second), and in their balance immediately, because the balance comes from the write-through cache.
+
+
+---
+
+Step 6: Which reads go to the replica
+
+Mark the dashboard read paths as read-only transactions:
+
+TransactionHistoryService.java
+
+    @Transactional(readOnly = true)
+    public HistoryPage page(String accountNumber, String cursorToken, int size) { ... }
+
+stream() and exportCsv already run in read-only transactions (for PostgreSQL's cursor fetch), so they route to the replica without changes. StreamingJdbcTemplates detects the database through the routing DataSource's default target (the primary), and the replica runs the same MySQL version, so the streaming template works the same there, and a long statement export no longer holds a primary connection for its whole duration.
+
+Profile reads for /api/user/details (the Transfer profile lookup) get @Transactional(readOnly = true) as well.
+
+These stay on the primary on purpose:
+
+- BalanceQueries (balance cache misses). The cache keeps whichever value has the higher version, so a stale replica value would not overwrite a newer one. It would still be cached for an account that has no newer entry yet, and it would stay there until that account's next transfer. A cache miss is a single primary-key read, so it isn't worth that risk.
+
+- CachedUserLookup / CustomUserDetailsService. Authentication must see a password change or disable immediately.
+
+- Anything inside a transfer transaction. That transaction is not read-only, so the routing DataSource sends it to the primary anyway.
+
+
+---
+
+Step 7: Two embedded databases locally (application-local-replica.properties, LocalReplicator.java)
+
+moneyflow.routing.enabled=true
+# NON_KEYWORDS: H2 2.x reserves USER and TIMESTAMP, which are the user table and transactions.timestamp here
+moneyflow.datasource.primary.url=jdbc:h2:mem:primary;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER,TIMESTAMP
+moneyflow.datasource.replica.url=jdbc:h2:mem:replica;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER,TIMESTAMP
+moneyflow.local-replica.delay-ms=1500
+
+spring.jpa.hibernate.ddl-auto=create
+# The tables Hibernate doesn't create (replication_heartbeat), run on the primary after Hibernate
+spring.sql.init.mode=always
+spring.sql.init.schema-locations=classpath:local-replica-schema.sql
+spring.jpa.defer-datasource-initialization=true
+
+local-replica-schema.sql
+
+CREATE TABLE IF NOT EXISTS replication_heartbeat (
+    id      INT          NOT NULL PRIMARY KEY,
+    beat_at TIMESTAMP(3) NOT NULL
+);
+MERGE INTO replication_heartbeat (id, beat_at) KEY (id) VALUES (1, CURRENT_TIMESTAMP(3));
+
+package com.example.moneyflow.routing;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Local stand-in for MySQL replication between two H2 databases: copies the schema once,
+ * then the tables from the primary to the replica every delay-ms, so the replica is visibly behind.
+ */
+@Component
+@Profile("local-replica")
+public class LocalReplicator {
+
+    private static final List<String> TABLES = List.of(
+            "user", "transfer", "account_balance", "transactions", "replication_heartbeat");
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+
+    private boolean schemaCopied;   // only touched by the scheduler thread
+
+    public LocalReplicator(@Qualifier("primaryDataSource") DataSource primary,
+                           @Qualifier("replicaDataSource") DataSource replica) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+    }
+
+    @Scheduled(fixedDelayString = "${moneyflow.local-replica.delay-ms:1500}")
+    public void replicate() {
+        if (!schemaCopied) {
+            copySchema();
+            schemaCopied = true;
+        }
+        for (String table : TABLES) {
+            List<Object[]> rows = new ArrayList<>();
+            int[] columns = {0};
+            primary.query("SELECT * FROM " + table, rs -> {
+                columns[0] = rs.getMetaData().getColumnCount();
+                Object[] row = new Object[columns[0]];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                rows.add(row);
+            });
+            if (rows.isEmpty()) {
+                continue;
+            }
+            String placeholders = String.join(",", Collections.nCopies(columns[0], "?"));
+            // H2's MERGE INTO ... VALUES upserts by primary key
+            replica.batchUpdate("MERGE INTO " + table + " VALUES (" + placeholders + ")", rows);
+        }
+    }
+
+    // Scheduled tasks start after the context is up, so Hibernate and local-replica-schema.sql have run on the primary
+    private void copySchema() {
+        List<String> ddl = primary.queryForList("SCRIPT NODATA NOPASSWORDS NOSETTINGS", String.class);
+        for (String statement : ddl) {
+            if (statement.startsWith("CREATE TABLE") || statement.startsWith("ALTER TABLE")
+                    || statement.startsWith("CREATE INDEX") || statement.startsWith("CREATE UNIQUE INDEX")) {
+                replica.execute(statement.replaceFirst("^CREATE (UNIQUE )?(TABLE|INDEX) ", "CREATE $1$2 IF NOT EXISTS "));
+            }
+        }
+    }
+}
+
+In this profile Hibernate creates the entity tables on the primary (ddl-auto=create), and spring.sql.init adds replication_heartbeat with its single row. That script goes through the routing DataSource outside a read-only transaction, so it runs on the primary. Without NON_KEYWORDS, Hibernate's CREATE TABLE user fails on H2 2.x, and so does the replicator's SELECT * FROM user. The replica needs the same setting, because the copied DDL and MERGE INTO user name the table too. The replicator's first run reads the finished schema back with H2's SCRIPT command and creates the same tables on the replica. From then on the heartbeat row is copied like any other, and measure() sees a lag of about delay-ms. Until that first copy, measure() fails, the lag is unknown and all reads go to the primary, which is the intended fallback. The full-table copy is only meant for small development datasets.
+
+Trying it out with ./gradlew bootRun --args='--spring.profiles.active=local-replica':
+
+1. Log in as A and make a transfer to B.
+2. Immediately GET /api/transactions as A. The new rows are there, because A is sticky to the primary.
+3. Immediately GET /api/transactions as B. The credit is missing for up to delay-ms (served by the replica), then it appears.
+4. Set moneyflow.local-replica.delay-ms=20000. After a few heartbeats the lag exceeds max-replica-lag, the log shows "replica reads suspended", and B sees the credit at once, because everything is read from the primary.
+
+The load-test harness runs with this profile too. /actuator/metrics/hikaricp.connections.usage then shows the traffic split between the two pools (name them with moneyflow.datasource.primary.hikari.pool-name and the replica equivalent).
+
+
+---
+
+Step 8: Tests (ReadWriteRoutingTest.java)
+
+The routing is tested against two in-memory H2 databases, one for each side. Each has a one-row whoami table holding its own name, so a query shows which database it actually reached. There is no Spring context: the test builds the same LazyConnectionDataSourceProxy over the routing DataSource as RoutingDataSourceConfig, with a DataSourceTransactionManager on top.
+
+package com.example.moneyflow.routing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadWriteRoutingTest {
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+    private ReplicaLagMonitor lagMonitor;
+    private RecentWriters recentWriters;
+    private JdbcTemplate routed;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    void setUp() {
+        primary = new JdbcTemplate(database("primary"));
+        replica = new JdbcTemplate(database("replica"));
+
+        RoutingProperties properties = new RoutingProperties();
+        properties.setStickyMin(Duration.ofSeconds(1));
+        properties.setMaxReplicaLag(Duration.ofSeconds(10));
+        lagMonitor = new ReplicaLagMonitor(primary, replica, properties);
+        // As local-replica-schema.sql does; beat() only updates the row
+        primary.update("INSERT INTO replication_heartbeat VALUES (1, CURRENT_TIMESTAMP(3))");
+        recentWriters = new RecentWriters(lagMonitor, properties);
+
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(lagMonitor);
+        routing.setTargetDataSources(Map.of(
+                ReadWriteRoutingDataSource.Target.PRIMARY, primary.getDataSource(),
+                ReadWriteRoutingDataSource.Target.REPLICA, replica.getDataSource()));
+        routing.setDefaultTargetDataSource(primary.getDataSource());
+        routing.afterPropertiesSet();
+        DataSource routed = new LazyConnectionDataSourceProxy(routing);
+
+        this.routed = new JdbcTemplate(routed);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routed);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReadConsistency.clear();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToAFreshReplica() {
+        replicateHeartbeat();
+        lagMonitor.measure();
+
+        assertThat(lagMonitor.isReplicaUsable()).isTrue();
+        assertThat(whoami(readOnly)).isEqualTo("replica");
+        assertThat(whoami(readWrite)).isEqualTo("primary");
+    }
+
+    @Test
+    void replicaWithoutHeartbeatOrTooFarBehindIsNotUsed() {
+        // Before the first measurement the lag is unknown
+        assertThat(whoami(readOnly)).isEqualTo("primary");
+
+        // A beat the primary wrote 30 seconds ago, by the primary's own clock
+        Timestamp stale = primary.queryForObject("SELECT DATEADD(SECOND, -30, CURRENT_TIMESTAMP(3))", Timestamp.class);
+        replica.update("INSERT INTO replication_heartbeat VALUES (1, ?)", stale);
+        lagMonitor.measure();
+
+        assertThat(lagMonitor.getLagMillis()).isBetween(30_000L, 40_000L);
+
+        assertThat(lagMonitor.isReplicaUsable()).isFalse();
+        assertThat(whoami(readOnly)).isEqualTo("primary");
+    }
+
+    @Test
+    void recentWriterReadsFromThePrimaryOnTheRequestThreadAndInTheAsyncTask() throws Exception {
+        replicateHeartbeat();
+        lagMonitor.measure();
+        recentWriters.wrote("user-1");
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("user-1", null, List.of()));
+
+        ReadYourWritesInterceptor interceptor = new ReadYourWritesInterceptor(recentWriters);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/transactions/stream");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+        assertThat(whoami(readOnly)).isEqualTo("primary");
+
+        // The handler returned a WebAsyncTask: the request thread is released and must not keep the flag
+        interceptor.afterConcurrentHandlingStarted(request, response, null);
+        assertThat(ReadConsistency.isPrimaryRequired()).isFalse();
+        assertThat(whoami(readOnly)).isEqualTo("replica");
+
+        // The Callable runs on another thread, between preProcess and postProcess
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        Callable<String> stream = () -> whoami(readOnly);
+        AtomicBoolean flagLeftOnExecutor = new AtomicBoolean(true);
+        String reached = CompletableFuture.supplyAsync(() -> {
+            try {
+                interceptor.preProcess(webRequest, stream);
+                try {
+                    return stream.call();
+                } finally {
+                    interceptor.postProcess(webRequest, stream, null);
+                    flagLeftOnExecutor.set(ReadConsistency.isPrimaryRequired());
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertThat(reached).isEqualTo("primary");
+        assertThat(flagLeftOnExecutor).isFalse();
+    }
+
+    @Test
+    void otherUsersKeepReadingFromTheReplica() {
+        replicateHeartbeat();
+        lagMonitor.measure();
+        recentWriters.wrote("user-1");
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("user-2", null, List.of()));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/transactions");
+        new ReadYourWritesInterceptor(recentWriters).preHandle(request, new MockHttpServletResponse(), null);
+
+        assertThat(request.getAttribute(ReadYourWritesInterceptor.PRIMARY_REQUIRED)).isNull();
+        assertThat(whoami(readOnly)).isEqualTo("replica");
+    }
+
+    private String whoami(TransactionTemplate transaction) {
+        return transaction.execute(status -> routed.queryForObject("SELECT name FROM whoami", String.class));
+    }
+
+    private void replicateHeartbeat() {
+        lagMonitor.beat();
+        Timestamp beat = primary.queryForObject("SELECT beat_at FROM replication_heartbeat WHERE id = 1", Timestamp.class);
+        replica.update("MERGE INTO replication_heartbeat (id, beat_at) KEY (id) VALUES (1, ?)", beat);
+    }
+
+    private static DataSource database(String name) {
+        DataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + "-" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE whoami (name VARCHAR(16))");
+        jdbc.update("INSERT INTO whoami VALUES (?)", name);
+        jdbc.execute("CREATE TABLE replication_heartbeat (id INT NOT NULL PRIMARY KEY, beat_at TIMESTAMP(3) NOT NULL)");
+        return dataSource;
+    }
+}
+
+spring-test (for MockHttpServletRequest) comes with spring-boot-starter-test, which the other tests already use.
+
+
+---
+
+Conclusion
+
+With moneyflow.routing.enabled=true, read-only transactions (history, statement export, profile reads) go to a replica datasource, and everything else goes to the primary. Selection happens per transaction through a LazyConnectionDataSourceProxy over an AbstractRoutingDataSource.
+
+Users who just wrote are pinned to the primary for a window derived from the measured heartbeat lag, which gives them read-your-writes. A lagging or unreachable replica is taken out of rotation automatically.
+
+Locally, two embedded H2 databases and a delayed copier show the same behaviour without a MySQL replica.
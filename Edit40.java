@@ -0,0 +1,767 @@
+Fraud rules such as "at most N transfers, or at most X in total, per sender per 10 minutes" have nowhere to live today. Implemented as SELECT COUNT(*), SUM(amount_minor) FROM transactions WHERE account_number = ? AND timestamp > ? on every /api/transfer, each rule would add a range scan to a path that already does two row locks, several writes and a commit.
+
+Here's an in-memory velocity checker:
+
+1. Each active sender has a ring of time buckets (one minute each by default), holding a transfer count and an amount total in each bucket.
+
+
+2. All rings live in a few large primitive arrays (int[] and long[]), indexed by slot. There is no object per account and no boxing, and the GC has only a handful of arrays to look at.
+
+
+3. A rule such as "ten-minute: max 20 transfers or 50,000.00" is evaluated by summing its buckets, a fixed amount of work (at most the number of buckets) per transfer, whatever the account's history.
+
+
+4. The check and the recording happen together under a stripe lock, so a burst of parallel transfers can't all slip in under the limit. If the transfer then fails, its reservation is taken back out.
+
+
+5. Accounts that haven't transferred within the longest window hold no state that matters, so their slots are simply reused. When the table is full, the least recently active account in the probe window is evicted. Memory is fixed by configuration, however many accounts exist in total.
+
+
+6. The checker is off unless moneyflow.velocity.enabled=true, and even then the arrays are allocated only if at least one rule is configured.
+
+
+
+
+---
+
+Step 1: Configuration (application.properties)
+
+moneyflow.velocity.enabled=true
+moneyflow.velocity.bucket=PT1M
+moneyflow.velocity.buckets=10
+# Slots for accounts active within the last `buckets` x `bucket`; about 136 bytes each
+moneyflow.velocity.capacity=2000000
+
+moneyflow.velocity.rules[0].name=burst
+moneyflow.velocity.rules[0].window=PT1M
+moneyflow.velocity.rules[0].max-count=5
+
+moneyflow.velocity.rules[1].name=ten-minute
+moneyflow.velocity.rules[1].window=PT10M
+moneyflow.velocity.rules[1].max-count=20
+# 50,000.00 in minor units
+moneyflow.velocity.rules[1].max-amount-minor=5000000
+
+A rule may set max-count, max-amount-minor or both. Its window must be a whole number of buckets and at most buckets × bucket. Both are checked at startup.
+
+The checker is opt-in: without moneyflow.velocity.enabled=true there is no bean and no memory is used. With the flag on but no rules, the bean exists but allocates nothing and every transfer passes straight through.
+
+Capacity is about active senders, not all accounts. With 2,000,000 slots (about 270 MB of heap), tens of millions of accounts are fine as long as no more than a couple of million of them send money within any 10-minute span. Size -Xmx for it before turning the flag on, or lower the capacity on smaller nodes.
+
+
+---
+
+Step 2: Rules (VelocityProperties.java)
+
+package com.example.moneyflow.velocity;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "moneyflow.velocity")
+public class VelocityProperties {
+
+    private boolean enabled = false;
+    private Duration bucket = Duration.ofMinutes(1);
+    private int buckets = 10;
+    private int capacity = 2_000_000;
+    private List<Rule> rules = new ArrayList<>();
+
+    public static class Rule {
+        private String name;
+        private Duration window;
+        private int maxCount;        // 0 = no count limit
+        private long maxAmountMinor; // 0 = no amount limit
+
+        // getters and setters
+    }
+
+    // getters and setters
+}
+
+The amount limit is in minor units, like amount_minor and the rest of the balance code, so no Money conversion is needed when binding.
+
+
+---
+
+Step 3: The window store (VelocityWindows.java)
+
+package com.example.moneyflow.velocity;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-account ring buffers of (count, amount) per time bucket, kept in flat primitive arrays.
+ * An account lives in one of the PROBE slots after its hash; stale slots are reused in place.
+ */
+final class VelocityWindows {
+
+    private static final int PROBE = 16;
+    private static final long EMPTY = 0L;   // account keys are never 0
+
+    private final int buckets;
+    private final int slotCount;
+
+    private final long[] keys;
+    private final long[] lastTick;     // newest bucket written for the slot
+    private final int[] counts;        // slot * buckets + (tick % buckets)
+    private final long[] amounts;
+
+    private final ReentrantLock[] locks;
+    private final int lockMask;
+
+    private long evictions;            // written under a lock, read racily for metrics
+
+    VelocityWindows(int capacity, int buckets, int lockStripes) {
+        this.buckets = buckets;
+        this.slotCount = Math.max(PROBE, capacity);
+        this.keys = new long[slotCount];
+        this.lastTick = new long[slotCount];
+        this.counts = new int[slotCount * buckets];
+        this.amounts = new long[slotCount * buckets];
+
+        int stripes = Integer.highestOneBit(Math.max(2, lockStripes - 1) << 1);   // next power of two
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.lockMask = stripes - 1;
+    }
+
+    /**
+     * Checks every limit against the account's window plus this transfer and, if all pass, records it.
+     *
+     * @return -1 if recorded, otherwise the index of the first rule that would be exceeded
+     */
+    int tryRecord(long account, long tick, long amountMinor, int[] ruleBuckets, int[] maxCounts, long[] maxAmounts) {
+        int home = home(account);
+        ReentrantLock lock = locks[(home / PROBE) & lockMask];
+        lock.lock();
+        try {
+            int slot = slotFor(account, home, tick);
+            advance(slot, tick);
+
+            for (int rule = 0; rule < ruleBuckets.length; rule++) {
+                int count = 0;
+                long amount = 0;
+                // Sum the newest ruleBuckets[rule] buckets, ending at the current one
+                for (int back = 0; back < ruleBuckets[rule]; back++) {
+                    int index = slot * buckets + (int) Math.floorMod(tick - back, (long) buckets);
+                    count += counts[index];
+                    amount += amounts[index];
+                }
+                if ((maxCounts[rule] > 0 && count + 1 > maxCounts[rule])
+                        || (maxAmounts[rule] > 0 && amount + amountMinor > maxAmounts[rule])) {
+                    return rule;
+                }
+            }
+
+            int current = slot * buckets + (int) Math.floorMod(tick, (long) buckets);
+            counts[current]++;
+            amounts[current] += amountMinor;
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Takes back a recorded transfer whose execution failed, if its bucket is still in the ring
+    void release(long account, long tick, long amountMinor) {
+        int home = home(account);
+        ReentrantLock lock = locks[(home / PROBE) & lockMask];
+        lock.lock();
+        try {
+            int slot = find(account, home);
+            if (slot < 0 || lastTick[slot] - tick >= buckets) {
+                return;
+            }
+            int index = slot * buckets + (int) Math.floorMod(tick, (long) buckets);
+            if (counts[index] > 0) {
+                counts[index]--;
+                amounts[index] -= amountMinor;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long evictions() {
+        return evictions;
+    }
+
+    // Home slot, aligned to the start of a PROBE group so one lock covers the whole probe
+    private int home(long account) {
+        long h = account * 0x9E3779B97F4A7C15L;
+        int group = (int) Math.floorMod(h ^ (h >>> 32), (long) (slotCount / PROBE));
+        return group * PROBE;
+    }
+
+    private int find(long account, int home) {
+        for (int i = 0; i < PROBE; i++) {
+            if (keys[home + i] == account) {
+                return home + i;
+            }
+        }
+        return -1;
+    }
+
+    private int slotFor(long account, int home, long tick) {
+        int existing = find(account, home);
+        if (existing >= 0) {
+            return existing;
+        }
+
+        // Free slot: never used, or idle longer than the whole ring (all its buckets are outdated)
+        int oldest = home;
+        for (int i = 0; i < PROBE; i++) {
+            int slot = home + i;
+            if (keys[slot] == EMPTY || tick - lastTick[slot] >= buckets) {
+                return claim(slot, account, tick);
+            }
+            if (lastTick[slot] < lastTick[oldest]) {
+                oldest = slot;
+            }
+        }
+
+        // Group full of active accounts: evict the least recently active one
+        evictions++;
+        return claim(oldest, account, tick);
+    }
+
+    private int claim(int slot, long account, long tick) {
+        keys[slot] = account;
+        lastTick[slot] = tick;
+        int base = slot * buckets;
+        for (int i = 0; i < buckets; i++) {
+            counts[base + i] = 0;
+            amounts[base + i] = 0;
+        }
+        return slot;
+    }
+
+    // Clears the buckets the clock has moved past since the slot was last written
+    private void advance(int slot, long tick) {
+        long last = lastTick[slot];
+        if (tick <= last) {
+            return;
+        }
+        long stale = Math.min(tick - last, buckets);
+        for (long t = tick - stale + 1; t <= tick; t++) {
+            int index = slot * buckets + (int) Math.floorMod(t, (long) buckets);
+            counts[index] = 0;
+            amounts[index] = 0;
+        }
+        lastTick[slot] = tick;
+    }
+}
+
+Explanation:
+
+A tick is the bucket number, epoch millis / bucket length. Bucket t of an account sits at index t mod buckets of its ring. advance() zeroes only the buckets that have rotated out since the last write, which is at most `buckets` cells, so the cost per transfer is constant.
+
+The window is sliding at bucket granularity. A 10-minute rule looks at the current minute plus the 9 before it, so it covers between 9 and 10 minutes of real time. For minute-level fraud limits that is accurate enough, and it uses one counter pair per minute instead of one entry per transfer.
+
+Eviction never needs a background thread. A slot that has been idle longer than the ring holds only zero-weight data, so the next account that hashes into its group just takes it over. The forced eviction, when a whole 16-slot group is active, loosens the limits for the one account that is evicted. It is counted in a metric so capacity can be raised before that happens often.
+
+Each 16-slot probe group belongs to a single lock stripe, so a check is one uncontended lock in the common case, and unrelated accounts never wait on each other.
+
+Memory per slot: key 8 + lastTick 8 + 10 × (4 + 8) = 136 bytes. At the default 2,000,000 slots that is about 270 MB, allocated once at startup as four arrays, and only when there is at least one rule.
+
+
+---
+
+Step 4: The checker (VelocityChecker.java)
+
+package com.example.moneyflow.velocity;
+
+import com.example.moneyflow.service.TransferException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(name = "moneyflow.velocity.enabled", havingValue = "true")
+public class VelocityChecker {
+
+    private static final Logger log = LoggerFactory.getLogger(VelocityChecker.class);
+
+    private final VelocityWindows windows;   // null when no rules are configured
+    private final long bucketMillis;
+
+    private final String[] ruleNames;
+    private final int[] ruleBuckets;
+    private final int[] maxCounts;
+    private final long[] maxAmounts;
+    private final Counter[] rejections;
+
+    public VelocityChecker(VelocityProperties properties, MeterRegistry meterRegistry) {
+        this.bucketMillis = properties.getBucket().toMillis();
+
+        List<VelocityProperties.Rule> rules = properties.getRules();
+        int n = rules.size();
+        this.ruleNames = new String[n];
+        this.ruleBuckets = new int[n];
+        this.maxCounts = new int[n];
+        this.maxAmounts = new long[n];
+        this.rejections = new Counter[n];
+
+        for (int i = 0; i < n; i++) {
+            VelocityProperties.Rule rule = rules.get(i);
+            long windowMillis = rule.getWindow().toMillis();
+            if (windowMillis % bucketMillis != 0 || windowMillis / bucketMillis > properties.getBuckets()) {
+                throw new IllegalStateException("Velocity rule '" + rule.getName() + "': window " + rule.getWindow()
+                        + " must be a multiple of " + properties.getBucket() + " and at most "
+                        + properties.getBuckets() + " buckets");
+            }
+            ruleNames[i] = rule.getName();
+            ruleBuckets[i] = (int) (windowMillis / bucketMillis);
+            maxCounts[i] = rule.getMaxCount();
+            maxAmounts[i] = rule.getMaxAmountMinor();
+            rejections[i] = Counter.builder("moneyflow.velocity.rejected")
+                    .tag("rule", rule.getName())
+                    .register(meterRegistry);
+        }
+
+        if (n == 0) {
+            log.warn("moneyflow.velocity.enabled is set but no rules are configured; velocity checks are off");
+            this.windows = null;
+            return;
+        }
+        this.windows = new VelocityWindows(properties.getCapacity(), properties.getBuckets(), 4096);
+        FunctionCounter.builder("moneyflow.velocity.evictions", windows, VelocityWindows::evictions)
+                .description("Active accounts evicted because their probe group was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records the transfer against the sender's windows, or throws if a rule would be exceeded.
+     *
+     * @return a handle for {@link #release} if the transfer later fails, or null if there are no rules
+     */
+    public Reservation reserve(String senderAccount, long amountMinor) {
+        if (amountMinor <= 0L) {
+            throw new IllegalArgumentException("Velocity reservation needs a positive amount: " + amountMinor);
+        }
+        if (windows == null) {
+            return null;
+        }
+        long account = accountKey(senderAccount);
+        long tick = System.currentTimeMillis() / bucketMillis;
+
+        int violated = windows.tryRecord(account, tick, amountMinor, ruleBuckets, maxCounts, maxAmounts);
+        if (violated >= 0) {
+            rejections[violated].increment();
+            throw new TransferException("Transfer limit exceeded (" + ruleNames[violated] + "), please try again later");
+        }
+        return new Reservation(account, tick, amountMinor);
+    }
+
+    public void release(Reservation reservation) {
+        if (reservation != null) {
+            windows.release(reservation.account, reservation.tick, reservation.amountMinor);
+        }
+    }
+
+    // Same as reserve, for a caller inside a transaction: the reservation is taken back if it doesn't commit
+    public void reserveForTransaction(String senderAccount, long amountMinor) {
+        Reservation reservation = reserve(senderAccount, amountMinor);
+        if (reservation == null) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    release(reservation);
+                }
+            }
+        });
+    }
+
+    // Account numbers are 12 digits, so they fit a long as-is; anything else is hashed
+    static long accountKey(String accountNumber) {
+        long value = 0;
+        int length = accountNumber.length();
+        if (length > 0 && length <= 18) {
+            for (int i = 0; i < length; i++) {
+                char c = accountNumber.charAt(i);
+                if (c < '0' || c > '9') {
+                    value = -1;
+                    break;
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (value > 0) {
+                return value;
+            }
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            h ^= accountNumber.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    public static final class Reservation {
+        final long account;
+        final long tick;
+        final long amountMinor;
+
+        Reservation(long account, long tick, long amountMinor) {
+            this.account = account;
+            this.tick = tick;
+            this.amountMinor = amountMinor;
+        }
+    }
+}
+
+Explanation:
+
+Rules are flattened into parallel primitive arrays at startup. The per-transfer loop reads only ints and longs, and the only allocation is the small Reservation.
+
+Account numbers from IdentifierService are 12 digits with a Luhn digit, so the number itself serves as the key. There is no String in the table and no hash collision between two real accounts.
+
+The rejection is a TransferException, so the existing @ExceptionHandler answers 400 with the message, just like "Insufficient balance!".
+
+
+---
+
+Step 5: Hook it into /api/transfer (TransferController.java, TransferService.java)
+
+The check goes into every execution path (plain, batched and ledger), after the idempotency layer. A replayed duplicate therefore never counts twice, and a real transfer counts exactly once.
+
+Each path already checks that the sender belongs to the caller, and the reservation is made right after that check, so other people's accounts are never counted and no extra query is added. The batched and ledger paths check ownership in the controller:
+
+    @Autowired(required = false)
+    private VelocityChecker velocityChecker;
+
+    private CompletableFuture<TransferResult> runTransfer(String userId, TransferRequest request, long amount,
+                                                          IdempotencyContext idempotency) {
+        // Before any path and before any reservation, so a negative amount can never lower a velocity window
+        if (amount <= 0L) {
+            throw new TransferException("Amount must be greater than zero");
+        }
+        if (request.getSenderId().equals(request.getReceiverId())) {
+            throw new TransferException("Sender and receiver must be different accounts");
+        }
+
+        if (transferBatcher != null) {
+            transferService.checkOwnership(userId, request.getSenderId());
+            return withVelocity(request.getSenderId(), amount,
+                    () -> transferBatcher.submit(request.getSenderId(), request.getReceiverId(), amount, idempotency));
+        }
+        if (ledgerService != null) {
+            transferService.checkOwnership(userId, request.getSenderId());
+            return withVelocity(request.getSenderId(), amount,
+                    () -> ledgerService.transfer(request.getSenderId(), request.getReceiverId(), amount)
+                            .thenApply(sequence -> new TransferResult("L" + sequence,
+                                    Money.ofMinor(ledgerService.balanceOf(request.getSenderId())))));
+        }
+        // Plain path: ownership and the velocity check both happen inside doTransfer's transaction
+        return CompletableFuture.completedFuture(transferService.transfer(
+                userId, request.getSenderId(), request.getReceiverId(), amount, idempotency));
+    }
+
+    private CompletableFuture<TransferResult> withVelocity(String senderAccount, long amount,
+                                                           Supplier<CompletableFuture<TransferResult>> execution) {
+        if (velocityChecker == null) {
+            return execution.get();
+        }
+        VelocityChecker.Reservation reservation = velocityChecker.reserve(senderAccount, amount);
+
+        CompletableFuture<TransferResult> result;
+        try {
+            result = execution.get();
+        } catch (RuntimeException e) {
+            velocityChecker.release(reservation);
+            throw e;
+        }
+        return result.whenComplete((ok, failure) -> {
+            if (failure != null) {
+                // Insufficient funds, busy, etc.: nothing moved, so it shouldn't count
+                velocityChecker.release(reservation);
+            }
+        });
+    }
+
+The plain path checks ownership in TransferService.doTransfer, and the reservation follows it there:
+
+    @Autowired(required = false)
+    private VelocityChecker velocityChecker;
+
+    private TransferResult doTransfer(String userId, String senderAccount, String receiverAccount, long amountMinor,
+                                      IdempotencyContext idempotency, boolean countVelocity) {
+        checkOwnership(userId, senderAccount);
+        if (countVelocity && velocityChecker != null) {
+            velocityChecker.reserveForTransaction(senderAccount, amountMinor);
+        }
+
+        // ... balance rows, checks, updates, entries and idempotency row unchanged
+    }
+
+The amount and account checks that the batched branch used to make on its own now run once at the top of runTransfer, for all three paths. TransferService.transfer and LedgerService.transfer still check the same things themselves. A non-positive amount therefore never reaches reserve(), and reserve() refuses one anyway, because a negative amount would lower the sender's window.
+
+transfer() passes countVelocity=true. transferOwned, the batcher's fallback for a failed batch, passes false, because the controller already counted those transfers when they were submitted. A rollback, whether from insufficient funds or an optimistic-lock conflict that transfer() retries, takes the reservation back through afterCompletion. Each retry then reserves again, so a transfer that finally commits counts once.
+
+Whether failed attempts should count is a policy choice. Some fraud teams want repeated insufficient-funds attempts to count too. To get that, drop the releases (whenComplete and afterCompletion) and add a separate rule on attempts.
+
+
+---
+
+Step 6: Multiple nodes
+
+The windows are per node. With N nodes and a load balancer that spreads a user's requests evenly, the effective limit can be up to N times the configured one. Either route /api/transfer by sender (consistent hashing on the account number at the balancer), or divide the configured limits by the node count. The batching pipeline and the ledger mode already prefer a single writer, and in that setup the windows are exact.
+
+The windows are not persisted, so a restart starts everyone from zero. For limits measured in minutes that is acceptable. Limits over days belong in a periodic aggregate job, not in this component.
+
+
+---
+
+Step 7: Tests (VelocityWindowsTest.java, VelocityCheckerTest.java)
+
+VelocityWindows is tested directly with explicit ticks, so the ring, advance() and eviction are covered without waiting on a clock. With a capacity of 16 there is exactly one probe group, so every account competes for the same slots.
+
+package com.example.moneyflow.velocity;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VelocityWindowsTest {
+
+    private static final int BUCKETS = 10;
+    private static final long T = 1_000;
+
+    private final VelocityWindows windows = new VelocityWindows(16, BUCKETS, 1);
+
+    @Test
+    void countLimitAppliesWithinTheWindow() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(record(1L, T + i, 100, BUCKETS, 3)).isEqualTo(-1);
+        }
+        assertThat(record(1L, T + 9, 100, BUCKETS, 3)).isZero();
+    }
+
+    @Test
+    void windowSlidesOneBucketAtATime() {
+        for (long tick = T; tick < T + BUCKETS; tick++) {
+            assertThat(record(1L, tick, 100, BUCKETS, 10)).isEqualTo(-1);
+        }
+        assertThat(record(1L, T + 9, 100, BUCKETS, 10)).isZero();
+
+        // Bucket T rotates out at T + 10, which frees exactly one transfer
+        assertThat(record(1L, T + 10, 100, BUCKETS, 10)).isEqualTo(-1);
+        assertThat(record(1L, T + 10, 100, BUCKETS, 10)).isZero();
+    }
+
+    @Test
+    void advanceAcrossAGapLongerThanTheRingClearsEverything() {
+        for (int i = 0; i < 5; i++) {
+            record(1L, T, 100, BUCKETS, 5);
+        }
+        assertThat(record(1L, T + 3, 100, BUCKETS, 5)).isZero();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(record(1L, T + 25, 100, BUCKETS, 5)).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void amountLimitCountsTheTransferBeingChecked() {
+        int[] ruleBuckets = {BUCKETS};
+        int[] maxCounts = {0};
+        long[] maxAmounts = {1_000};
+
+        assertThat(windows.tryRecord(1L, T, 600, ruleBuckets, maxCounts, maxAmounts)).isEqualTo(-1);
+        assertThat(windows.tryRecord(1L, T, 500, ruleBuckets, maxCounts, maxAmounts)).isZero();
+        assertThat(windows.tryRecord(1L, T + 1, 400, ruleBuckets, maxCounts, maxAmounts)).isEqualTo(-1);
+    }
+
+    @Test
+    void reportsTheFirstRuleThatWouldBeExceeded() {
+        int[] ruleBuckets = {1, BUCKETS};
+        int[] maxCounts = {2, 3};
+        long[] maxAmounts = {0, 0};
+
+        assertThat(windows.tryRecord(1L, T, 100, ruleBuckets, maxCounts, maxAmounts)).isEqualTo(-1);
+        assertThat(windows.tryRecord(1L, T, 100, ruleBuckets, maxCounts, maxAmounts)).isEqualTo(-1);
+        assertThat(windows.tryRecord(1L, T, 100, ruleBuckets, maxCounts, maxAmounts)).isEqualTo(0);
+        assertThat(windows.tryRecord(1L, T + 1, 100, ruleBuckets, maxCounts, maxAmounts)).isEqualTo(-1);
+        assertThat(windows.tryRecord(1L, T + 1, 100, ruleBuckets, maxCounts, maxAmounts)).isEqualTo(1);
+    }
+
+    @Test
+    void releaseTakesTheTransferBackOut() {
+        assertThat(record(1L, T, 700, 1, 1)).isEqualTo(-1);
+        windows.release(1L, T, 700);
+
+        assertThat(record(1L, T, 700, 1, 1)).isEqualTo(-1);
+    }
+
+    @Test
+    void releaseOfABucketThatRotatedOutIsIgnored() {
+        assertThat(record(1L, T, 100, 1, 1)).isEqualTo(-1);
+        // T + 10 reuses the cell of T
+        assertThat(record(1L, T + BUCKETS, 100, 1, 1)).isEqualTo(-1);
+
+        windows.release(1L, T, 100);
+
+        assertThat(record(1L, T + BUCKETS, 100, 1, 1)).isZero();
+    }
+
+    @Test
+    void idleSlotIsReusedWithoutEviction() {
+        record(1L, T, 100, BUCKETS, 10);
+        for (long account = 2; account <= 16; account++) {
+            record(account, T + 5, 100, BUCKETS, 10);
+        }
+
+        // Account 1 has been idle for the whole ring, so its slot is free
+        assertThat(record(17L, T + BUCKETS, 100, BUCKETS, 10)).isEqualTo(-1);
+        assertThat(windows.evictions()).isZero();
+    }
+
+    @Test
+    void fullGroupEvictsTheLeastRecentlyActiveAccount() {
+        assertThat(record(1L, T, 100, BUCKETS, 1)).isEqualTo(-1);
+        for (long account = 2; account <= 16; account++) {
+            record(account, T + 5, 100, BUCKETS, 1);
+        }
+
+        assertThat(record(17L, T + 6, 100, BUCKETS, 1)).isEqualTo(-1);
+        assertThat(windows.evictions()).isEqualTo(1);
+
+        // Account 1 lost its history: its second transfer within the window now passes
+        assertThat(record(1L, T + 6, 100, BUCKETS, 1)).isEqualTo(-1);
+        assertThat(windows.evictions()).isEqualTo(2);
+        // Account 17 is still tracked
+        assertThat(record(17L, T + 6, 100, BUCKETS, 1)).isZero();
+    }
+
+    private int record(long account, long tick, long amountMinor, int ruleBuckets, int maxCount) {
+        return windows.tryRecord(account, tick, amountMinor, new int[]{ruleBuckets}, new int[]{maxCount}, new long[]{0});
+    }
+}
+
+VelocityCheckerTest covers the wiring around the windows: no allocation without rules, startup validation, the rejection, and the release on rollback. That last test runs against an H2 DataSourceTransactionManager.
+
+package com.example.moneyflow.velocity;
+
+import com.example.moneyflow.service.TransferException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VelocityCheckerTest {
+
+    private static final String ACCOUNT = "400000000018";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void withoutRulesNothingIsAllocatedOrChecked() {
+        VelocityChecker checker = new VelocityChecker(properties(), meterRegistry);
+
+        assertThat(checker.reserve(ACCOUNT, Long.MAX_VALUE)).isNull();
+        checker.release(null);
+        assertThat(meterRegistry.find("moneyflow.velocity.evictions").meter()).isNull();
+    }
+
+    @Test
+    void windowMustBeWholeBucketsWithinTheRing() {
+        assertThatThrownBy(() -> new VelocityChecker(properties(rule("odd", Duration.ofSeconds(90), 5)), meterRegistry))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("'odd'");
+        assertThatThrownBy(() -> new VelocityChecker(properties(rule("long", Duration.ofMinutes(11), 5)), meterRegistry))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("'long'");
+    }
+
+    @Test
+    void exceedingARuleThrowsAndIsCounted() {
+        // A ten-minute window, so the test doesn't depend on which minute it runs in
+        VelocityChecker checker = new VelocityChecker(properties(rule("ten-minute", Duration.ofMinutes(10), 2)), meterRegistry);
+
+        checker.reserve(ACCOUNT, 100);
+        checker.reserve(ACCOUNT, 100);
+
+        assertThatThrownBy(() -> checker.reserve(ACCOUNT, 100))
+                .isInstanceOf(TransferException.class)
+                .hasMessageContaining("ten-minute");
+        assertThat(meterRegistry.get("moneyflow.velocity.rejected").tag("rule", "ten-minute").counter().count())
+                .isEqualTo(1.0);
+        // Other senders are unaffected
+        checker.reserve("400000000026", 100);
+    }
+
+    @Test
+    void rolledBackTransactionTakesItsReservationBack() {
+        VelocityChecker checker = new VelocityChecker(properties(rule("ten-minute", Duration.ofMinutes(10), 1)), meterRegistry);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(
+                new DriverManagerDataSource("jdbc:h2:mem:velocity;DB_CLOSE_DELAY=-1")));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            checker.reserveForTransaction(ACCOUNT, 100);
+            status.setRollbackOnly();
+        });
+        transactionTemplate.executeWithoutResult(status -> checker.reserveForTransaction(ACCOUNT, 100));
+
+        assertThatThrownBy(() -> checker.reserve(ACCOUNT, 100)).isInstanceOf(TransferException.class);
+    }
+
+    @Test
+    void twelveDigitAccountNumbersAreTheirOwnKey() {
+        assertThat(VelocityChecker.accountKey(ACCOUNT)).isEqualTo(400_000_000_018L);
+        assertThat(VelocityChecker.accountKey("ACC-1")).isNotZero();
+        assertThat(VelocityChecker.accountKey("000000000000")).isNotZero();
+    }
+
+    private static VelocityProperties properties(VelocityProperties.Rule... rules) {
+        VelocityProperties properties = new VelocityProperties();
+        properties.setEnabled(true);
+        properties.setCapacity(1_024);
+        properties.setRules(List.of(rules));
+        return properties;
+    }
+
+    private static VelocityProperties.Rule rule(String name, Duration window, int maxCount) {
+        VelocityProperties.Rule rule = new VelocityProperties.Rule();
+        rule.setName(name);
+        rule.setWindow(window);
+        rule.setMaxCount(maxCount);
+        return rule;
+    }
+}
+
+
+---
+
+Conclusion
+
+Transfers are now checked against configurable per-sender velocity rules (count and/or amount per window) before they run.
+
+Each active account's counts and amounts live in ring-buffer buckets in flat int[]/long[] arrays, evaluated and updated in constant time under a stripe lock. There are no aggregation queries.
+
+Memory is fixed by the slot capacity. Idle accounts' slots are reused in place, and only the least recently active account of a full probe group is ever evicted, which is counted in moneyflow.velocity.evictions.
+
+The checker is off by default and allocates nothing until rules exist. The reservation follows the ownership check each path already makes, so it adds no query to the transfer.